@@ -9,13 +9,13 @@ import static org.kaivos.röda.Interpreter.checkString;
 import static org.kaivos.röda.Interpreter.emptyStream;
 import static org.kaivos.röda.Interpreter.error;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.function.Consumer;
@@ -45,6 +45,7 @@ import org.kaivos.röda.commands.MatchPopulator;
 import org.kaivos.röda.commands.MathPopulator;
 import org.kaivos.röda.commands.NamePopulator;
 import org.kaivos.röda.commands.ParseNumPopulator;
+import org.kaivos.röda.commands.PmapPopulator;
 import org.kaivos.röda.commands.PushAndPullPopulator;
 import org.kaivos.röda.commands.RandomPopulator;
 import org.kaivos.röda.commands.ReadAndWritePopulator;
@@ -58,6 +59,7 @@ import org.kaivos.röda.commands.SplitPopulator;
 import org.kaivos.röda.commands.StreamPopulator;
 import org.kaivos.röda.commands.StrsizePopulator;
 import org.kaivos.röda.commands.ReducePopulator;
+import org.kaivos.röda.commands.TeePopulator;
 import org.kaivos.röda.commands.ThreadPopulator;
 import org.kaivos.röda.commands.TrueAndFalsePopulator;
 import org.kaivos.röda.commands.UndefinePopulator;
@@ -65,7 +67,7 @@ import org.kaivos.röda.commands.UniqPopulator;
 import org.kaivos.röda.commands.WcatPopulator;
 import org.kaivos.röda.runtime.Function.Parameter;
 import org.kaivos.röda.type.RödaBoolean;
-import org.kaivos.röda.type.RödaInteger;
+import org.kaivos.röda.type.RödaBytes;
 import org.kaivos.röda.type.RödaList;
 import org.kaivos.röda.type.RödaNativeFunction;
 import org.kaivos.röda.type.RödaString;
@@ -122,6 +124,8 @@ public class Builtins {
 		UniqPopulator.populateUniq(S);
 		ReducePopulator.populateReduce(S);
 		FilterPopulator.populateFilterAndGrep(I, S);
+		PmapPopulator.populatePmap(I, S);
+		TeePopulator.populateTee(I, S);
 		EnumPopulator.populateEnum(S);
 		if (I.enableProfiling) I.popTimer("<populate other stream operations>");
 
@@ -194,17 +198,21 @@ public class Builtins {
 	public static RödaValue genericPush(String name, RödaStream _out, boolean back) {
 		return RödaNativeFunction.of(name, (ra, a, k, s, i, o) -> {
 			if (a.size() == 0) {
-				while (true) {
-					RödaValue v = i.pull();
-					if (v == null) break;
-					if (back) _out.unpull(v);
-					else _out.push(v);
+				if (back) {
+					while (true) {
+						RödaValue v = i.pull();
+						if (v == null) break;
+						_out.unpull(v);
+					}
 				}
+				else i.forAllBatches(_out::pushAll);
 			} else {
-				for (RödaValue v : a) {
-					if (back) _out.unpull(v);
-					else _out.push(v);
+				if (back) {
+					for (RödaValue v : a) {
+						_out.unpull(v);
+					}
 				}
+				else _out.pushAll(a);
 			}
 		}, Arrays.asList(new Parameter("values", false)), true);
 	}
@@ -217,12 +225,13 @@ public class Builtins {
 					RödaValue v = peek ? _in.peek() : _in.pull();
 					if (v == null) emptyStream("empty stream");
 					o.push(v);
-				} else
+				} else if (peek)
 					while (true) {
-						RödaValue v = peek ? _in.peek() : _in.pull();
+						RödaValue v = _in.peek();
 						if (v == null) break;
 						o.push(v);
 					}
+				else _in.forAllBatches(o::pushAll);
 			} else {
 				for (RödaValue v : a) {
 					checkReference(name, v);
@@ -251,16 +260,22 @@ public class Builtins {
 
 	public static RödaValue genericWriteStrings(String name, OutputStream _out, Interpreter I) {
 		return RödaNativeFunction.of(name, (ra, args, kwargs, scope, in, out) -> {
-			Consumer<Consumer<RödaValue>> forAll;
+			Consumer<Consumer<List<RödaValue>>> forAll;
 			if (args.size() == 0) {
-				forAll = in::forAll;
+				forAll = in::forAllBatches;
 			} else {
-				forAll = args.stream()::forEach;
+				forAll = c -> c.accept(args);
 			}
-			forAll.accept(v -> {
+			forAll.accept(batch -> {
 				try {
-					checkString(name, v);
-					_out.write(v.str().getBytes(StandardCharsets.UTF_8));
+					for (RödaValue v : batch) {
+						if (v.is(RödaValue.BYTES)) {
+							((RödaBytes) v).writeTo(_out);
+							continue;
+						}
+						checkString(name, v);
+						_out.write(v.str().getBytes(StandardCharsets.UTF_8));
+					}
 					_out.flush();
 				} catch (IOException e) {
 					error(e);
@@ -298,16 +313,13 @@ public class Builtins {
 				if (size > Integer.MAX_VALUE)
 					error(name + ": can't read more than " + Integer.MAX_VALUE + " bytes " + "at time");
 				byte[] data = new byte[(int) size];
-				_in.read(data);
+				// luetaan kerran: read voi palauttaa vähemmän tavuja kuin pyydettiin, jolloin tulos on lyhyempi
+				int length = Math.max(Scheduler.callBlocking(() -> _in.read(data)), 0);
 				RödaValue output;
 				if (toString) {
-					output = RödaString.of(new String(data, StandardCharsets.UTF_8));
+					output = RödaString.of(new String(data, 0, length, StandardCharsets.UTF_8));
 				} else {
-					List<RödaValue> list = new ArrayList<>();
-					for (byte b : data) {
-						list.add(RödaInteger.of(b));
-					}
-					output = RödaList.of(list);
+					output = RödaList.ofBytes(length == data.length ? data : Arrays.copyOf(data, length));
 				}
 				if (args.size() == 1) {
 					out.push(output);
@@ -323,29 +335,26 @@ public class Builtins {
 	}
 	
 	private static RödaValue readLine(InputStream in) throws IOException {
-		List<Byte> bytes = new ArrayList<>(256);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
 		int i;
 		do {
 			i = in.read();
 			if (i == -1)
 				break;
-			bytes.add((byte) i);
+			bytes.write(i);
 		} while (i != '\n');
-		byte[] byteArr = new byte[bytes.size()];
-		for (int j = 0; j < bytes.size(); j++)
-			byteArr[j] = bytes.get(j);
-		return RödaString.of(new String(byteArr, StandardCharsets.UTF_8));
+		return RödaString.of(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
 	}
 
 	public static RödaValue genericReadLine(String name, InputStream _in, Interpreter I) {
 		return RödaNativeFunction.of(name, (ra, args, kwargs, scope, in, out) -> {
 			try {
 				if (args.isEmpty()) {
-					out.push(readLine(_in));
+					out.push(Scheduler.callBlocking(() -> readLine(_in)));
 				}
 				else for (RödaValue refVal : args) {
 					checkReference(name, refVal);
-					refVal.assignLocal(readLine(_in));
+					refVal.assignLocal(Scheduler.callBlocking(() -> readLine(_in)));
 				}
 			} catch (IOException e) {
 				error(e);
@@ -0,0 +1,178 @@
+package org.kaivos.röda;
+
+import static java.util.stream.Collectors.joining;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import org.kaivos.röda.Parser.Command;
+import org.kaivos.röda.Parser.ExpressionTree;
+
+/**
+ * The call stack of the interpreter in one thread.
+ *
+ * The frames are preallocated objects that only hold references to the
+ * function, arguments and syntax tree they describe. The text of a frame is
+ * formatted only when a stack trace is needed, usually when an error is
+ * created, so keeping the call stack costs a few field writes per call.
+ */
+public final class CallStack {
+
+	private static final int
+		TEXT = 0,
+		CALL = 1,
+		FUSED_CALL = 2,
+		COMMAND = 3,
+		VARIABLE_COMMAND = 4,
+		EXPRESSION = 5;
+
+	private static final class Frame {
+		int kind;
+		Object subject;
+		List<?> arguments;
+		int from, to;
+		String file;
+		int line;
+
+		String format() {
+			switch (kind) {
+			case CALL: {
+				String function = ((RödaValue) subject).str();
+				if (arguments.isEmpty())
+					return "calling " + function + " with no arguments\n\tat " + file + ":" + line;
+				return "calling " + function
+						+ " with argument" + (arguments.size() == 1 ? " " : "s ")
+						+ arguments.stream().map(a -> ((RödaValue) a).str()).collect(joining(", "))
+						+ "\n\tat " + file + ":" + line;
+			}
+			case FUSED_CALL:
+				return "calling " + ((RödaValue) subject).str() + " (fused)\n\tat " + file + ":" + line;
+			case COMMAND: {
+				@SuppressWarnings("unchecked")
+				List<Command> commands = (List<Command>) arguments;
+				Command first = commands.get(from);
+				return "command " + commands.subList(from, to+1).stream()
+						.map(Command::asString).collect(joining(" | "))
+						+ "\n\tat " + first.file + ":" + first.line;
+			}
+			case VARIABLE_COMMAND: {
+				Command cmd = (Command) subject;
+				return "variable command " + cmd.name.asString() + " " + cmd.operator + " "
+						+ arguments.stream().map(a -> ((RödaValue) a).str()).collect(joining(" "))
+						+ "\n\tat " + cmd.file + ":" + cmd.line;
+			}
+			case EXPRESSION: {
+				ExpressionTree exp = (ExpressionTree) subject;
+				return "expression " + exp.asString() + "\n\tat " + exp.file + ":" + exp.line;
+			}
+			default:
+				return (String) subject;
+			}
+		}
+	}
+
+	private Frame[] frames = new Frame[64];
+	private int depth = 0;
+
+	public CallStack() {
+		for (int i = 0; i < frames.length; i++) frames[i] = new Frame();
+	}
+
+	private Frame next(int kind, Object subject) {
+		if (depth == frames.length) {
+			frames = Arrays.copyOf(frames, 2*depth);
+			for (int i = depth; i < frames.length; i++) frames[i] = new Frame();
+		}
+		Frame frame = frames[depth++];
+		frame.kind = kind;
+		frame.subject = subject;
+		return frame;
+	}
+
+	/**
+	 * Pushes a frame with a ready-made text.
+	 */
+	public void push(String text) {
+		next(TEXT, text).arguments = null;
+	}
+
+	/**
+	 * Pushes a frame for a call of the function. The argument list must not be
+	 * modified before the frame is popped.
+	 */
+	public void pushCall(RödaValue function, List<RödaValue> arguments, String file, int line) {
+		Frame frame = next(CALL, function);
+		frame.arguments = arguments;
+		frame.file = file;
+		frame.line = line;
+	}
+
+	public void pushFusedCall(RödaValue function, String file, int line) {
+		Frame frame = next(FUSED_CALL, function);
+		frame.arguments = null;
+		frame.file = file;
+		frame.line = line;
+	}
+
+	/**
+	 * Pushes a frame for the commands from..to of a pipeline.
+	 */
+	void pushCommands(List<Command> commands, int from, int to) {
+		Frame frame = next(COMMAND, null);
+		frame.arguments = commands;
+		frame.from = from;
+		frame.to = to;
+	}
+
+	void pushVariableCommand(Command cmd, List<RödaValue> arguments) {
+		next(VARIABLE_COMMAND, cmd).arguments = arguments;
+	}
+
+	void pushExpression(ExpressionTree exp) {
+		next(EXPRESSION, exp).arguments = null;
+	}
+
+	public void pop() {
+		Frame frame = frames[--depth];
+		// vapautetaan viittaukset, jotta argumentit eivät jää muistiin
+		frame.subject = null;
+		frame.arguments = null;
+	}
+
+	public void clear() {
+		while (depth > 0) pop();
+	}
+
+	public int depth() {
+		return depth;
+	}
+
+	/**
+	 * Formats the frames, the innermost frame first.
+	 */
+	public Deque<String> format() {
+		ArrayDeque<String> stack = new ArrayDeque<>(depth);
+		for (int i = depth-1; i >= 0; i--) stack.add(frames[i].format());
+		return stack;
+	}
+
+	/**
+	 * Copies the frames for a new thread. The copy shares the syntax trees and
+	 * values but not the frame objects.
+	 */
+	public CallStack copy() {
+		CallStack copy = new CallStack();
+		for (int i = 0; i < depth; i++) {
+			Frame frame = frames[i];
+			Frame frameCopy = copy.next(frame.kind, frame.subject);
+			frameCopy.arguments = frame.arguments;
+			frameCopy.from = frame.from;
+			frameCopy.to = frame.to;
+			frameCopy.file = frame.file;
+			frameCopy.line = frame.line;
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,251 @@
+package org.kaivos.röda;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs the commands of a pipeline in single thread mode.
+ *
+ * Each command has its own thread, but only one command of a group runs at a
+ * time. A command keeps the turn until it has to wait for a cooperative pipe
+ * (its input is empty or its output is full) or for something outside of the
+ * interpreter. The turn then moves to the next command that can continue, in
+ * the order in which the commands became ready, so a pipeline always runs the
+ * same way. Cooperative pipes are bounded, so a pipeline needs only a constant
+ * amount of memory even if its first command produces values forever.
+ *
+ * A thread that is not a part of the group, like an I/O pump of exec, waits
+ * for the turn before it uses a cooperative pipe.
+ */
+final class Coroutines {
+
+	static final class Coroutine {
+		private final Group group;
+		private volatile Thread thread;
+		private volatile boolean turn = false;
+
+		private Coroutine(Group group, Thread thread) {
+			this.group = group;
+			this.thread = thread;
+		}
+	}
+
+	static final class Group {
+		private final ReentrantLock lock = new ReentrantLock();
+		private final ArrayDeque<Coroutine> ready = new ArrayDeque<>();
+		private volatile Coroutine owner = null;
+
+		private Group() {}
+
+		private boolean hasTurn() {
+			Coroutine c = owner;
+			return c != null && c.thread == Thread.currentThread();
+		}
+
+		/**
+		 * Waits until the coroutine gets the turn.
+		 */
+		private void acquire(Coroutine c) {
+			lock.lock();
+			try {
+				if (owner == null) {
+					owner = c;
+					c.turn = true;
+				}
+				else ready.add(c);
+			} finally {
+				lock.unlock();
+			}
+			waitTurn(c);
+		}
+
+		/**
+		 * Gives the turn of the current thread to the next coroutine that is ready.
+		 */
+		private void release() {
+			Coroutine next;
+			lock.lock();
+			try {
+				owner.turn = false;
+				next = owner = ready.poll();
+				if (next != null) next.turn = true;
+			} finally {
+				lock.unlock();
+			}
+			if (next != null) {
+				Thread thread = next.thread;
+				// säie, jota ei ole vielä käynnistetty, huomaa vuoronsa itse
+				if (thread != null) LockSupport.unpark(thread);
+			}
+		}
+
+		private void makeReady(Coroutine c) {
+			lock.lock();
+			try {
+				ready.add(c);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Makes sure that the current thread has the turn before it uses an
+		 * object of this group.
+		 *
+		 * @return the coroutine that must be passed to exit, or null
+		 */
+		Coroutine enter() {
+			if (hasTurn()) return null;
+			Coroutine c = SELF.get();
+			if (c == null || c.group != this) c = new Coroutine(this, Thread.currentThread());
+			acquire(c);
+			return c;
+		}
+
+		void exit(Coroutine c) {
+			if (c != null) release();
+		}
+
+		/**
+		 * Waits until the condition is true and lets other coroutines run
+		 * meanwhile. The current thread must have the turn. The waiters are
+		 * woken with {@link #wake(List)} when the condition may have changed.
+		 */
+		void await(BooleanSupplier condition, List<Coroutine> waiters) {
+			while (!condition.getAsBoolean()) {
+				Coroutine self = owner;
+				waiters.add(self);
+				release();
+				waitTurn(self);
+			}
+		}
+
+		void wake(List<Coroutine> waiters) {
+			if (waiters.isEmpty()) return;
+			lock.lock();
+			try {
+				ready.addAll(waiters);
+			} finally {
+				lock.unlock();
+			}
+			waiters.clear();
+		}
+	}
+
+	private static final ThreadLocal<Coroutine> SELF = new ThreadLocal<>();
+
+	private static void waitTurn(Coroutine c) {
+		boolean[] interrupted = { false };
+		try {
+			Scheduler.block(() -> c.turn, () -> {
+				LockSupport.park(c);
+				if (Thread.interrupted()) interrupted[0] = true;
+			});
+		} catch (InterruptedException e) {
+			interrupted[0] = true;
+		}
+		if (interrupted[0]) Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Gives away the turn of the current thread, if it has one, for the
+	 * duration of a wait for something outside of its group.
+	 *
+	 * @return the group that must be passed to attach, or null
+	 */
+	static Group detach() {
+		Coroutine self = SELF.get();
+		if (self == null || !self.group.hasTurn()) return null;
+		self.group.release();
+		return self.group;
+	}
+
+	static void attach(Group group) {
+		if (group != null) group.acquire(SELF.get());
+	}
+
+	private final Group group;
+	private final boolean root;
+
+	private Coroutines(Group group, boolean root) {
+		this.group = group;
+		this.root = root;
+	}
+
+	/**
+	 * Prepares to run a pipeline in the group of the current thread, or in a new
+	 * group if the current thread is not a coroutine.
+	 */
+	static Coroutines start() {
+		Coroutine self = SELF.get();
+		return self != null ? new Coroutines(self.group, false) : new Coroutines(new Group(), true);
+	}
+
+	/**
+	 * Creates a cooperative pipe. Because a full pipe just gives the turn to the
+	 * reader, the pipe is bounded even if the capacity is 0 (unbounded).
+	 */
+	RödaStream pipe(int capacity) {
+		return RödaStream.makeCooperativePipe(group, capacity > 0 ? capacity : RödaStream.BATCH_SIZE);
+	}
+
+	/**
+	 * Runs the tasks as coroutines and returns when all of them are finished.
+	 * The last task is run in the current thread.
+	 *
+	 * @return the exceptions thrown by the tasks, the last task first
+	 */
+	List<Throwable> run(Runnable[] tasks) {
+		int last = tasks.length-1;
+		Throwable[] errors = new Throwable[tasks.length];
+		int[] remaining = { last };
+		List<Coroutine> joining = new ArrayList<>(1);
+		if (root) {
+			Coroutine self = new Coroutine(group, Thread.currentThread());
+			SELF.set(self);
+			group.acquire(self);
+		}
+		try {
+			for (int i = 0; i < last; i++) {
+				Coroutine c = new Coroutine(group, null);
+				group.makeReady(c);
+				Runnable task = tasks[i];
+				int j = i;
+				Interpreter.scheduler.submit(() -> {
+					c.thread = Thread.currentThread();
+					SELF.set(c);
+					waitTurn(c);
+					try {
+						task.run();
+					} catch (Throwable e) {
+						errors[j] = e;
+					} finally {
+						SELF.remove();
+						if (--remaining[0] == 0) group.wake(joining);
+						group.release();
+					}
+				});
+			}
+			try {
+				tasks[last].run();
+			} catch (Throwable e) {
+				errors[last] = e;
+			}
+			group.await(() -> remaining[0] == 0, joining);
+		} finally {
+			if (root) {
+				group.release();
+				SELF.remove();
+			}
+		}
+		List<Throwable> exceptions = new ArrayList<>();
+		for (int i = last; i >= 0; i--) {
+			if (errors[i] != null) exceptions.add(errors[i]);
+		}
+		return exceptions;
+	}
+}
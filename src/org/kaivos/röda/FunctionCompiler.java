@@ -0,0 +1,709 @@
+package org.kaivos.röda;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kaivos.röda.Interpreter.BreakOrContinueException;
+import org.kaivos.röda.Interpreter.ReturnException;
+import org.kaivos.röda.Interpreter.RödaScope;
+import org.kaivos.röda.Parser.Command;
+import org.kaivos.röda.Parser.StatementTree;
+import org.kaivos.röda.runtime.Function;
+
+/**
+ * Compiles the bodies of frequently called functions to JVM classes.
+ *
+ * The interpreter counts the calls of each function in exec. When a function
+ * has been called {@link Interpreter#jitThreshold} times, its body is compiled
+ * to a subclass of {@link CompiledBody}, which the JVM then optimizes like any
+ * other code. The control flow of the body becomes JVM branches: if, unless,
+ * while, until and for statements run without creating runnables for them,
+ * and break, continue and return jump directly instead of throwing exceptions.
+ * Other statements are called back to the interpreter one by one. The compiled
+ * code pushes the same call stack frames as the interpreter, so errors are
+ * reported the same way.
+ *
+ * The classes are written directly in the class file format of Java 5, which
+ * needs no stack map frames. A body that does not fit in a method is left to
+ * the interpreter.
+ *
+ * Compilation is experimental and disabled by default. It is enabled with the
+ * --jit option or the system property roda.jitThreshold.
+ */
+public final class FunctionCompiler {
+
+	private FunctionCompiler() {}
+
+	/**
+	 * The call counter and the compiled body of a function. All functions
+	 * created from the same source code share one profile.
+	 */
+	public static final class Profile {
+		/* laskuri saa hävitä kutsuja kilpatilanteissa, koska se vain arvioi kuumuutta */
+		int invocations = 0;
+		volatile CompiledBody body = null;
+		volatile boolean failed = false;
+	}
+
+	/**
+	 * The base class of compiled function bodies. The generated subclass calls
+	 * the protected methods of this class for everything it does not compile
+	 * itself. Statements are referred to by their indices in the statement
+	 * table of the body.
+	 */
+	public static abstract class CompiledBody {
+		private final Interpreter I;
+		private final StatementTree[] statements;
+
+		protected CompiledBody(Interpreter I, StatementTree[] statements) {
+			this.I = I;
+			this.statements = statements;
+		}
+
+		/**
+		 * Runs the body in the given scope.
+		 */
+		public abstract void run(RödaScope scope, RödaStream in, RödaStream out);
+
+		private Command command(int i) {
+			return statements[i].commands.get(0);
+		}
+
+		/**
+		 * Runs a statement in the interpreter.
+		 */
+		protected final void statement(int i, RödaScope scope, RödaStream in, RödaStream out) {
+			I.evalStatement(statements[i], scope, in, out, false);
+		}
+
+		/**
+		 * Pushes the call stack frame of a statement.
+		 */
+		protected final void enter(int i) {
+			if (I.enableDebug) Interpreter.callStack.get().pushCommands(statements[i].commands, 0, 0);
+		}
+
+		/**
+		 * Pops the given number of call stack frames.
+		 */
+		protected final void exit(int frames) {
+			if (I.enableDebug) for (int j = 0; j < frames; j++) Interpreter.callStack.get().pop();
+		}
+
+		protected static RödaScope scope(RödaScope parent) {
+			return new RödaScope(parent);
+		}
+
+		/**
+		 * Evaluates the condition of an if, unless, while or until statement.
+		 *
+		 * @return true if the body must not be run
+		 */
+		protected final boolean breaks(int i, RödaScope scope, RödaStream in) {
+			Command cmd = command(i);
+			if (cmd.cond == null) return false;
+			boolean isWhile = cmd.type == Command.Type.WHILE, neg = cmd.negation;
+			String commandName = isWhile?(neg?"until":"while"):(neg?"unless":"if");
+			return I.evalCond(commandName, cmd.cond, scope, in) ^ neg;
+		}
+
+		/**
+		 * Evaluates the list of a for statement.
+		 */
+		protected final Iterator<RödaValue> forList(int i, RödaScope scope, RödaStream in, RödaStream out) {
+			return I.evalForList(command(i), scope, in, out).list().iterator();
+		}
+
+		/**
+		 * Creates the scope of one iteration of a for statement that iterates a list.
+		 */
+		protected final RödaScope forScope(int i, RödaScope scope, Object value) {
+			RödaScope newScope = new RödaScope(scope);
+			newScope.setLocal(command(i).variables.get(0), (RödaValue) value);
+			return newScope;
+		}
+
+		/**
+		 * Pulls the values of one iteration of a for statement that iterates its input.
+		 *
+		 * @return the scope of the iteration, or null if the input is finished
+		 */
+		protected final RödaScope forPull(int i, RödaScope scope, RödaStream in) {
+			return I.pullForScope(command(i), scope, in);
+		}
+
+		/**
+		 * Evaluates the if condition of a for statement.
+		 *
+		 * @return true if the iteration must be skipped
+		 */
+		protected final boolean forSkips(int i, RödaScope scope, RödaStream in) {
+			Command cmd = command(i);
+			return cmd.cond != null && I.evalCond("for if", cmd.cond, scope, in);
+		}
+
+		/**
+		 * Runs a return statement except for the jump, which is done by the caller.
+		 */
+		protected final void returns(int i, RödaScope scope, RödaStream in, RödaStream out) {
+			Runnable body = I.evalCommand(command(i), scope, in, out, in, out);
+			enter(i);
+			try {
+				body.run();
+			} catch (ReturnException e) {
+				// kutsuja palaa itse
+			} finally {
+				exit(1);
+			}
+		}
+
+		/**
+		 * Handles a break or continue statement run by the interpreter in the
+		 * body of a loop.
+		 *
+		 * @return 0 for break and 1 for continue
+		 */
+		protected static int loopControl(BreakOrContinueException e) {
+			return e.isBreak ? 0 : 1;
+		}
+	}
+
+	private static final AtomicInteger compiledFunctions = new AtomicInteger();
+
+	/**
+	 * @return the number of function bodies compiled so far
+	 */
+	public static int compiledFunctions() {
+		return compiledFunctions.get();
+	}
+
+	/**
+	 * Returns the compiled body of the function, and compiles it if the function
+	 * has been called at least threshold times.
+	 *
+	 * @return the compiled body, or null if the body must be interpreted
+	 */
+	static CompiledBody compiledBody(Interpreter I, Function function, int threshold) {
+		Profile profile = function.profile;
+		if (profile == null) return null;
+		CompiledBody body = profile.body;
+		// käännetty runko kuuluu sen kääntäneelle tulkille
+		if (body != null) return body.I == I ? body : null;
+		if (profile.failed || profile.invocations < threshold) return null;
+		synchronized (profile) {
+			if (profile.body == null && !profile.failed) {
+				body = compile(I, function);
+				if (body == null) profile.failed = true;
+				else {
+					profile.body = body;
+					compiledFunctions.incrementAndGet();
+				}
+			}
+			return profile.body != null && profile.body.I == I ? profile.body : null;
+		}
+	}
+
+	/* luokkien nimet */
+
+	private static final String BODY = "org/kaivos/röda/FunctionCompiler$CompiledBody",
+			SCOPE = "Lorg/kaivos/röda/Interpreter$RödaScope;",
+			STREAM = "Lorg/kaivos/röda/RödaStream;",
+			RUN = "(" + SCOPE + STREAM + STREAM + ")V",
+			RETURN_EXCEPTION = "org/kaivos/röda/Interpreter$ReturnException",
+			LOOP_EXCEPTION = "org/kaivos/röda/Interpreter$BreakOrContinueException";
+
+	private static final AtomicInteger classCounter = new AtomicInteger();
+
+	private static CompiledBody compile(Interpreter I, Function function) {
+		try {
+			Generator generator = new Generator();
+			byte[] code = generator.compile(function.body);
+			if (code == null) return null;
+			String name = "org/kaivos/röda/FunctionCompiler$Compiled" + classCounter.incrementAndGet();
+			byte[] classFile = generator.classFile(name, code);
+			Class<?> cls = new Loader(FunctionCompiler.class.getClassLoader())
+					.define(name.replace('/', '.'), classFile);
+			return (CompiledBody) cls.getConstructor(Interpreter.class, StatementTree[].class)
+					.newInstance(I, generator.statements.toArray(new StatementTree[0]));
+		} catch (ReflectiveOperationException | IOException | LinkageError e) {
+			// funktio tulkitaan, jos kääntäminen epäonnistuu
+			return null;
+		}
+	}
+
+	/* jokainen luokka ladataan omalla lataajallaan, jotta käyttämättömät luokat voidaan vapauttaa */
+	private static final class Loader extends ClassLoader {
+		Loader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] classFile) {
+			return defineClass(name, classFile, 0, classFile.length);
+		}
+	}
+
+	/**
+	 * Generates the run method of a compiled body.
+	 */
+	private static final class Generator {
+		/* JVM:n käskyt */
+		private static final int ICONST_0 = 0x03, ICONST_1 = 0x04, SIPUSH = 0x11,
+				ILOAD = 0x15, ALOAD = 0x19, ISTORE = 0x36, ASTORE = 0x3a,
+				POP = 0x57, IFEQ = 0x99, IFNE = 0x9a, GOTO = 0xa7, RETURN = 0xb1,
+				INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8, INVOKEINTERFACE = 0xb9,
+				ATHROW = 0xbf, IFNULL = 0xc6;
+
+		/* paikalliset muuttujat 0-3 ovat this, scope, in ja out */
+		private static final int THIS = 0, IN = 2, OUT = 3;
+
+		/* metodien koodin ja hyppyjen suurimmat koot */
+		private static final int MAX_CODE = 32767, MAX_LOCALS = 255, MAX_STATEMENTS = 32767;
+
+		final List<StatementTree> statements = new ArrayList<>();
+
+		private final ConstantPool pool = new ConstantPool();
+		private byte[] code = new byte[256];
+		private int length = 0;
+		private int locals = 4;
+		private final List<int[]> handlers = new ArrayList<>();
+		private final List<Label[]> handlerLabels = new ArrayList<>();
+
+		private static final class Label {
+			int position = -1;
+			final List<Integer> jumps = new ArrayList<>();
+		}
+
+		/**
+		 * A loop that break and continue can jump out of.
+		 */
+		private static final class Loop {
+			final Label breakLabel = new Label(), continueLabel = new Label();
+			final int depth;
+
+			Loop(int depth) {
+				this.depth = depth;
+			}
+		}
+
+		byte[] compile(List<StatementTree> body) {
+			Label start = label(), end = new Label();
+			block(body, 1, 0, null);
+			place(end);
+			op(RETURN);
+			// funktion runkoa ympäröivä käsittelijä lopettaa suorituksen return-lauseeseen
+			handler(start, end, RETURN_EXCEPTION);
+			op(POP);
+			op(RETURN);
+			if (length > MAX_CODE || locals > MAX_LOCALS || statements.size() > MAX_STATEMENTS) return null;
+			byte[] result = new byte[length];
+			System.arraycopy(code, 0, result, 0, length);
+			return result;
+		}
+
+		private void block(List<StatementTree> body, int scope, int depth, Loop loop) {
+			for (StatementTree s : body) statement(s, scope, depth, loop);
+		}
+
+		private void statement(StatementTree s, int scope, int depth, Loop loop) {
+			if (s.commands.size() == 1) {
+				Command cmd = s.commands.get(0);
+				switch (cmd.type) {
+				case IF:
+				case WHILE:
+					conditional(s, cmd, scope, depth, loop);
+					return;
+				case FOR:
+					forLoop(s, cmd, scope, depth, loop);
+					return;
+				case RETURN: {
+					int i = index(s);
+					call("returns", i, scope, true, true);
+					exit(depth);
+					op(RETURN);
+					return;
+				}
+				case BREAK:
+				case CONTINUE:
+					if (loop == null) break;
+					// hyppy ohittaa lauseiden finally-osat, joten niiden kehykset poistetaan tässä
+					exit(depth - loop.depth);
+					jump(GOTO, cmd.type == Command.Type.BREAK ? loop.breakLabel : loop.continueLabel);
+					return;
+				default:
+					break;
+				}
+			}
+			// muut lauseet suoritetaan tulkissa
+			call("statement", index(s), scope, true, true);
+		}
+
+		/**
+		 * if, unless, while and until.
+		 */
+		private void conditional(StatementTree s, Command cmd, int scope, int depth, Loop outer) {
+			boolean isWhile = cmd.type == Command.Type.WHILE;
+			int i = index(s);
+			framed(i, () -> {
+				int goToElse = locals++, newScope = locals++;
+				Loop loop = isWhile ? new Loop(depth+1) : null;
+				op(ICONST_1);
+				local(ISTORE, goToElse);
+				Label top = label();
+				local(ALOAD, scope);
+				invoke(INVOKESTATIC, BODY, "scope", "(" + SCOPE + ")" + SCOPE);
+				local(ASTORE, newScope);
+				call("breaks", i, scope, true, false);
+				Label exit = isWhile ? loop.breakLabel : new Label();
+				jump(IFNE, exit);
+				op(ICONST_0);
+				local(ISTORE, goToElse);
+				Label bodyStart = label();
+				block(cmd.body, newScope, depth+1, isWhile ? loop : outer);
+				Label bodyEnd = label();
+				if (isWhile) {
+					place(loop.continueLabel);
+					jump(GOTO, top);
+					// tulkissa suoritettu break tai continue päätyy tänne
+					handler(bodyStart, bodyEnd, LOOP_EXCEPTION);
+					invoke(INVOKESTATIC, BODY, "loopControl", "(L" + LOOP_EXCEPTION + ";)I");
+					jump(IFEQ, exit);
+					jump(GOTO, top);
+				}
+				place(exit);
+				if (cmd.elseBody != null) {
+					Label end = new Label();
+					local(ILOAD, goToElse);
+					jump(IFEQ, end);
+					int elseScope = locals++;
+					local(ALOAD, scope);
+					invoke(INVOKESTATIC, BODY, "scope", "(" + SCOPE + ")" + SCOPE);
+					local(ASTORE, elseScope);
+					block(cmd.elseBody, elseScope, depth+1, outer);
+					place(end);
+				}
+			});
+		}
+
+		private void forLoop(StatementTree s, Command cmd, int scope, int depth, Loop outer) {
+			int i = index(s);
+			int iterator = -1;
+			if (cmd.list != null) {
+				// lista lasketaan ennen kuin lauseen kehys lisätään pinoon, kuten tulkissa
+				iterator = locals++;
+				call("forList", i, scope, true, true);
+				local(ASTORE, iterator);
+			}
+			int it = iterator;
+			framed(i, () -> {
+				int newScope = locals++;
+				Loop loop = new Loop(depth+1);
+				Label top = label();
+				place(loop.continueLabel);
+				if (it >= 0) {
+					local(ALOAD, it);
+					invoke(INVOKEINTERFACE, "java/util/Iterator", "hasNext", "()Z");
+					jump(IFEQ, loop.breakLabel);
+					aload(THIS);
+					sipush(i);
+					local(ALOAD, scope);
+					local(ALOAD, it);
+					invoke(INVOKEINTERFACE, "java/util/Iterator", "next", "()Ljava/lang/Object;");
+					invoke(INVOKEVIRTUAL, BODY, "forScope", "(I" + SCOPE + "Ljava/lang/Object;)" + SCOPE);
+					local(ASTORE, newScope);
+				}
+				else {
+					call("forPull", i, scope, true, false);
+					local(ASTORE, newScope);
+					local(ALOAD, newScope);
+					jump(IFNULL, loop.breakLabel);
+				}
+				call("forSkips", i, newScope, true, false);
+				jump(IFNE, top);
+				Label bodyStart = label();
+				block(cmd.body, newScope, depth+1, loop);
+				Label bodyEnd = label();
+				jump(GOTO, top);
+				handler(bodyStart, bodyEnd, LOOP_EXCEPTION);
+				invoke(INVOKESTATIC, BODY, "loopControl", "(L" + LOOP_EXCEPTION + ";)I");
+				jump(IFEQ, loop.breakLabel);
+				jump(GOTO, top);
+				place(loop.breakLabel);
+			});
+		}
+
+		/**
+		 * Surrounds the code of a statement with the push and pop of its call
+		 * stack frame. The frame is popped also if the code throws.
+		 */
+		private void framed(int i, Runnable body) {
+			aload(THIS);
+			sipush(i);
+			invoke(INVOKEVIRTUAL, BODY, "enter", "(I)V");
+			Label start = label();
+			body.run();
+			Label end = label();
+			exit(1);
+			Label after = new Label();
+			jump(GOTO, after);
+			// kehys poistetaan kaikista poikkeuksista, kuten tulkin finally-lohkossa
+			handler(start, end, null);
+			int exception = locals++;
+			local(ASTORE, exception);
+			exit(1);
+			local(ALOAD, exception);
+			op(ATHROW);
+			place(after);
+		}
+
+		private void exit(int frames) {
+			if (frames == 0) return;
+			aload(THIS);
+			sipush(frames);
+			invoke(INVOKEVIRTUAL, BODY, "exit", "(I)V");
+		}
+
+		/**
+		 * Calls a helper method of CompiledBody whose parameters are the index of
+		 * the statement, the scope and optionally the input and output streams.
+		 */
+		private void call(String method, int i, int scope, boolean in, boolean out) {
+			aload(THIS);
+			sipush(i);
+			local(ALOAD, scope);
+			if (in) aload(IN);
+			if (out) aload(OUT);
+			String returnType;
+			switch (method) {
+			case "breaks":
+			case "forSkips":
+				returnType = "Z";
+				break;
+			case "forList":
+				returnType = "Ljava/util/Iterator;";
+				break;
+			case "forPull":
+				returnType = SCOPE;
+				break;
+			default:
+				returnType = "V";
+			}
+			invoke(INVOKEVIRTUAL, BODY, method, "(I" + SCOPE + (in ? STREAM : "") + (out ? STREAM : "") + ")" + returnType);
+		}
+
+		private int index(StatementTree s) {
+			statements.add(s);
+			return statements.size()-1;
+		}
+
+		/* koodin kirjoittaminen */
+
+		private void code(int b) {
+			if (length == code.length) {
+				byte[] bigger = new byte[code.length*2];
+				System.arraycopy(code, 0, bigger, 0, length);
+				code = bigger;
+			}
+			code[length++] = (byte) b;
+		}
+
+		private void u2(int value) {
+			code(value >> 8);
+			code(value);
+		}
+
+		private void op(int opcode) {
+			code(opcode);
+		}
+
+		private void aload(int local) {
+			local(ALOAD, local);
+		}
+
+		private void local(int opcode, int local) {
+			code(opcode);
+			code(local);
+		}
+
+		private void sipush(int value) {
+			code(SIPUSH);
+			u2(value);
+		}
+
+		private void invoke(int opcode, String owner, String name, String descriptor) {
+			code(opcode);
+			if (opcode == INVOKEINTERFACE) {
+				u2(pool.interfaceMethod(owner, name, descriptor));
+				// argumenttien koko, tässä aina pelkkä olio
+				code(1);
+				code(0);
+			}
+			else u2(pool.method(owner, name, descriptor));
+		}
+
+		private Label label() {
+			Label label = new Label();
+			place(label);
+			return label;
+		}
+
+		private void place(Label label) {
+			label.position = length;
+			for (int jump : label.jumps) {
+				int offset = length - jump;
+				code[jump+1] = (byte) (offset >> 8);
+				code[jump+2] = (byte) offset;
+			}
+		}
+
+		private void jump(int opcode, Label target) {
+			int position = length;
+			code(opcode);
+			if (target.position >= 0) u2(target.position - position);
+			else {
+				target.jumps.add(position);
+				u2(0);
+			}
+		}
+
+		/**
+		 * Adds an exception handler that catches the exceptions of the given
+		 * class, or everything if the class is null, thrown between the labels.
+		 * The handler starts at the current position.
+		 */
+		private void handler(Label start, Label end, String exceptionClass) {
+			// tyhjä alue ei voi heittää poikkeusta, eikä luokkatiedosto salli sitä
+			if (start.position == end.position) return;
+			handlers.add(new int[] { start.position, end.position, length,
+					exceptionClass == null ? 0 : pool.classRef(exceptionClass) });
+		}
+
+		/* luokkatiedosto */
+
+		byte[] classFile(String name, byte[] run) throws IOException {
+			int thisClass = pool.classRef(name), superClass = pool.classRef(BODY);
+			int init = pool.utf8("<init>"), initDescriptor = pool.utf8("(Lorg/kaivos/röda/Interpreter;"
+					+ "[Lorg/kaivos/röda/Parser$StatementTree;)V");
+			int superInit = pool.method(BODY, "<init>", "(Lorg/kaivos/röda/Interpreter;"
+					+ "[Lorg/kaivos/röda/Parser$StatementTree;)V");
+			int runName = pool.utf8("run"), runDescriptor = pool.utf8(RUN), codeName = pool.utf8("Code");
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0xcafebabe);
+			out.writeShort(0);
+			out.writeShort(49);
+			pool.writeTo(out);
+			out.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(0); // rajapinnat
+			out.writeShort(0); // kentät
+			out.writeShort(2); // metodit
+
+			// konstruktori välittää parametrit yliluokalle
+			out.writeShort(0x0001);
+			out.writeShort(init);
+			out.writeShort(initDescriptor);
+			out.writeShort(1);
+			byte[] initCode = { 0x2a, 0x2b, 0x2c, (byte) INVOKESPECIAL, (byte) (superInit >> 8), (byte) superInit,
+					(byte) RETURN };
+			writeCode(out, codeName, 3, 3, initCode, new ArrayList<>());
+
+			out.writeShort(0x0001 | 0x0010);
+			out.writeShort(runName);
+			out.writeShort(runDescriptor);
+			out.writeShort(1);
+			writeCode(out, codeName, 8, locals, run, handlers);
+
+			out.writeShort(0); // attribuutit
+			out.flush();
+			return bytes.toByteArray();
+		}
+
+		private static void writeCode(DataOutputStream out, int codeName, int maxStack, int maxLocals,
+				byte[] code, List<int[]> handlers) throws IOException {
+			out.writeShort(codeName);
+			out.writeInt(12 + code.length + 8*handlers.size());
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(code.length);
+			out.write(code);
+			out.writeShort(handlers.size());
+			for (int[] h : handlers) {
+				out.writeShort(h[0]);
+				out.writeShort(h[1]);
+				out.writeShort(h[2]);
+				out.writeShort(h[3]);
+			}
+			out.writeShort(0); // attribuutit
+		}
+	}
+
+	private static final class ConstantPool {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+		private final Map<String, Integer> entries = new HashMap<>();
+		private int count = 1;
+
+		private int entry(String key, int tag, int a, int b, boolean two) {
+			Integer index = entries.get(key);
+			if (index != null) return index;
+			try {
+				out.writeByte(tag);
+				out.writeShort(a);
+				if (two) out.writeShort(b);
+			} catch (IOException e) {
+				throw new AssertionError(e);
+			}
+			entries.put(key, count);
+			return count++;
+		}
+
+		int utf8(String value) {
+			String key = "U" + value;
+			Integer index = entries.get(key);
+			if (index != null) return index;
+			try {
+				out.writeByte(1);
+				out.writeUTF(value);
+			} catch (IOException e) {
+				throw new AssertionError(e);
+			}
+			entries.put(key, count);
+			return count++;
+		}
+
+		int classRef(String name) {
+			int nameIndex = utf8(name);
+			return entry("C" + name, 7, nameIndex, 0, false);
+		}
+
+		private int nameAndType(String name, String descriptor) {
+			int nameIndex = utf8(name), descriptorIndex = utf8(descriptor);
+			return entry("N" + name + ":" + descriptor, 12, nameIndex, descriptorIndex, true);
+		}
+
+		int method(String owner, String name, String descriptor) {
+			int classIndex = classRef(owner), nameAndType = nameAndType(name, descriptor);
+			return entry("M" + owner + "." + name + descriptor, 10, classIndex, nameAndType, true);
+		}
+
+		int interfaceMethod(String owner, String name, String descriptor) {
+			int classIndex = classRef(owner), nameAndType = nameAndType(name, descriptor);
+			return entry("I" + owner + "." + name + descriptor, 11, classIndex, nameAndType, true);
+		}
+
+		void writeTo(DataOutputStream classFile) throws IOException {
+			out.flush();
+			classFile.writeShort(count);
+			bytes.writeTo(classFile);
+		}
+	}
+}
@@ -8,6 +8,7 @@ import static org.kaivos.röda.Parser.parse;
 import static org.kaivos.röda.Parser.parseStatement;
 import static org.kaivos.röda.Parser.t;
 import static org.kaivos.röda.RödaValue.BOOLEAN;
+import static org.kaivos.röda.RödaValue.BYTES;
 import static org.kaivos.röda.RödaValue.FLOATING;
 import static org.kaivos.röda.RödaValue.FUNCTION;
 import static org.kaivos.röda.RödaValue.INTEGER;
@@ -36,9 +37,8 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -60,11 +60,13 @@ import org.kaivos.röda.Parser.ParameterTree;
 import org.kaivos.röda.Parser.ProgramTree;
 import org.kaivos.röda.Parser.RecordTree;
 import org.kaivos.röda.Parser.StatementTree;
+import org.kaivos.röda.RödaStream.StreamAbandonedException;
 import org.kaivos.röda.runtime.Datatype;
 import org.kaivos.röda.runtime.Function;
 import org.kaivos.röda.runtime.Function.Parameter;
 import org.kaivos.röda.runtime.Record;
 import org.kaivos.röda.type.RödaBoolean;
+import org.kaivos.röda.type.RödaBytes;
 import org.kaivos.röda.type.RödaFloating;
 import org.kaivos.röda.type.RödaFunction;
 import org.kaivos.röda.type.RödaInteger;
@@ -72,6 +74,8 @@ import org.kaivos.röda.type.RödaList;
 import org.kaivos.röda.type.RödaMap;
 import org.kaivos.röda.type.RödaNamespace;
 import org.kaivos.röda.type.RödaNativeFunction;
+import org.kaivos.röda.type.RödaNativeFunction.ElementFunction;
+import org.kaivos.röda.type.RödaNativeFunction.NativeFunction;
 import org.kaivos.röda.type.RödaRecordInstance;
 import org.kaivos.röda.type.RödaReference;
 import org.kaivos.röda.type.RödaString;
@@ -81,40 +85,107 @@ public class Interpreter {
 	/*** INTERPRETER ***/
 
 	public static class RödaScope {
-		Optional<RödaScope> parent;
-		Map<String, RödaValue> map;
+		final RödaScope parent;
+		/* useimmat silmukoiden ja ehtolauseiden scopet jäävät tyhjiksi, joten taulut luodaan vasta tarvittaessa */
+		volatile ConcurrentHashMap<String, RödaValue> map;
 		Map<String, Datatype> typeargs;
-		Map<String, RecordDeclaration> records = new HashMap<>();
+		Map<String, RecordDeclaration> records;
+		/* nimien hajautusarvoista muodostettu bittijoukko, jonka avulla välimuisti voi ohittaa scopen */
+		volatile long names;
+		/* kasvaa aina, kun jokin tämän scopen muuttujista muuttuu */
+		volatile int version;
+		/* kutsujan scope, josta caller_namespace luodaan vasta, kun sitä käytetään */
+		private RödaScope caller;
 		public RödaScope(Optional<RödaScope> parent) {
-			this.parent = parent;
-			this.map = new HashMap<>();
-			this.typeargs = new HashMap<>();
+			this.parent = parent.orElse(null);
 		}
 		public RödaScope(RödaScope parent) {
-			this(Optional.of(parent));
+			this.parent = parent;
+		}
+
+		/**
+		 * Returns the value of the variable in this scope, or NOT_FOUND if the
+		 * variable is not defined in this scope. An undefined variable has the
+		 * value null.
+		 *
+		 * Reading doesn't take a lock, so that the commands of parallel pipelines
+		 * can resolve names in the global scope at the same time.
+		 */
+		private RödaValue lookupLocal(String name) {
+			Map<String, RödaValue> map = this.map;
+			RödaValue value = map == null ? null : map.get(name);
+			if (value == null) {
+				if (caller != null && name.equals(CALLER_NAMESPACE)) return createCallerNamespace();
+				return NOT_FOUND;
+			}
+			if (value == UNDEFINED) return null;
+			return value;
+		}
+
+		private static final String CALLER_NAMESPACE = "caller_namespace";
+
+		/**
+		 * Defines the variable caller_namespace of a function call. The namespace
+		 * is created when the variable is used for the first time.
+		 */
+		void setCaller(RödaScope caller) {
+			this.caller = caller;
+			names |= nameBit(CALLER_NAMESPACE);
+		}
+
+		private synchronized RödaValue createCallerNamespace() {
+			if (caller != null) {
+				// skripti on voinut jo määritellä muuttujan itse
+				if (map == null || !map.containsKey(CALLER_NAMESPACE))
+					setLocal(CALLER_NAMESPACE, RödaNamespace.of(caller));
+				caller = null;
+			}
+			return lookupLocal(CALLER_NAMESPACE);
 		}
 
-		public synchronized RödaValue resolve(String name) {
-			if (map.containsKey(name)) return map.get(name);
-			if (parent.isPresent()) return parent.get().resolve(name);
+		private static final RödaValue NOT_FOUND = RödaString.of("<not found>");
+		/* ConcurrentHashMap ei hyväksy null-arvoja, joten poistettu arvo merkitään tällä */
+		private static final RödaValue UNDEFINED = RödaString.of("<undefined>");
+
+		public RödaValue resolve(String name) {
+			for (RödaScope scope = this; scope != null; scope = scope.parent) {
+				RödaValue value = scope.lookupLocal(name);
+				if (value != NOT_FOUND) return value;
+			}
 			return null;
 		}
 
-		public synchronized void set(String name, RödaValue value) {
-			if (map.containsKey(name))
-				map.put(name, value);
-			else if (parent.isPresent() && parent.get().resolve(name) != null)
-				parent.get().set(name, value);
-			else {
-				map.put(name, value);
+		public void set(String name, RödaValue value) {
+			if (lookupLocal(name) == NOT_FOUND) {
+				for (RödaScope scope = parent; scope != null; scope = scope.parent) {
+					RödaValue old = scope.lookupLocal(name);
+					if (old == NOT_FOUND) continue;
+					// muuttuja, jonka arvo on poistettu, luodaan uudelleen tähän scopeen
+					if (old != null) {
+						scope.setLocal(name, value);
+						return;
+					}
+					break;
+				}
 			}
+			setLocal(name, value);
 		}
 
 		public synchronized void setLocal(String name, RödaValue value) {
-			map.put(name, value);
+			if (map == null) map = new ConcurrentHashMap<>(4);
+			map.put(name, value == null ? UNDEFINED : value);
+			names |= nameBit(name);
+			version++;
+		}
+
+		private static long nameBit(String name) {
+			return 1L << (name.hashCode() & 63);
 		}
 		
 		public Set<String> getLocalVariableNames() {
+			if (caller != null) createCallerNamespace();
+			Map<String, RödaValue> map = this.map;
+			if (map == null) return Collections.emptySet();
 			return Collections.unmodifiableSet(map.keySet());
 		}
 
@@ -122,15 +193,15 @@ public class Interpreter {
 			if (getTypearg(name) != null) {
 				error("can't override typeargument '" + name + "'");
 			}
+			if (typeargs == null) typeargs = new HashMap<>();
 			typeargs.put(name, value);
 		}
 
 		public Datatype getTypearg(String name) {
-			if (typeargs.containsKey(name)) {
-				return typeargs.get(name);
-			}
-			if (parent.isPresent()) {
-				return parent.get().getTypearg(name);
+			for (RödaScope scope = this; scope != null; scope = scope.parent) {
+				if (scope.typeargs != null && scope.typeargs.containsKey(name)) {
+					return scope.typeargs.get(name);
+				}
 			}
 			return null;
 		}
@@ -166,6 +237,8 @@ public class Interpreter {
 					error("a typeparameter can't have subtypes");
 				return typearg;
 			}
+			// tyyppi ilman alityyppejä ei muutu, joten uutta ei tarvitse luoda
+			if (type.subtypes.isEmpty()) return type;
 			List<Datatype> subtypes = new ArrayList<>();
 			for (Datatype t : type.subtypes) {
 				subtypes.add(substitute(t));
@@ -175,23 +248,24 @@ public class Interpreter {
 		
 		public Map<String, Record> getRecords() {
 			Map<String, Record> records = new HashMap<>();
-			if (parent.isPresent()) {
-				records.putAll(parent.get().getRecords());
+			if (parent != null) {
+				records.putAll(parent.getRecords());
 			}
-			this.records.values().forEach(r -> records.put(r.tree.name, r.tree));
+			if (this.records != null) this.records.values().forEach(r -> records.put(r.tree.name, r.tree));
 			return Collections.unmodifiableMap(records);
 		}
 		
 		public Map<String, RecordDeclaration> getRecordDeclarations() {
 			Map<String, RecordDeclaration> records = new HashMap<>();
-			if (parent.isPresent()) {
-				records.putAll(parent.get().getRecordDeclarations());
+			if (parent != null) {
+				records.putAll(parent.getRecordDeclarations());
 			}
-			records.putAll(this.records);
+			if (this.records != null) records.putAll(this.records);
 			return Collections.unmodifiableMap(records);
 		}
 
 		public void preRegisterRecord(Record record) {
+			if (records == null) records = new HashMap<>();
 			records.put(record.name, new RecordDeclaration(record, INTERPRETER.createRecordClassReflection(record, this)));
 		}
 
@@ -200,10 +274,57 @@ public class Interpreter {
 		}
 		
 		public void registerRecord(RecordDeclaration record) {
+			if (records == null) records = new HashMap<>();
 			records.put(record.tree.name, record);
 		}
 	}
 	
+	/**
+	 * Remembers the value that the name of a command resolved to. The value is
+	 * valid as long as no scope between the command and the root scope has
+	 * defined the name and the version of the root scope has not changed.
+	 */
+	static final class InlineCache {
+		private static final class Entry {
+			final RödaScope root;
+			final int version;
+			final RödaValue value;
+			Entry(RödaScope root, int version, RödaValue value) {
+				this.root = root;
+				this.version = version;
+				this.value = value;
+			}
+		}
+
+		private final String name;
+		private final long bit;
+		private volatile Entry entry;
+
+		InlineCache(String name) {
+			this.name = name;
+			this.bit = RödaScope.nameBit(name);
+		}
+
+		/**
+		 * Returns the value of the name in the scope, or null if it is not defined.
+		 */
+		RödaValue resolve(RödaScope scope) {
+			RödaScope root = scope;
+			while (root.parent != null) {
+				// nimi saattaa olla määritelty välissä olevassa scopessa
+				if ((root.names & bit) != 0) return scope.resolve(name);
+				root = root.parent;
+			}
+			Entry e = entry;
+			int version = root.version;
+			if (e != null && e.root == root && e.version == version) return e.value;
+			// versio luetaan ennen arvoa, jotta samanaikainen muutos mitätöi tallennetun arvon
+			RödaValue value = root.resolve(name);
+			if (value != null) entry = new Entry(root, version, value);
+			return value;
+		}
+	}
+
 	public static class RecordDeclaration {
 		public final Record tree;
 		public final RödaValue reflection;
@@ -228,7 +349,7 @@ public class Interpreter {
 				funcTree.parameters.stream().map(p -> treeToParameter(p, scope)).collect(toList()),
 				funcTree.isVarargs,
 				funcTree.kwparameters.stream().map(p -> treeToParameter(p, scope)).collect(toList()),
-				funcTree.body);
+				funcTree.body, funcTree.profile);
 	}
 	
 	private static Parameter treeToParameter(ParameterTree parTree, RödaScope scope) {
@@ -380,7 +501,7 @@ public class Interpreter {
 				.of("Field.get",
 						(ta, a, k, s, i, o) -> {
 							RödaValue obj = a.get(0);
-							if (!obj.is(new Datatype(record.name, emptyList(), scope))) {
+							if (!obj.is(record.name)) {
 								illegalArguments("illegal argument for Field.get: "
 										+ record.name + " required, got " + obj.typeString());
 							}
@@ -390,7 +511,7 @@ public class Interpreter {
 				.of("Field.set",
 						(ta, a, k, s, i, o) -> {
 							RödaValue obj = a.get(0);
-							if (!obj.is(new Datatype(record.name, emptyList(), scope))) {
+							if (!obj.is(record.name)) {
 								illegalArguments("illegal argument for Field.get: "
 										+ record.name + " required, got " + obj.typeString());
 							}
@@ -440,10 +561,19 @@ public class Interpreter {
 						(list, list2) -> { list.addAll(list2.list()); });
 	}
 
-	public static ExecutorService executor = Executors.newCachedThreadPool();
+	/**
+	 * The scheduler that runs the commands of pipelines and other background
+	 * tasks. It may be replaced before the interpreter is used. Virtual threads
+	 * are used by default if the system property roda.virtualThreads is true
+	 * and the JVM supports them.
+	 */
+	public static Scheduler scheduler =
+			Boolean.getBoolean("roda.virtualThreads") && Scheduler.virtualThreadsSupported()
+			? Scheduler.virtual("röda-virtual")
+			: new Scheduler("röda-worker", Runtime.getRuntime().availableProcessors());
 
 	public static void shutdown() {
-		executor.shutdown();
+		scheduler.shutdown();
 	}
 
 	public static final Interpreter INTERPRETER = new Interpreter();
@@ -452,13 +582,13 @@ public class Interpreter {
 
 	/* kutsupino */
 	
-	public static ThreadLocal<ArrayDeque<String>> callStack = new InheritableThreadLocal<ArrayDeque<String>>() {
-		@Override protected ArrayDeque<String> childValue(ArrayDeque<String> parentValue) {
-			return new ArrayDeque<>(parentValue);
+	public static ThreadLocal<CallStack> callStack = new InheritableThreadLocal<CallStack>() {
+		@Override protected CallStack childValue(CallStack parentValue) {
+			return parentValue.copy();
 		}
 	};
 
-	static { callStack.set(new ArrayDeque<>()); }
+	static { callStack.set(new CallStack()); }
 	
 	/* profiloija */
 	
@@ -481,6 +611,35 @@ public class Interpreter {
 		data.time += value;
 		data.invocations++;
 	}
+
+	/**
+	 * The statistics of all pipes written by the commands at one place in the
+	 * source code.
+	 */
+	public static class PipeProfilerData {
+		public final String command;
+		public int pipes = 0;
+		public long pushed = 0, pulled = 0, producerBlockedNanos = 0, consumerBlockedNanos = 0, highWaterMark = 0;
+
+		public PipeProfilerData(String command) {
+			this.command = command;
+		}
+	}
+
+	/**
+	 * The pipe statistics by the file:line of the command that writes to the pipe.
+	 */
+	public static Map<String, PipeProfilerData> pipeProfilerData = new HashMap<>();
+
+	private synchronized void updatePipeProfilerData(String command, RödaStream.Statistics statistics) {
+		PipeProfilerData data = pipeProfilerData.computeIfAbsent(command, PipeProfilerData::new);
+		data.pipes++;
+		data.pushed += statistics.pushed;
+		data.pulled += statistics.pulled;
+		data.producerBlockedNanos += statistics.producerBlockedNanos;
+		data.consumerBlockedNanos += statistics.consumerBlockedNanos;
+		data.highWaterMark = Math.max(data.highWaterMark, statistics.highWaterMark);
+	}
 	
 	private static ThreadLocal<ArrayDeque<Timer>> timerStack = ThreadLocal.withInitial(ArrayDeque::new);
 	
@@ -545,11 +704,11 @@ public class Interpreter {
 		}
 	}
 
-	private static RödaValue makeErrorObject(Record record, String message,
+	private static RödaValue makeErrorObject(Record record, String message, Deque<String> stack,
 			StackTraceElement[] javaStackTrace, Throwable... causes) {
 		RödaValue errorObject = RödaRecordInstance.of(record, emptyList());
 		errorObject.setField("message", RödaString.of(message));
-		errorObject.setField("stack", RödaList.of("string", callStack.get().stream()
+		errorObject.setField("stack", RödaList.of("string", stack.stream()
 				.map(RödaString::of).collect(toList())));
 		errorObject.setField("javastack", RödaList.of("string", Arrays.stream(javaStackTrace)
 				.map(StackTraceElement::toString).map(RödaString::of)
@@ -557,14 +716,16 @@ public class Interpreter {
 		errorObject.setField("causes", RödaList.of(new Datatype("Error", INTERPRETER.G), Arrays.stream(causes)
 				.map(cause -> cause instanceof RödaException ? ((RödaException) cause).getErrorObject()
 						: makeErrorObject(INTERPRETER.javaErrorRecord,
-								cause.getClass().getName() + ": " + cause.getMessage(), cause.getStackTrace()))
+								cause.getClass().getName() + ": " + cause.getMessage(), stack, cause.getStackTrace()))
 				.collect(toList())));
 		return errorObject;
 	}
 
 	private static RödaException createRödaException(Record record, String message) {
-		RödaValue errorObject = makeErrorObject(record, message, Thread.currentThread().getStackTrace());
-		return new RödaException(message, new ArrayDeque<>(callStack.get()), errorObject);
+		// kutsupinon rivit muodostetaan vasta nyt, kun virhe on tapahtunut
+		Deque<String> stack = callStack.get().format();
+		RödaValue errorObject = makeErrorObject(record, message, stack, Thread.currentThread().getStackTrace());
+		return new RödaException(message, stack, errorObject);
 	}
 	
 	public static void error(String message) {
@@ -610,9 +771,10 @@ public class Interpreter {
 		if (causes.length == 1) javaStackTrace = causes[0].getStackTrace();
 		else javaStackTrace = Thread.currentThread().getStackTrace();
 		
+		Deque<String> stack = callStack.get().format();
 		RödaValue errorObject = makeErrorObject(causes.length == 1 ? INTERPRETER.javaErrorRecord : INTERPRETER.errorRecord,
-				message, javaStackTrace, causes);
-		return new RödaException(causes, new ArrayDeque<>(callStack.get()), errorObject);
+				message, stack, javaStackTrace, causes);
+		return new RödaException(causes, stack, errorObject);
 	}
 
 	public static void error(Throwable... causes) {
@@ -620,13 +782,13 @@ public class Interpreter {
 	}
 
 	public static void error(RödaValue errorObject) {
-		RödaException e = new RödaException(errorObject.getField("message").str(), new ArrayDeque<>(callStack.get()), errorObject);
+		RödaException e = new RödaException(errorObject.getField("message").str(), callStack.get().format(), errorObject);
 		throw e;
 	}
 
 	@SuppressWarnings("unused")
 	private static void printStackTrace() {
-		for (String step : callStack.get()) {
+		for (String step : callStack.get().format()) {
 			System.err.println(step);
 		}
 	}
@@ -661,6 +823,11 @@ public class Interpreter {
 			if (enableProfiling) pushTimer();
 			ProgramTree program = parse(t.tokenize(code, filename));
 			if (enableProfiling) popTimer("<parser>");
+			if (enableOptimization) {
+				if (enableProfiling) pushTimer();
+				Optimizer.optimize(program);
+				if (enableProfiling) popTimer("<optimizer>");
+			}
 			for (List<StatementTree> f : program.preBlocks) {
 				execBlock("pre_load", f, scope);
 			}
@@ -728,6 +895,7 @@ public class Interpreter {
 			TokenList tl = t.tokenize(code, filename);
 			StatementTree statement = parseStatement(tl);
 			tl.accept("<EOF>");
+			if (enableOptimization) Optimizer.optimize(statement);
 			evalStatement(statement, G, in, out, false);
 		} catch (RödaException e) {
 			throw e;
@@ -899,62 +1067,87 @@ public class Interpreter {
 		return val;
 	}
 
-	public void exec(String file, int line,
-			RödaValue value, List<Datatype> typeargs,
-			List<RödaValue> rawArgs, Map<String, RödaValue> rawKwArgs,
-			RödaScope scope, RödaStream in, RödaStream out) {
-		List<RödaValue> args = new ArrayList<>();
-		Map<String, RödaValue> kwargs = new HashMap<>();
-		int i = 0;
-		for (RödaValue val : rawArgs) {
-			val = resolveArgument(val, value.is(FUNCTION) && isReferenceParameter(value, i));
+	private List<RödaValue> resolveArguments(RödaValue value, List<RödaValue> rawArgs) {
+		int size = rawArgs.size(), i = 0;
+		while (i < size && !rawArgs.get(i).is(REFERENCE)) i++;
+		// argumenttilistaa ei tarvitse kopioida, jos siinä ei ole viittauksia
+		if (i == size) return rawArgs;
+		List<RödaValue> args = new ArrayList<>(size);
+		for (int j = 0; j < i; j++) args.add(rawArgs.get(j));
+		for (; i < size; i++) {
+			RödaValue val = rawArgs.get(i);
+			if (val.is(REFERENCE))
+				val = resolveArgument(val, value.is(FUNCTION) && isReferenceParameter(value, i));
 			args.add(val);
-			i++;
 		}
+		return args;
+	}
 
-		for (Parameter kwpar : getKwParameters(value)) {
-			if (!rawKwArgs.containsKey(kwpar.name)) {
-				RödaValue defaultVal = evalExpression(kwpar.defaultValue, G,
-						RödaStream.makeEmptyStream(),
-						RödaStream.makeStream()).impliciteResolve();
-				kwargs.put(kwpar.name, defaultVal);
+	private Map<String, RödaValue> resolveKwArguments(RödaValue value, Map<String, RödaValue> rawKwArgs) {
+		List<Parameter> kwparameters = getKwParameters(value);
+		boolean isKwVarargs = value.is(NFUNCTION) && value.nfunction().isKwVarargs;
+		if (kwparameters.isEmpty() && (!isKwVarargs || rawKwArgs.isEmpty())) return Collections.emptyMap();
+
+		Map<String, RödaValue> kwargs = new HashMap<>();
+		for (Parameter kwpar : kwparameters) {
+			RödaValue val = rawKwArgs.get(kwpar.name);
+			if (val == null && !rawKwArgs.containsKey(kwpar.name)) {
+				kwargs.put(kwpar.name, defaultValue(kwpar));
 				continue;
 			}
-			RödaValue val = rawKwArgs.get(kwpar.name);
 			val = resolveArgument(val, false);
 			kwargs.put(kwpar.name, val);
 		}
 		
-		if (value.is(NFUNCTION) && value.nfunction().isKwVarargs) {
+		if (isKwVarargs) {
 			for (Entry<String, RödaValue> arg : rawKwArgs.entrySet()) {
 				if (!kwargs.containsKey(arg.getKey())) {
 					kwargs.put(arg.getKey(), resolveArgument(arg.getValue(), false));
 				}
 			}
 		}
+		return kwargs;
+	}
+
+	/**
+	 * Evaluates the default value of a kw parameter. A literal default value is
+	 * evaluated only once.
+	 */
+	private RödaValue defaultValue(Parameter parameter) {
+		RödaValue value = parameter.constantDefault;
+		if (value != null) return value;
+		value = evalExpression(parameter.defaultValue, G,
+				RödaStream.makeEmptyStream(),
+				RödaStream.makeStream()).impliciteResolve();
+		ExpressionTree.Type type = parameter.defaultValue.type;
+		if (type == ExpressionTree.Type.STRING || type == ExpressionTree.Type.PATTERN
+				|| type == ExpressionTree.Type.INTEGER || type == ExpressionTree.Type.FLOATING
+				|| type == ExpressionTree.Type.BOOLEAN)
+			parameter.constantDefault = value;
+		return value;
+	}
+
+	public void exec(String file, int line,
+			RödaValue value, List<Datatype> typeargs,
+			List<RödaValue> rawArgs, Map<String, RödaValue> rawKwArgs,
+			RödaScope scope, RödaStream in, RödaStream out) {
+		List<RödaValue> args = resolveArguments(value, rawArgs);
+		Map<String, RödaValue> kwargs = resolveKwArguments(value, rawKwArgs);
 
 		if (enableProfiling) {
 			pushTimer();
 		}
-		if (enableDebug) {
-			if (args.size() > 0) {
-				callStack.get().push("calling " + value.str()
-					+ " with argument" + (args.size() == 1 ? " " : "s ")
-					+ args.stream()
-						.map(RödaValue::str)
-						.collect(joining(", "))
-					+ "\n\tat " + file + ":" + line);
-			}
-			else {
-				callStack.get().push("calling " + value.str()
-					+ " with no arguments\n"
-					+ "\tat " + file + ":" + line);
-			}
+		if (jitThreshold > 0 && value.is(FUNCTION) && !value.is(NFUNCTION)
+				&& value.function().profile != null) {
+			// kutsukerrat ratkaisevat, milloin funktion runko käännetään
+			value.function().profile.invocations++;
 		}
+		if (enableDebug) callStack.get().pushCall(value, args, file, line);
 		try {
 			execWithoutErrorHandling(value, typeargs, args, kwargs, scope, in, out);
 		}
 		catch (RödaException e) { throw e; }
+		catch (StreamAbandonedException e) { throw e; }
 		catch (Throwable e) { error(e); }
 		finally {
 			if (enableDebug) {
@@ -966,8 +1159,9 @@ public class Interpreter {
 		}
 	}
 
+	/* käännetyt funktiot ladataan omilla lataajillaan, joten niiden käsittelemien poikkeusten on oltava julkisia */
 	@SuppressWarnings("serial")
-	private static class ReturnException extends RuntimeException { }
+	public static class ReturnException extends RuntimeException { }
 	private static final ReturnException RETURN_EXCEPTION = new ReturnException();
 
 	public void execWithoutErrorHandling(
@@ -995,7 +1189,7 @@ public class Interpreter {
 			RödaScope newScope = value.localScope() == null
 					? new RödaScope(G) : new RödaScope(value.localScope());
 			
-			newScope.setLocal("caller_namespace", RödaNamespace.of(scope));
+			newScope.setCaller(scope);
 			
 			if (typeparams.size() != typeargs.size())
 				illegalArguments("illegal number of typearguments for '" + name + "': "
@@ -1023,6 +1217,15 @@ public class Interpreter {
 			for (Parameter p : kwparameters) {
 				newScope.setLocal(p.name, kwargs.get(p.name));
 			}
+			// profiloitaessa käännettyä runkoa ei käytetä, jotta komentojen ajat tilastoidaan
+			if (jitThreshold > 0 && !enableProfiling) {
+				FunctionCompiler.CompiledBody compiled
+						= FunctionCompiler.compiledBody(this, value.function(), jitThreshold);
+				if (compiled != null) {
+					compiled.run(newScope, in, out);
+					return;
+				}
+			}
 			for (StatementTree s : value.function().body) {
 				try {
 					evalStatement(s, newScope, in, out, false);
@@ -1043,46 +1246,110 @@ public class Interpreter {
 	}
 	
 	public boolean singleThreadMode = false;
-	
-	private void evalStatement(StatementTree statement, RödaScope scope,
-			RödaStream in, RödaStream out, boolean redirected) {
-		if (singleThreadMode) {
-			evalStatementST(statement, scope, in, out, redirected);
-		}
-		else {
-			evalStatementCC(statement, scope, in, out, redirected);
-		}
+
+	/**
+	 * The number of calls after which the body of a function is compiled to a
+	 * JVM class, or 0 if function bodies are never compiled. Compilation is
+	 * disabled by default; the default can be set with the system property
+	 * roda.jitThreshold.
+	 */
+	public int jitThreshold = Integer.getInteger("roda.jitThreshold", 0);
+
+	/**
+	 * If true, adjacent native commands of a pipeline that process one value at a
+	 * time are run in one thread without pipes between them. Commands are not
+	 * fused when profiling is enabled.
+	 */
+	public boolean enableFusion = true;
+
+	/**
+	 * If true, the syntax trees of loaded programs are simplified before they are
+	 * run: constant expressions are folded, branches that can never be taken are
+	 * removed and regular expression literals are compiled once.
+	 */
+	public boolean enableOptimization = true;
+
+	/**
+	 * The capacity of pipes if it is not set. It keeps the commands of a pipeline
+	 * busy without letting a fast producer fill the memory.
+	 */
+	public static final int DEFAULT_PIPE_CAPACITY = 1024;
+
+	/**
+	 * The default capacity of the pipes created between the commands of a pipeline.
+	 * 0 means that the pipes are unbounded. A pipeline can override this by
+	 * defining the variable PIPE_CAPACITY.
+	 */
+	public int pipeCapacity = DEFAULT_PIPE_CAPACITY;
+
+	/**
+	 * Returns the capacity of the pipes of a pipeline run in the given scope.
+	 *
+	 * @return the capacity, or 0 if the pipes are unbounded
+	 */
+	public int pipeCapacity(RödaScope scope) {
+		RödaValue capacity = scope.resolve("PIPE_CAPACITY");
+		if (capacity == null) return pipeCapacity;
+		capacity = capacity.impliciteResolve();
+		checkInteger("PIPE_CAPACITY", capacity);
+		return (int) capacity.integer();
 	}
 	
-	private void evalStatementST(StatementTree statement, RödaScope scope,
+	void evalStatement(StatementTree statement, RödaScope scope,
 			RödaStream in, RödaStream out, boolean redirected) {
+		int n = statement.commands.size();
+		if (n == 1 && !enableProfiling) {
+			// yksittäinen komento suoritetaan suoraan, koska putkia ja tehtäviä ei tarvita
+			Runnable body = evalCommand(statement.commands.get(0), scope, in, out, in, out);
+			if (enableDebug) callStack.get().pushCommands(statement.commands, 0, 0);
+			try {
+				body.run();
+			} finally {
+				if (enableDebug) callStack.get().pop();
+				if (redirected) out.finish();
+			}
+			return;
+		}
+		RödaStream[] ins = new RödaStream[n], outs = new RödaStream[n];
+		Runnable[] bodies = new Runnable[n];
+		RödaStream[] pipes = new RödaStream[n-1];
+		int capacity = n > 1 ? pipeCapacity(scope) : 0;
+		TaskGroup tasks = n > 1 ? new TaskGroup() : null;
 		RödaStream _in = in;
-		int i = 0;
-		for (Command command : statement.commands) {
-			boolean last = i == statement.commands.size()-1;
-			RödaStream _out = last ? out : RödaStream.makeStream();
-			evalCommand(command, scope,
+		for (int j = 0; j < n; j++) {
+			boolean last = j == n-1;
+			RödaStream _out = last ? out : (pipes[j] = tasks.pipe(capacity));
+			ins[j] = _in;
+			outs[j] = _out;
+			bodies[j] = evalCommand(statement.commands.get(j), scope,
 					in, out,
-					_in, _out).run();
-			if (!last || redirected)
-				_out.finish();
+					_in, _out);
 			_in = _out;
-			i++;
 		}
-	}
 
-	private void evalStatementCC(StatementTree statement, RödaScope scope,
-			RödaStream in, RödaStream out, boolean redirected) {
-		RödaStream _in = in;
+		// peräkkäiset per-elementti-komennot suoritetaan samassa säikeessä
+		// profiloitaessa jokainen komento ajetaan erikseen, jotta sen aika ja putki tilastoidaan
+		boolean fusion = enableFusion && !enableProfiling;
+		List<int[]> units = new ArrayList<>();
+		for (int j = 0; j < n; j++) {
+			int k = j;
+			if (fusion && isElementwise(bodies[j])) {
+				while (k+1 < n && isElementwise(bodies[k+1])) k++;
+			}
+			units.add(new int[] { j, k });
+			j = k;
+		}
+
 		int i = 0;
-		Runnable[] runnables = new Runnable[statement.commands.size()];
-		Timer[] timers = new Timer[statement.commands.size()];
-		for (Command command : statement.commands) {
-			boolean last = i == statement.commands.size()-1;
-			RödaStream _out = last ? out : RödaStream.makeStream();
-			Runnable tr = evalCommand(command, scope,
-					in, out,
-					_in, _out);
+		Runnable[] runnables = new Runnable[units.size()];
+		Timer[] timers = new Timer[units.size()];
+		for (int[] unit : units) {
+			boolean last = unit[1] == n-1;
+			RödaStream stageIn = ins[unit[0]];
+			RödaStream _out = outs[unit[1]];
+			Runnable tr = unit[0] == unit[1] ? bodies[unit[0]]
+					: fuse(Arrays.asList(bodies).subList(unit[0], unit[1]+1), stageIn, _out);
+			if (enableProfiling && !last) _out.collectStatistics();
 			Timer timer = timers[i] = enableProfiling ? new Timer() : null;
 			runnables[i] = () -> {
 				try {
@@ -1090,13 +1357,18 @@ public class Interpreter {
 						timerStack.get().push(timer);
 						timer.start();
 					}
-					if (enableDebug)
-						callStack.get().push("command " + command.asString()
-							+ "\n\tat " + command.file + ":" + command.line);
+					if (enableDebug) callStack.get().pushCommands(statement.commands, unit[0], unit[1]);
 					tr.run();
+				} catch (StreamAbandonedException e) {
+					// seuraava komento on lopettanut lukemisen, joten tämä komento voi lopettaa
+					if (last || e.getStream() != _out) throw e;
+				} catch (Throwable e) {
+					// virhe pysäyttää myös muut putken komennot
+					for (RödaStream pipe : pipes) pipe.cancel();
+					throw e;
 				} finally {
 					if (enableDebug) {
-						if (runnables.length > 1) callStack.get().clear();
+						if (!last && runnables.length > 1) callStack.get().clear();
 						else callStack.get().pop();
 					}
 					if (enableProfiling) {
@@ -1106,9 +1378,11 @@ public class Interpreter {
 					// sulje virta jos se on putki tai muulla tavalla uudelleenohjaus
 					if (!last || redirected)
 						_out.finish();
+					// ilmoita edelliselle komennolle, ettei sen tulostetta enää lueta
+					if (stageIn != in)
+						stageIn.abandon();
 				}
 			};
-			_in = _out;
 			i++;
 		}
 
@@ -1120,41 +1394,7 @@ public class Interpreter {
 		}
 		try {
 			if (runnables.length == 1) runnables[0].run();
-			else {
-				Future<?>[] futures = new Future<?>[runnables.length];
-				i = 0;
-				for (Runnable r : runnables) {
-					futures[i++] = executor.submit(r);
-				}
-				List<ExecutionException> exceptions = new ArrayList<>();
-				try {
-					i = futures.length;
-					while (i --> 0) {
-						try {
-							futures[i].get();
-						} catch (ExecutionException e) {
-							exceptions.add(e);
-						}
-					}
-				} catch (InterruptedException e) {
-					error(e);
-				} 
-				
-				if (!exceptions.isEmpty()) {
-					error(exceptions.stream().map(e -> {
-						if (e.getCause() instanceof RödaException) {
-							return (RödaException) e.getCause();
-						}
-						if (e.getCause() instanceof ReturnException) {
-							return createRödaException(leakyPipeErrorRecord, "cannot pipe a return command");
-						}
-						if (e.getCause() instanceof BreakOrContinueException) {
-							return createRödaException(leakyPipeErrorRecord, "cannot pipe a break or continue command");
-						}
-						return createRödaException(e.getCause());
-					}).toArray(n -> new RödaException[n]));
-				}
-			}
+			else tasks.run(runnables);
 		}
 		finally {
 			if (enableProfiling) {
@@ -1164,13 +1404,131 @@ public class Interpreter {
 					for (Timer t : timers) timer.add(t);
 					timer.start();
 				}
+				for (int j = 0; j < pipes.length; j++) {
+					if (pipes[j].getStatistics() == null) continue;
+					Command command = statement.commands.get(j);
+					updatePipeProfilerData(command.file + ":" + command.line, pipes[j].getStatistics());
+				}
+			}
+		}
+	}
+
+	/**
+	 * A group of tasks that run at the same time and pass values to each other
+	 * through pipes, like the commands of a pipeline. In single thread mode the
+	 * tasks are coroutines that take turns and the pipes are cooperative.
+	 */
+	public final class TaskGroup {
+		private final Coroutines coroutines;
+
+		private TaskGroup() {
+			// yksisäikeisessä tilassa tehtävät vuorottelevat niin, että vain yksi on käynnissä kerrallaan
+			coroutines = singleThreadMode ? Coroutines.start() : null;
+		}
+
+		/**
+		 * Creates a pipe between two tasks of the group.
+		 *
+		 * @param capacity
+		 *            the maximum number of buffered values, or 0 for the default
+		 *            capacity, which is unbounded except in single thread mode
+		 */
+		public RödaStream pipe(int capacity) {
+			return coroutines != null ? coroutines.pipe(capacity) : RödaStream.makePipe(capacity);
+		}
+
+		/**
+		 * Creates a pipe that several tasks of the group may push to at the same
+		 * time.
+		 *
+		 * @param capacity
+		 *            the maximum number of buffered values, or 0 for the default
+		 *            capacity, which is unbounded except in single thread mode
+		 */
+		public RödaStream sharedPipe(int capacity) {
+			// vain yksi tehtävä on kerrallaan käynnissä, joten yhteistoiminnallinen putki kelpaa jaetuksi
+			return coroutines != null ? coroutines.pipe(capacity) : RödaStream.makeStream(capacity);
+		}
+
+		/**
+		 * Runs the tasks and returns when all of them are finished. The last task
+		 * is run in the current thread. The errors of the tasks are rethrown as
+		 * one error.
+		 */
+		public void run(Runnable... tasks) {
+			List<Throwable> exceptions = new ArrayList<>();
+			StreamAbandonedException abandoned = null;
+			if (coroutines != null) {
+				for (Throwable e : coroutines.run(tasks)) {
+					if (e instanceof StreamAbandonedException)
+						abandoned = (StreamAbandonedException) e;
+					else
+						exceptions.add(e);
+				}
+				rethrowPipelineErrors(exceptions, abandoned);
+				return;
+			}
+			// viimeinen tehtävä suoritetaan tässä säikeessä, joka muuten vain odottaisi
+			Future<?>[] futures = new Future<?>[tasks.length-1];
+			for (int i = 0; i < futures.length; i++) {
+				futures[i] = scheduler.submit(tasks[i]);
+			}
+			try {
+				scheduler.runInline(tasks[tasks.length-1]);
+			} catch (StreamAbandonedException e) {
+				abandoned = e;
+			} catch (Throwable e) {
+				exceptions.add(e);
+			}
+			try {
+				int i = futures.length;
+				while (i --> 0) {
+					try {
+						Scheduler.await(futures[i]);
+					} catch (ExecutionException e) {
+						if (e.getCause() instanceof StreamAbandonedException)
+							abandoned = (StreamAbandonedException) e.getCause();
+						else
+							exceptions.add(e.getCause());
+					}
+				}
+			} catch (InterruptedException e) {
+				error(e);
 			}
+			rethrowPipelineErrors(exceptions, abandoned);
+		}
+	}
+
+	/**
+	 * Creates a new group of tasks for a command that runs other commands at the
+	 * same time.
+	 */
+	public TaskGroup newTaskGroup() {
+		return new TaskGroup();
+	}
+
+	private void rethrowPipelineErrors(List<Throwable> exceptions, StreamAbandonedException abandoned) {
+		if (!exceptions.isEmpty()) {
+			error(exceptions.stream().map(e -> {
+				if (e instanceof RödaException) {
+					return (RödaException) e;
+				}
+				if (e instanceof ReturnException) {
+					return createRödaException(leakyPipeErrorRecord, "cannot pipe a return command");
+				}
+				if (e instanceof BreakOrContinueException) {
+					return createRödaException(leakyPipeErrorRecord, "cannot pipe a break or continue command");
+				}
+				return createRödaException(e);
+			}).toArray(size -> new RödaException[size]));
 		}
+		// ulompi putki on hylätty, joten välitetään tieto eteenpäin
+		if (abandoned != null) throw abandoned;
 	}
 
 	@SuppressWarnings("serial")
-	private static class BreakOrContinueException extends RuntimeException {
-		private boolean isBreak;
+	public static class BreakOrContinueException extends RuntimeException {
+		boolean isBreak;
 		private BreakOrContinueException(boolean isBreak) { this.isBreak = isBreak; }
 	}
 	private static final BreakOrContinueException BREAK_EXCEPTION = new BreakOrContinueException(true);
@@ -1208,47 +1566,164 @@ public class Interpreter {
 		return map;
 	}
 
+	/**
+	 * A NORMAL command whose function and arguments have already been evaluated.
+	 */
+	private final class CommandCall implements Runnable {
+		final Command cmd;
+		final RödaValue function;
+		final List<Datatype> typeargs;
+		final List<RödaValue> args;
+		final Map<String, RödaValue> kwargs;
+		final RödaScope scope;
+		final RödaStream in, out;
+
+		CommandCall(Command cmd, RödaValue function, List<Datatype> typeargs,
+				List<RödaValue> args, Map<String, RödaValue> kwargs,
+				RödaScope scope, RödaStream in, RödaStream out) {
+			this.cmd = cmd;
+			this.function = function;
+			this.typeargs = typeargs;
+			this.args = args;
+			this.kwargs = kwargs;
+			this.scope = scope;
+			this.in = in;
+			this.out = out;
+		}
+
+		@Override
+		public void run() {
+			exec(cmd.file, cmd.line, function, typeargs, args, kwargs, scope, in, out);
+		}
+
+		ElementFunction bind() {
+			List<RödaValue> args = resolveArguments(function, this.args);
+			Map<String, RödaValue> kwargs = resolveKwArguments(function, this.kwargs);
+			NativeFunction nfunction = function.nfunction();
+			checkArgs(nfunction.name, nfunction.isVarargs,
+					nfunction.parameters, nfunction.kwparameters,
+					args, kwargs, scope);
+			return nfunction.elementBody.bind(typeargs, args, kwargs, scope);
+		}
+	}
+
+	private static boolean isElementwise(Runnable command) {
+		if (!(command instanceof CommandCall)) return false;
+		CommandCall call = (CommandCall) command;
+		return call.function.is(NFUNCTION)
+				&& call.function.nfunction().elementBody != null
+				&& call.function.nfunction().elementBody.isElementwise(call.args);
+	}
+
+	/**
+	 * Combines per-element commands to one loop that reads the input of the first
+	 * command and pushes to the output of the last command.
+	 */
+	private Runnable fuse(List<Runnable> commands, RödaStream in, RödaStream out) {
+		return () -> {
+			Consumer<RödaValue> sink = out::push;
+			for (int i = commands.size()-1; i >= 0; i--) {
+				ElementFunction function = bindFused((CommandCall) commands.get(i));
+				Consumer<RödaValue> next = sink;
+				sink = value -> function.accept(value, next);
+			}
+			try {
+				in.forAll(sink);
+			}
+			catch (RödaException e) { throw e; }
+			catch (StreamAbandonedException e) { throw e; }
+			catch (Throwable e) { error(e); }
+		};
+	}
+
+	/**
+	 * Binds the arguments of a fused command. Errors are handled like in exec,
+	 * so they are reported the same way as when the command is not fused.
+	 */
+	private ElementFunction bindFused(CommandCall call) {
+		if (enableDebug) callStack.get().pushFusedCall(call.function, call.cmd.file, call.cmd.line);
+		try {
+			return call.bind();
+		}
+		catch (RödaException e) { throw e; }
+		catch (StreamAbandonedException e) { throw e; }
+		catch (Throwable e) { error(e); return null; }
+		finally {
+			if (enableDebug) callStack.get().pop();
+		}
+	}
+
 	public Runnable evalCommand(Command cmd,
 			RödaScope scope,
 			RödaStream in, RödaStream out,
 			RödaStream _in, RödaStream _out) {
 		
 		if (cmd.type == Command.Type.NORMAL) {
-			RödaValue function = evalExpression(cmd.name, scope, in, out);
-			List<Datatype> typeargs = cmd.typearguments.stream()
-					.map(scope::substitute).collect(toList());
+			RödaValue function = null;
+			if (cmd.name.type == ExpressionTree.Type.VARIABLE) {
+				InlineCache cache = cmd.nameCache;
+				if (cache == null) cmd.nameCache = cache = new InlineCache(cmd.name.variable);
+				function = cache.resolve(scope);
+			}
+			// tuntemattoman nimen virheilmoitus muodostetaan tavalliseen tapaan
+			if (function == null) function = evalExpression(cmd.name, scope, in, out);
+			List<Datatype> typeargs = cmd.typearguments.isEmpty() ? emptyList()
+					: cmd.typearguments.stream().map(scope::substitute).collect(toList());
 			List<RödaValue> args = flattenArguments(cmd.arguments.arguments, scope, in, out, false);
 			Map<String, RödaValue> kwargs = kwargsToMap(cmd.arguments.kwarguments, scope, in, out, false);
-			Runnable r = () -> {
-				exec(cmd.file, cmd.line, function, typeargs, args, kwargs, scope, _in, _out);
-			};
-			return r;
+			return new CommandCall(cmd, function, typeargs, args, kwargs, scope, _in, _out);
 		}
 		
 		if (cmd.type == Command.Type.INTERLEAVE) {
-			// TODO tee monisäikeinen versio?
 			return () -> {
+				// komennot suoritetaan samaan aikaan, jotta tulosteet voidaan lomittaa sitä mukaa kuin niitä syntyy
 				int size = cmd.cmds.size();
-				int i = 0;
-				
+				int capacity = pipeCapacity(scope);
+				TaskGroup tasks = new TaskGroup();
 				RödaStream[] __outs = new RödaStream[size];
-				for (Command icmd : cmd.cmds) {
-					RödaStream __in = RödaStream.makeEmptyStream();
-					__outs[i] = RödaStream.makeStream();
-					evalCommand(icmd, scope, in, out, __in, __outs[i]).run();
-					i++;
+				for (int i = 0; i < size; i++) {
+					__outs[i] = tasks.pipe(capacity > 0 ? capacity : RödaStream.BATCH_SIZE);
 				}
 				
-				for (RödaStream __out : __outs) __out.finish();
-				
-				i = 0;
-				while (true) {
-					RödaValue val = __outs[i].pull();
-					if (val == null) break;
-					_out.push(val);
-					i++; i %= size;
+				Runnable[] runnables = new Runnable[size+1];
+				for (int i = 0; i < size; i++) {
+					RödaStream __in = RödaStream.makeEmptyStream();
+					RödaStream __out = __outs[i];
+					Runnable body = evalCommand(cmd.cmds.get(i), scope, in, out, __in, __out);
+					runnables[i] = () -> {
+						try {
+							body.run();
+						} catch (StreamAbandonedException e) {
+							// lomitus on päättynyt, joten komento voi lopettaa
+							if (e.getStream() != __out) throw e;
+						} catch (Throwable e) {
+							for (RödaStream pipe : __outs) pipe.cancel();
+							throw e;
+						} finally {
+							__out.finish();
+						}
+					};
 				}
-				for (RödaStream __out : __outs) if (__out.open()) streamError("streams of mixed length");
+				runnables[size] = () -> {
+					try {
+						int i = 0;
+						while (true) {
+							RödaValue val = __outs[i].pull();
+							if (val == null) break;
+							_out.push(val);
+							i++; i %= size;
+						}
+						for (RödaStream __out : __outs) {
+							// keskeytetty komento on epäonnistunut, ja sen virhe ilmoitetaan sellaisenaan
+							if (__out.abandoned()) return;
+						}
+						for (RödaStream __out : __outs) if (__out.open()) streamError("streams of mixed length");
+					} finally {
+						// ilmoita komennoille, ettei niiden tulostetta enää lueta
+						for (RödaStream __out : __outs) __out.abandon();
+					}
+				};
+				tasks.run(runnables);
 			};
 		}
 		
@@ -1292,17 +1767,16 @@ public class Interpreter {
 				error("bad lvalue for '" + cmd.operator + "': " + e.asString());
 			Consumer<RödaValue> assign, assignLocal;
 			if (e.type == ExpressionTree.Type.VARIABLE) {
+				// viittauksen kautta sijoitetaan viitattuun muuttujaan, muuten suoraan scopeen
 				assign = v -> {
 					RödaValue value = scope.resolve(e.variable);
-					if (value == null || !value.is(REFERENCE))
-						value = RödaReference.of(e.variable, scope, e.file, e.line);
-					value.assign(v);
+					if (value != null && value.is(REFERENCE)) value.assign(v);
+					else scope.set(e.variable, v);
 				};
 				assignLocal = v -> {
 					RödaValue value = scope.resolve(e.variable);
-					if (value == null || !value.is(REFERENCE))
-						value = RödaReference.of(e.variable, scope, e.file, e.line);
-					value.assignLocal(v);
+					if (value != null && value.is(REFERENCE)) value.assignLocal(v);
+					else scope.setLocal(e.variable, v);
 				};
 			}
 			else if (e.type == ExpressionTree.Type.ELEMENT) {
@@ -1435,7 +1909,16 @@ public class Interpreter {
 				r = () -> {
 					RödaValue v = resolve.get();
 					checkListOrString(".=", v);
-					if (v.is(LIST)) {
+					if (v.is(BYTES)) {
+						// tavut ovat muuttumattomia, joten muuttujaan sijoitetaan uusi arvo
+						RödaBytes bytes = (RödaBytes) v;
+						for (RödaValue arg : args) {
+							checkList(".=", arg);
+							bytes = bytes.concat(arg.is(BYTES) ? (RödaBytes) arg : RödaBytes.of(arg.list()));
+						}
+						assign.accept(bytes);
+					}
+					else if (v.is(LIST)) {
 						for (RödaValue arg : args) {
 							checkList(".=", arg);
 							v.addAll(arg.list());
@@ -1443,7 +1926,7 @@ public class Interpreter {
 					}
 					else {
 						checkArgs(".=", 1, args.size());
-						assign.accept(RödaString.of(v.str()+args.get(0).str()));
+						assign.accept(RödaString.concat(v, args.get(0)));
 					}
 				};
 			} break;
@@ -1485,17 +1968,12 @@ public class Interpreter {
 				r = null;
 			}
 			Runnable finalR = () -> {
-				if (enableDebug) {
-					callStack.get().push("variable command " + e.asString() + " " + cmd.operator + " "
-						+ args.stream()
-							.map(RödaValue::str)
-							.collect(joining(" "))
-						+ "\n\tat " + cmd.file + ":" + cmd.line);
-				}
+				if (enableDebug) callStack.get().pushVariableCommand(cmd, args);
 				try {
 					r.run();
 				}
 				catch (RödaException ex) { throw ex; }
+				catch (StreamAbandonedException ex) { throw ex; }
 				catch (Throwable ex) { error(ex); }
 				finally {
 					if (enableDebug) callStack.get().pop();
@@ -1512,7 +1990,8 @@ public class Interpreter {
 				boolean goToElse = true;
 				do {
 					RödaScope newScope = new RödaScope(scope);
-					if (evalCond(commandName, cmd.cond, scope, _in) ^ neg) break;
+					// optimoija poistaa vakioehdon, jolloin haara suoritetaan aina
+					if (cmd.cond != null && evalCond(commandName, cmd.cond, scope, _in) ^ neg) break;
 					goToElse = false;
 					try {
 						for (StatementTree s : cmd.body) {
@@ -1536,9 +2015,7 @@ public class Interpreter {
 		if (cmd.type == Command.Type.FOR) {
 			Runnable r;
 			if (cmd.list != null) {
-				if (cmd.variables.size() != 1) error("invalid for statement: there must be only 1 variable when iterating a list");
-				RödaValue list = evalExpression(cmd.list, scope, in, out).impliciteResolve();
-				checkList("for", list);
+				RödaValue list = evalForList(cmd, scope, in, out);
 				r = () -> {
 					for (RödaValue val : list.list()) {
 						RödaScope newScope = new RödaScope(scope);
@@ -1556,26 +2033,9 @@ public class Interpreter {
 				};
 			} else {
 				r = () -> {
-					String firstVar = cmd.variables.get(0);
-					List<String> otherVars = cmd.variables.subList(1, cmd.variables.size());
 					while (true) {
-						RödaValue val = _in.pull();
-						if (val == null) break;
-
-						RödaScope newScope = new RödaScope(scope);
-						newScope.setLocal(firstVar, val);
-						for (String var : otherVars) {
-							val = _in.pull();
-
-							if (val == null) {
-								String place = "for loop: "
-										+ "for " + cmd.variables.stream().collect(joining(", "))
-										+ (cmd.list != null ? " in " + cmd.list.asString() : "")
-										+ " at " + cmd.file + ":" + cmd.line;
-								emptyStream("empty stream (in " + place + ")");
-							}
-							newScope.setLocal(var, val);
-						}
+						RödaScope newScope = pullForScope(cmd, scope, _in);
+						if (newScope == null) break;
 
 						if (cmd.cond != null
 								&& evalCond("for if", cmd.cond, newScope, _in))
@@ -1604,6 +2064,8 @@ public class Interpreter {
 					throw e;
 				} catch (BreakOrContinueException e) {
 					throw e;
+				} catch (StreamAbandonedException e) {
+					throw e;
 				} catch (Exception e) {
 					if (cmd.variable != null) {
 						RödaScope newScope = new RödaScope(scope);
@@ -1611,7 +2073,7 @@ public class Interpreter {
 						if (e instanceof RödaException)
 							errorObject = ((RödaException) e).getErrorObject();
 						else errorObject = makeErrorObject(javaErrorRecord, e.getClass().getName() + ": "
-								+ e.getMessage(),
+								+ e.getMessage(), callStack.get().format(),
 								e.getStackTrace());
 						newScope.setLocal(cmd.variable, errorObject);
 						for (StatementTree s : cmd.elseBody) {
@@ -1632,6 +2094,8 @@ public class Interpreter {
 					throw e;
 				} catch (BreakOrContinueException e) {
 					throw e;
+				} catch (StreamAbandonedException e) {
+					throw e;
 				} catch (Exception e) {} // virheet ohitetaan TODO virheenkäsittely
 			};
 			return r;
@@ -1666,10 +2130,68 @@ public class Interpreter {
 		return null;
 	}
 
-	private boolean evalCond(String cmd, StatementTree cond, RödaScope scope, RödaStream in) {
-		RödaStream condOut = RödaStream.makeStream();
-		evalStatement(cond, scope, in, condOut, true);
+	/**
+	 * Evaluates the list of a for loop that iterates a list.
+	 */
+	RödaValue evalForList(Command cmd, RödaScope scope, RödaStream in, RödaStream out) {
+		if (cmd.variables.size() != 1) error("invalid for statement: there must be only 1 variable when iterating a list");
+		RödaValue list = evalExpression(cmd.list, scope, in, out).impliciteResolve();
+		checkList("for", list);
+		return list;
+	}
+
+	/**
+	 * Pulls the values of one iteration of a for loop that iterates its input.
+	 *
+	 * @return the scope of the iteration, or null if the input is finished
+	 */
+	RödaScope pullForScope(Command cmd, RödaScope scope, RödaStream in) {
+		RödaValue val = in.pull();
+		if (val == null) return null;
+
+		RödaScope newScope = new RödaScope(scope);
+		newScope.setLocal(cmd.variables.get(0), val);
+		for (int i = 1; i < cmd.variables.size(); i++) {
+			val = in.pull();
+
+			if (val == null) {
+				String place = "for loop: "
+						+ "for " + cmd.variables.stream().collect(joining(", "))
+						+ (cmd.list != null ? " in " + cmd.list.asString() : "")
+						+ " at " + cmd.file + ":" + cmd.line;
+				emptyStream("empty stream (in " + place + ")");
+			}
+			newScope.setLocal(cmd.variables.get(i), val);
+		}
+		return newScope;
+	}
+
+	boolean evalCond(String cmd, StatementTree cond, RödaScope scope, RödaStream in) {
 		boolean brk = false;
+		List<ExpressionTree> direct = directValues(cond);
+		if (direct != null) {
+			// ehto [ a, b ] lasketaan suoraan ilman virtaa
+			if (enableDebug) callStack.get().pushCommands(cond.commands, 0, 0);
+			try {
+				if (direct.size() == 1) {
+					RödaValue val = evalExpression(direct.get(0), scope, in, NO_OUTPUT).impliciteResolve();
+					checkBoolean(cmd, val);
+					return !val.bool();
+				}
+				RödaValue[] values = new RödaValue[direct.size()];
+				for (int i = 0; i < values.length; i++)
+					values[i] = evalExpression(direct.get(i), scope, in, NO_OUTPUT).impliciteResolve();
+				for (RödaValue val : values) {
+					checkBoolean(cmd, val);
+					brk = brk || !val.bool();
+				}
+				return brk;
+			} finally {
+				if (enableDebug) callStack.get().pop();
+			}
+		}
+		RödaStream condOut = RödaStream.makeCollector();
+		evalStatement(cond, scope, in, condOut, true);
 		while (true) {
 			RödaValue val = condOut.pull();
 			if (val == null) break;
@@ -1679,13 +2201,55 @@ public class Interpreter {
 		return brk;
 	}
 
+	/* lausekkeet eivät tulosta mitään, mutta niille on annettava virta */
+	private static final RödaStream NO_OUTPUT = RödaStream.makeEmptyStream();
+
+	/**
+	 * Returns the elements of the statement if it is a list literal, like
+	 * [ a < b ], that outputs its elements. The values of such a statement can be
+	 * computed without running it. Otherwise returns null.
+	 */
+	private static List<ExpressionTree> directValues(StatementTree statement) {
+		if (statement.commands.size() != 1) return null;
+		Command cmd = statement.commands.get(0);
+		if (cmd.type != Command.Type.NORMAL || cmd.name.type != ExpressionTree.Type.LIST) return null;
+		if (!cmd.typearguments.isEmpty() || !cmd.arguments.arguments.isEmpty()
+				|| !cmd.arguments.kwarguments.isEmpty()) return null;
+		return cmd.name.list;
+	}
+
+	/**
+	 * Evaluates a statement expression, [ statement ], whose value is a list of
+	 * the values the statement outputs.
+	 */
+	private RödaValue evalStatementList(ExpressionTree exp, RödaScope scope, RödaStream in) {
+		RödaStream _out = RödaStream.makeCollector();
+		evalStatement(exp.statement, scope, in, _out, true);
+		return _out.readAll();
+	}
+
+	/**
+	 * Evaluates a statement expression, (statement), that must output exactly
+	 * one value.
+	 */
+	private RödaValue evalStatementSingle(ExpressionTree exp, RödaScope scope, RödaStream in) {
+		RödaStream _out = RödaStream.makeCollector();
+		evalStatement(exp.statement, scope, in, _out, true);
+		RödaValue val = _out.pull();
+		if (val == null)
+			emptyStream("empty stream (in statement expression: " + exp.asString() + ")");
+		if (_out.pull() != null)
+			fullStream("stream is full (in statement expression: " + exp.asString() + ")");
+		return val;
+	}
+
 	private RödaValue evalExpression(ExpressionTree exp, RödaScope scope, RödaStream in, RödaStream out) {
 		return evalExpressionWithoutErrorHandling(exp, scope, in, out, false);
 	}
 
 	private RödaValue evalExpression(ExpressionTree exp, RödaScope scope, RödaStream in, RödaStream out,
 			boolean variablesAreReferences) {
-		if (enableDebug) callStack.get().push("expression " + exp.asString() + "\n\tat " + exp.file + ":" + exp.line);
+		if (enableDebug) callStack.get().pushExpression(exp);
 		RödaValue value;
 		try {
 			value = evalExpressionWithoutErrorHandling(exp, scope, in, out,
@@ -1693,6 +2257,7 @@ public class Interpreter {
 		}
 		catch (RödaException e) { throw e; }
 		catch (ReturnException e) { throw e; }
+		catch (StreamAbandonedException e) { throw e; }
 		catch (Throwable e) { error(e); value = null; }
 		finally {
 			if (enableDebug) callStack.get().pop();
@@ -1704,10 +2269,16 @@ public class Interpreter {
 	private RödaValue evalExpressionWithoutErrorHandling(ExpressionTree exp, RödaScope scope,
 			RödaStream in, RödaStream out,
 			boolean variablesAreReferences) {
-		if (exp.type == ExpressionTree.Type.STRING) return RödaString.of(exp.string);
+		if (exp.type == ExpressionTree.Type.VARIABLE && variablesAreReferences) {
+			return RödaReference.of(exp.variable, scope, exp.file, exp.line);
+		}
+		if (enableCompilation) return compiled(exp).eval(scope, in, out);
+		if (exp.type == ExpressionTree.Type.STRING)
+			return exp.pattern != null ? RödaString.of(exp.pattern) : RödaString.of(exp.string);
 		if (exp.type == ExpressionTree.Type.PATTERN) return RödaString.of(exp.pattern);
 		if (exp.type == ExpressionTree.Type.INTEGER) return RödaInteger.of(exp.integer);
 		if (exp.type == ExpressionTree.Type.FLOATING) return RödaFloating.of(exp.floating);
+		if (exp.type == ExpressionTree.Type.BOOLEAN) return RödaBoolean.of(exp.bool);
 		if (exp.type == ExpressionTree.Type.BLOCK) return RödaFunction.of(treeToFunction(exp.block, scope), scope);
 		if (exp.type == ExpressionTree.Type.LIST) return RödaList.of(exp.list
 				.stream()
@@ -1775,13 +2346,14 @@ public class Interpreter {
 		if (exp.type == ExpressionTree.Type.CONCAT) {
 			RödaValue val1 = evalExpression(exp.exprA, scope, in, out).impliciteResolve();
 			RödaValue val2 = evalExpression(exp.exprB, scope, in, out).impliciteResolve();
+			if (val1.is(BYTES) && val2.is(BYTES)) return ((RödaBytes) val1).concat((RödaBytes) val2);
 			if (val1.is(LIST) && val2.is(LIST)) {
 				List<RödaValue> newList = new ArrayList<>();
 				newList.addAll(val1.list());
 				newList.addAll(val2.list());
 				return RödaList.of(newList);
 			}
-			else return RödaString.of(val1.str() + val2.str());
+			else return RödaString.concat(val1, val2);
 		}
 		if (exp.type == ExpressionTree.Type.CONCAT_CHILDREN) {
 			RödaValue val1 = evalExpression(exp.exprA, scope, in, out).impliciteResolve();
@@ -1803,24 +2375,8 @@ public class Interpreter {
 			RödaValue list = evalExpression(exp.exprB, scope, in, out).impliciteResolve();
 			return list.containsValue(value);
 		}
-		if (exp.type == ExpressionTree.Type.STATEMENT_LIST) {
-			RödaStream _out = RödaStream.makeStream();
-			evalStatement(exp.statement, scope, in, _out, true);
-			RödaValue val = _out.readAll();
-			if (val == null)
-				emptyStream("empty stream (in statement expression: " + exp.asString() + ")");
-			return val;
-		}
-		if (exp.type == ExpressionTree.Type.STATEMENT_SINGLE) {
-			RödaStream _out = RödaStream.makeStream();
-			evalStatement(exp.statement, scope, in, _out, true);
-			RödaValue val = _out.readAll();
-			if (val.list().isEmpty())
-				emptyStream("empty stream (in statement expression: " + exp.asString() + ")");
-			if (val.list().size() > 1)
-				fullStream("stream is full (in statement expression: " + exp.asString() + ")");
-			return val.list().get(0);
-		}
+		if (exp.type == ExpressionTree.Type.STATEMENT_LIST) return evalStatementList(exp, scope, in);
+		if (exp.type == ExpressionTree.Type.STATEMENT_SINGLE) return evalStatementSingle(exp, scope, in);
 		if (exp.type == ExpressionTree.Type.VARIABLE) {
 			if (variablesAreReferences) {
 				return RödaReference.of(exp.variable, scope, exp.file, exp.line);
@@ -1866,6 +2422,249 @@ public class Interpreter {
 		unknownName("unknown expression type " + exp.type);
 		return null;
 	}
+
+	/* lausekkeiden kääntäminen */
+
+	/**
+	 * An expression compiled to a tree of nodes. Each node is specialized for
+	 * the type of its expression and holds the compiled subexpressions, so
+	 * evaluating it does not examine the syntax tree again.
+	 */
+	@FunctionalInterface
+	interface CompiledExpression {
+		RödaValue eval(RödaScope scope, RödaStream in, RödaStream out);
+	}
+
+	/**
+	 * If true, expressions are compiled when they are evaluated for the first
+	 * time. Otherwise they are evaluated by walking the syntax tree every time.
+	 */
+	public boolean enableCompilation = true;
+
+	/**
+	 * Returns the compiled expression cached in the syntax tree. The tree is
+	 * shared by all functions created from the same source code, so each
+	 * expression is compiled only once.
+	 */
+	private CompiledExpression compiled(ExpressionTree exp) {
+		CompiledExpression compiled = exp.compiled;
+		// kilpatilanne on harmiton, koska käännökset ovat muuttumattomia ja keskenään samanlaisia
+		if (compiled == null) exp.compiled = compiled = compile(exp);
+		return compiled;
+	}
+
+	/**
+	 * Compiles a subexpression. The nodes do not push frames to the call
+	 * stack: like in the tree-walker, only evalExpression pushes a frame for
+	 * the whole expression and converts the errors thrown inside it, so the
+	 * call stack does not depend on whether the expression is compiled.
+	 */
+	private CompiledExpression compileResolved(ExpressionTree exp) {
+		CompiledExpression compiled = compiled(exp);
+		return (scope, in, out) -> compiled.eval(scope, in, out).impliciteResolve();
+	}
+
+	private CompiledExpression compile(ExpressionTree exp) {
+		switch (exp.type) {
+		case STRING: {
+			// optimoija on voinut kääntää säännöllisenä lausekkeena käytetyn merkkijonon valmiiksi
+			RödaValue value = exp.pattern != null ? RödaString.of(exp.pattern) : RödaString.of(exp.string);
+			return (scope, in, out) -> value;
+		}
+		case PATTERN: {
+			RödaValue value = RödaString.of(exp.pattern);
+			return (scope, in, out) -> value;
+		}
+		case INTEGER: {
+			RödaValue value = RödaInteger.of(exp.integer);
+			return (scope, in, out) -> value;
+		}
+		case FLOATING: {
+			RödaValue value = RödaFloating.of(exp.floating);
+			return (scope, in, out) -> value;
+		}
+		case BOOLEAN: {
+			RödaValue value = RödaBoolean.of(exp.bool);
+			return (scope, in, out) -> value;
+		}
+		case BLOCK: {
+			FunctionTree block = exp.block;
+			return (scope, in, out) -> RödaFunction.of(treeToFunction(block, scope), scope);
+		}
+		case LIST: {
+			CompiledExpression[] elements = exp.list.stream()
+					.map(this::compileResolved).toArray(CompiledExpression[]::new);
+			return (scope, in, out) -> {
+				List<RödaValue> list = new ArrayList<>(elements.length);
+				for (CompiledExpression element : elements) list.add(element.eval(scope, in, out));
+				return RödaList.of(list);
+			};
+		}
+		case REFLECT: {
+			DatatypeTree datatype = exp.datatype;
+			return (scope, in, out) -> scope.substitute(datatype).resolveReflection();
+		}
+		case TYPEOF: {
+			CompiledExpression sub = compileResolved(exp.sub);
+			return (scope, in, out) -> sub.eval(scope, in, out).basicIdentity().resolveReflection();
+		}
+		case NEW: {
+			DatatypeTree datatype = exp.datatype;
+			CompiledExpression[] arguments = exp.list.stream()
+					.map(this::compileResolved).toArray(CompiledExpression[]::new);
+			return (scope, in, out) -> {
+				Datatype type = scope.substitute(datatype);
+				List<Datatype> subtypes = datatype.subtypes.stream()
+						.map(scope::substitute).collect(toList());
+				List<RödaValue> args = new ArrayList<>(arguments.length);
+				for (CompiledExpression argument : arguments) args.add(argument.eval(scope, in, out));
+				return newRecord(type, subtypes, args, scope);
+			};
+		}
+		case LENGTH: {
+			CompiledExpression sub = compileResolved(exp.sub);
+			return (scope, in, out) -> sub.eval(scope, in, out).length();
+		}
+		case ELEMENT: {
+			CompiledExpression sub = compileResolved(exp.sub), index = compileResolved(exp.index);
+			return (scope, in, out) -> {
+				RödaValue list = sub.eval(scope, in, out);
+				return list.get(index.eval(scope, in, out));
+			};
+		}
+		case SLICE: {
+			CompiledExpression sub = compileResolved(exp.sub);
+			CompiledExpression index1 = exp.index1 == null ? null : compileResolved(exp.index1);
+			CompiledExpression index2 = exp.index2 == null ? null : compileResolved(exp.index2);
+			CompiledExpression step = exp.step == null ? null : compileResolved(exp.step);
+			return (scope, in, out) -> {
+				RödaValue list = sub.eval(scope, in, out);
+				RödaValue start = index1 == null ? null : index1.eval(scope, in, out);
+				RödaValue end = index2 == null ? null : index2.eval(scope, in, out);
+				return list.slice(start, end, step == null ? null : step.eval(scope, in, out));
+			};
+		}
+		case CONTAINS: {
+			CompiledExpression sub = compileResolved(exp.sub), index = compileResolved(exp.index);
+			return (scope, in, out) -> {
+				RödaValue list = sub.eval(scope, in, out);
+				return list.contains(index.eval(scope, in, out));
+			};
+		}
+		case FIELD: {
+			CompiledExpression sub = compileResolved(exp.sub);
+			String field = exp.field;
+			return (scope, in, out) -> sub.eval(scope, in, out).getField(field);
+		}
+		case CONCAT: {
+			CompiledExpression exprA = compileResolved(exp.exprA), exprB = compileResolved(exp.exprB);
+			return (scope, in, out) -> {
+				RödaValue val1 = exprA.eval(scope, in, out);
+				RödaValue val2 = exprB.eval(scope, in, out);
+				if (val1.is(BYTES) && val2.is(BYTES)) return ((RödaBytes) val1).concat((RödaBytes) val2);
+				if (val1.is(LIST) && val2.is(LIST)) {
+					List<RödaValue> newList = new ArrayList<>();
+					newList.addAll(val1.list());
+					newList.addAll(val2.list());
+					return RödaList.of(newList);
+				}
+				else return RödaString.concat(val1, val2);
+			};
+		}
+		case CONCAT_CHILDREN: {
+			CompiledExpression exprA = compileResolved(exp.exprA), exprB = compileResolved(exp.exprB);
+			return (scope, in, out) -> {
+				RödaValue val1 = exprA.eval(scope, in, out);
+				return concat(val1, exprB.eval(scope, in, out));
+			};
+		}
+		case JOIN: {
+			CompiledExpression exprA = compileResolved(exp.exprA), exprB = compileResolved(exp.exprB);
+			return (scope, in, out) -> {
+				RödaValue list = exprA.eval(scope, in, out);
+				return list.join(exprB.eval(scope, in, out));
+			};
+		}
+		case IS: {
+			DatatypeTree datatype = exp.datatype;
+			CompiledExpression sub = compileResolved(exp.sub);
+			return (scope, in, out) -> {
+				Datatype type = scope.substitute(datatype);
+				return RödaBoolean.of(sub.eval(scope, in, out).is(type));
+			};
+		}
+		case IN: {
+			CompiledExpression exprA = compileResolved(exp.exprA), exprB = compileResolved(exp.exprB);
+			return (scope, in, out) -> {
+				RödaValue value = exprA.eval(scope, in, out);
+				return exprB.eval(scope, in, out).containsValue(value);
+			};
+		}
+		case STATEMENT_LIST:
+			return (scope, in, out) -> evalStatementList(exp, scope, in);
+		case STATEMENT_SINGLE:
+			return (scope, in, out) -> evalStatementSingle(exp, scope, in);
+		case VARIABLE: {
+			String variable = exp.variable;
+			return (scope, in, out) -> {
+				RödaValue v = scope.resolve(variable);
+				if (v == null) unknownName("variable not found: " + variable);
+				return v;
+			};
+		}
+		case CALCULATOR:
+			return exp.isUnary ? compileUnaryOperator(exp) : compileBinaryOperator(exp);
+		default:
+			return (scope, in, out) -> {
+				unknownName("unknown expression type " + exp.type);
+				return null;
+			};
+		}
+	}
+
+	private CompiledExpression compileUnaryOperator(ExpressionTree exp) {
+		CType ctype = exp.ctype;
+		CompiledExpression sub = compileResolved(exp.sub);
+		return (scope, in, out) -> sub.eval(scope, in, out).callOperator(ctype, null);
+	}
+
+	private CompiledExpression compileBinaryOperator(ExpressionTree exp) {
+		CType ctype = exp.ctype;
+		CompiledExpression exprA = compileResolved(exp.exprA), exprB = compileResolved(exp.exprB);
+		switch (ctype) {
+		case AND:
+			return (scope, in, out) -> {
+				RödaValue val1 = exprA.eval(scope, in, out);
+				if (!val1.is(BOOLEAN)) typeMismatch("tried to AND " + val1.typeString());
+				if (val1.bool() == false) return RödaBoolean.of(false);
+				RödaValue val2 = exprB.eval(scope, in, out);
+				if (!val2.is(BOOLEAN)) typeMismatch("tried to AND " + val2.typeString());
+				return RödaBoolean.of(val2.bool());
+			};
+		case OR:
+			return (scope, in, out) -> {
+				RödaValue val1 = exprA.eval(scope, in, out);
+				if (!val1.is(BOOLEAN)) typeMismatch("tried to OR " + val1.typeString());
+				if (val1.bool() == true) return RödaBoolean.of(true);
+				RödaValue val2 = exprB.eval(scope, in, out);
+				if (!val2.is(BOOLEAN)) typeMismatch("tried to OR " + val2.typeString());
+				return RödaBoolean.of(val2.bool());
+			};
+		case XOR:
+			return (scope, in, out) -> {
+				RödaValue val1 = exprA.eval(scope, in, out);
+				if (!val1.is(BOOLEAN)) typeMismatch("tried to XOR " + val1.typeString());
+				RödaValue val2 = exprB.eval(scope, in, out);
+				if (!val2.is(BOOLEAN)) typeMismatch("tried to XOR " + val2.typeString());
+				return RödaBoolean.of(val1.bool() ^ val2.bool());
+			};
+		default:
+			return (scope, in, out) -> {
+				RödaValue val1 = exprA.eval(scope, in, out);
+				return val1.callOperator(ctype, exprB.eval(scope, in, out));
+			};
+		}
+	}
 	
 	private RödaValue newRecord(Datatype type, List<Datatype> subtypes, List<RödaValue> args, RödaScope scope) {
 		//if (enableProfiling) pushTimer();
@@ -1881,6 +2680,8 @@ public class Interpreter {
 			}
 			else if (args.size() == 1) {
 				checkList("list", args.get(0));
+				if (subtypes.size() == 0 && args.get(0).is(BYTES))
+					return RödaList.ofBytes(((RödaBytes) args.get(0)).bytes());
 				if (subtypes.size() == 0)
 					return RödaList.of(args.get(0).list());
 				else if (subtypes.size() == 1)
@@ -1888,6 +2689,20 @@ public class Interpreter {
 				argumentOverflow("list", 1, args.size());
 			}
 			return null;
+		case "bytes":
+			if (subtypes.size() > 0)
+				illegalArguments("wrong number of typearguments to 'bytes': 0 required, got " + subtypes.size());
+			if (args.size() == 0)
+				return RödaBytes.empty();
+			if (args.size() > 1)
+				argumentOverflow("bytes", 1, args.size());
+			checkList("bytes", args.get(0));
+			if (args.get(0).is(BYTES))
+				return args.get(0);
+			// stringToBytes palauttaa tavulistan, jonka tavut voidaan kopioida suoraan
+			if (args.get(0) instanceof RödaList && ((RödaList) args.get(0)).storesBytes())
+				return RödaBytes.of(((RödaList) args.get(0)).bytes());
+			return RödaBytes.of(args.get(0).list());
 		case "map":
 			if (subtypes.size() == 0)
 				return RödaMap.empty();
@@ -1968,6 +2783,6 @@ public class Interpreter {
 			}
 			return RödaList.of(newList);
 		}
-		return RödaString.of(val1.str()+val2.str());
+		return RödaString.concat(val1, val2);
 	}
 }
@@ -0,0 +1,248 @@
+package org.kaivos.röda;
+
+import static org.kaivos.röda.RödaValue.BOOLEAN;
+import static org.kaivos.röda.RödaValue.FLOATING;
+import static org.kaivos.röda.RödaValue.INTEGER;
+import static org.kaivos.röda.RödaValue.LIST;
+import static org.kaivos.röda.RödaValue.STRING;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.kaivos.röda.Parser.ArgumentTree;
+import org.kaivos.röda.Parser.Command;
+import org.kaivos.röda.Parser.ExpressionTree;
+import org.kaivos.röda.Parser.ExpressionTree.CType;
+import org.kaivos.röda.Parser.FunctionTree;
+import org.kaivos.röda.Parser.KwArgumentTree;
+import org.kaivos.röda.Parser.ParameterTree;
+import org.kaivos.röda.Parser.ProgramTree;
+import org.kaivos.röda.Parser.RecordTree;
+import org.kaivos.röda.Parser.StatementTree;
+import org.kaivos.röda.type.RödaBoolean;
+import org.kaivos.röda.type.RödaFloating;
+import org.kaivos.röda.type.RödaInteger;
+import org.kaivos.röda.type.RödaString;
+
+/**
+ * Simplifies syntax trees before they are run.
+ *
+ * The optimizer folds operators and concatenations whose operands are literals,
+ * removes the branches of if statements whose condition is a constant and
+ * compiles the regular expression literals once. The trees are modified in place.
+ *
+ * The optimizer never raises errors: an expression that would fail is left as it
+ * is, so that the error is raised when, and if, the expression is evaluated.
+ */
+final class Optimizer {
+
+	private Optimizer() {}
+
+	/* pitkiä merkkijonoja ei taiteta, jotta esim. "a"*1000000 ei kasvata syntaksipuuta */
+	private static final int MAX_FOLDED_STRING_LENGTH = 1024;
+
+	static void optimize(ProgramTree program) {
+		for (FunctionTree f : program.functions) optimize(f);
+		for (RecordTree r : program.records) {
+			for (RecordTree.FieldTree field : r.fields) optimize(field.defaultValue);
+		}
+		for (List<StatementTree> block : program.preBlocks) optimize(block);
+		for (List<StatementTree> block : program.postBlocks) optimize(block);
+	}
+
+	static void optimize(FunctionTree function) {
+		for (ParameterTree p : function.parameters) optimize(p.defaultValue);
+		for (ParameterTree p : function.kwparameters) optimize(p.defaultValue);
+		optimize(function.body);
+	}
+
+	static void optimize(List<StatementTree> statements) {
+		if (statements == null) return;
+		for (StatementTree statement : statements) optimize(statement);
+	}
+
+	static void optimize(StatementTree statement) {
+		if (statement == null) return;
+		for (Command cmd : statement.commands) optimize(cmd);
+	}
+
+	private static void optimize(Command cmd) {
+		if (cmd == null) return;
+		optimize(cmd.name);
+		if (cmd.arguments != null) {
+			for (ArgumentTree arg : cmd.arguments.arguments) optimize(arg.expr);
+			for (KwArgumentTree arg : cmd.arguments.kwarguments) optimize(arg.expr);
+		}
+		optimize(cmd.cond);
+		optimize(cmd.list);
+		optimize(cmd.body);
+		optimize(cmd.elseBody);
+		if (cmd.cmds != null) for (Command icmd : cmd.cmds) optimize(icmd);
+		optimize(cmd.cmd);
+		if (cmd.type == Command.Type.IF) eliminateDeadBranch(cmd);
+		precompilePatterns(cmd);
+	}
+
+	private static void optimize(ExpressionTree exp) {
+		if (exp == null) return;
+		optimize(exp.statement);
+		if (exp.block != null) optimize(exp.block);
+		if (exp.list != null) for (ExpressionTree e : exp.list) optimize(e);
+		for (ExpressionTree e : Arrays.asList(exp.sub, exp.index, exp.index1, exp.index2, exp.step, exp.exprA, exp.exprB))
+			optimize(e);
+		switch (exp.type) {
+		case CALCULATOR:
+			if (exp.ctype == CType.MATCHES || exp.ctype == CType.NO_MATCH) precompilePattern(exp.exprB);
+			fold(exp, evalOperator(exp));
+			break;
+		case CONCAT: {
+			RödaValue val1 = constant(exp.exprA), val2 = constant(exp.exprB);
+			// listojen yhdistäminen tuottaisi uuden listan joka kerta, joten sitä ei voi taittaa
+			if (val1 == null || val2 == null || val1.is(LIST) || val2.is(LIST)) break;
+			fold(exp, RödaString.of(val1.str() + val2.str()));
+			break;
+		}
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Replaces the expression with a literal of the given value, if the value is
+	 * a number or a string.
+	 */
+	private static void fold(ExpressionTree exp, RödaValue value) {
+		if (value == null) return;
+		if (value.is(INTEGER)) {
+			exp.type = ExpressionTree.Type.INTEGER;
+			exp.integer = value.integer();
+		}
+		else if (value.is(FLOATING)) {
+			exp.type = ExpressionTree.Type.FLOATING;
+			exp.floating = value.floating();
+		}
+		else if (value.is(STRING) && value.str().length() <= MAX_FOLDED_STRING_LENGTH) {
+			exp.type = ExpressionTree.Type.STRING;
+			exp.string = value.str();
+		}
+		else return;
+		exp.sub = exp.exprA = exp.exprB = null;
+	}
+
+	/**
+	 * Returns the value of the expression if it can be computed without running
+	 * the program, otherwise null.
+	 */
+	private static RödaValue constant(ExpressionTree exp) {
+		switch (exp.type) {
+		case STRING:
+			return exp.pattern != null ? RödaString.of(exp.pattern) : RödaString.of(exp.string);
+		case PATTERN:
+			return RödaString.of(exp.pattern);
+		case INTEGER:
+			return RödaInteger.of(exp.integer);
+		case FLOATING:
+			return RödaFloating.of(exp.floating);
+		case BOOLEAN:
+			return RödaBoolean.of(exp.bool);
+		case CALCULATOR:
+			return evalOperator(exp);
+		default:
+			return null;
+		}
+	}
+
+	private static RödaValue evalOperator(ExpressionTree exp) {
+		RödaValue val1 = constant(exp.isUnary ? exp.sub : exp.exprA);
+		if (val1 == null) return null;
+		RödaValue val2 = null;
+		if (!exp.isUnary) {
+			val2 = constant(exp.exprB);
+			if (val2 == null) return null;
+		}
+		try {
+			switch (exp.ctype) {
+			case AND:
+				if (!val1.is(BOOLEAN) || !val2.is(BOOLEAN)) return null;
+				return RödaBoolean.of(val1.bool() && val2.bool());
+			case OR:
+				if (!val1.is(BOOLEAN) || !val2.is(BOOLEAN)) return null;
+				return RödaBoolean.of(val1.bool() || val2.bool());
+			case XOR:
+				if (!val1.is(BOOLEAN) || !val2.is(BOOLEAN)) return null;
+				return RödaBoolean.of(val1.bool() ^ val2.bool());
+			case MUL:
+				if (val1.is(STRING) && val2.is(INTEGER)
+						&& val2.integer() > MAX_FOLDED_STRING_LENGTH / Math.max(1, val1.str().length()))
+					return null;
+				return val1.callOperator(exp.ctype, val2);
+			default:
+				return val1.callOperator(exp.ctype, val2);
+			}
+		} catch (RuntimeException e) {
+			// virhe annetaan vasta, kun lauseke suoritetaan
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the value of the condition if it is a list of constant booleans,
+	 * like [1 < 2], otherwise null.
+	 */
+	private static Boolean constantCondition(StatementTree cond) {
+		if (cond == null || cond.commands.size() != 1) return null;
+		Command cmd = cond.commands.get(0);
+		if (cmd.type != Command.Type.NORMAL || cmd.name.type != ExpressionTree.Type.LIST) return null;
+		if (cmd.typearguments != null && !cmd.typearguments.isEmpty()) return null;
+		if (cmd.arguments == null || !cmd.arguments.arguments.isEmpty() || !cmd.arguments.kwarguments.isEmpty())
+			return null;
+		boolean value = true;
+		for (ExpressionTree e : cmd.name.list) {
+			RödaValue val = constant(e);
+			if (val == null || !val.is(BOOLEAN)) return null;
+			value &= val.bool();
+		}
+		return value;
+	}
+
+	/**
+	 * Leaves only the branch that is taken if the condition is a constant. The
+	 * branch still gets its own scope, cond == null meaning that it is always run.
+	 */
+	private static void eliminateDeadBranch(Command cmd) {
+		Boolean cond = constantCondition(cmd.cond);
+		if (cond == null) return;
+		if (!(cond ^ cmd.negation)) {
+			cmd.body = cmd.elseBody != null ? cmd.elseBody : Collections.emptyList();
+		}
+		cmd.elseBody = null;
+		cmd.cond = null;
+		cmd.negation = false;
+	}
+
+	private static void precompilePatterns(Command cmd) {
+		// komentojen nimet voivat viitata käyttäjän funktioihin, joten vain ~=-operaattori käsitellään
+		if (cmd.arguments == null || cmd.type != Command.Type.VARIABLE || !"~=".equals(cmd.operator)) return;
+		List<ArgumentTree> args = cmd.arguments.arguments;
+		// joka toinen argumentti on säännöllinen lauseke ja joka toinen korvaava merkkijono
+		for (int i = 0; i < args.size() && !args.get(i).flattened; i += 2)
+			precompilePattern(args.get(i).expr);
+	}
+
+	/**
+	 * Compiles a string literal that is used as a regular expression. The literal
+	 * still evaluates to the same string, but the string carries the compiled
+	 * pattern with it.
+	 */
+	private static void precompilePattern(ExpressionTree exp) {
+		if (exp == null || exp.type != ExpressionTree.Type.STRING || exp.pattern != null) return;
+		try {
+			exp.pattern = Pattern.compile(exp.string);
+		} catch (PatternSyntaxException e) {
+			// virheellinen lauseke raportoidaan vasta suoritusaikana
+		}
+	}
+}
@@ -484,6 +484,8 @@ public class Parser {
 		public List<ParameterTree> parameters, kwparameters;
 		public boolean isVarargs;
 		public List<StatementTree> body;
+		/* tulkki laskee tähän funktion kutsut ja tallentaa käännetyn rungon */
+		public final FunctionCompiler.Profile profile = new FunctionCompiler.Profile();
 
 		FunctionTree(String name,
 			 List<String> typeparams,
@@ -660,6 +662,8 @@ public class Parser {
 		List<StatementTree> body, elseBody;
 		List<Command> cmds;
 		Command cmd;
+		/* tulkki muistaa tähän, mihin komennon nimi viittasi */
+		Interpreter.InlineCache nameCache;
 		Command() {} // käytä apufunktioita alla
 		String file;
 		int line;
@@ -685,7 +689,7 @@ public class Parser {
 			case RETURN:
 				return "return " + argumentsAsString();
 			case IF:
-				return (negation ? "unless " : "if ") + cond.asString()
+				return (negation ? "unless " : "if ") + (cond != null ? cond.asString() : "[true]")
 					+ " do " + (body.size() == 1 ? body.get(0).asString() : "...")
 					+ (elseBody != null ? " else " + (elseBody.size() == 1 ? elseBody.get(0).asString() : "...") : "")
 					+ " done";
@@ -1118,6 +1122,7 @@ public class Parser {
 			PATTERN,
 			INTEGER,
 			FLOATING,
+			BOOLEAN,
 			STATEMENT_LIST,
 			STATEMENT_SINGLE,
 			BLOCK,
@@ -1184,6 +1189,7 @@ public class Parser {
 		Pattern pattern;
 		long integer;
 		double floating;
+		boolean bool;
 		StatementTree statement;
 		FunctionTree block;
 		List<ExpressionTree> list;
@@ -1194,6 +1200,9 @@ public class Parser {
 		String file;
 		int line;
 
+		/* tulkki tallentaa tähän käännetyn lausekkeen */
+		Interpreter.CompiledExpression compiled;
+
 		String asString() {
 			switch (type) {
 			case VARIABLE:
@@ -1204,6 +1213,8 @@ public class Parser {
 				return "r:\"" + pattern.pattern().replaceAll("\\\\", "\\\\\\\\").replaceAll("\"", "\\\\\"") + "\"";
 			case INTEGER:
 				return String.valueOf(integer);
+			case BOOLEAN:
+				return bool ? "TRUE" : "FALSE";
 			case SLICE: {
 				String i1 = index1 == null ? "" : index1.asString();
 				String i2 = index2 == null ? "" : index2.asString();
@@ -1289,6 +1300,15 @@ public class Parser {
 		return e;
 	}
 
+	public static ExpressionTree expressionBoolean(String file, int line, boolean b) {
+		ExpressionTree e = new ExpressionTree();
+		e.type = ExpressionTree.Type.BOOLEAN;
+		e.file = file;
+		e.line = line;
+		e.bool = b;
+		return e;
+	}
+
 	public static ExpressionTree expressionFloat(String file, int line, double d) {
 		ExpressionTree e = new ExpressionTree();
 		e.type = ExpressionTree.Type.FLOATING;
@@ -93,7 +93,9 @@ public class Röda {
 		List<String> eval = new ArrayList<>();
 		List<String> argsForRöda = new ArrayList<>();
 		boolean interactive = System.console() != null, forcedI = false, disableInteraction = false,
-				enableDebug = true, enableProfiling = false, divideByInvocations = false, singleThreadMode = false;
+				enableDebug = true, enableProfiling = false, divideByInvocations = false, singleThreadMode = false,
+				virtualThreads = false, enableOptimization = true;
+		int pipeCapacity = Interpreter.DEFAULT_PIPE_CAPACITY, threads = 0, jitThreshold = -1;
 		
 		for (int i = 0; i < args.length; i++) {
 			if (file != null) {
@@ -107,9 +109,30 @@ public class Röda {
 			case "-P":
 				prompt = "";
 				continue;
+			case "-b":
+				try {
+					pipeCapacity = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException e) {
+					System.err.println("Invalid pipe capacity: " + args[i]);
+					System.exit(1);
+					return;
+				}
+				continue;
 			case "-e":
 				eval.add(args[++i]);
 				continue;
+			case "-j":
+				try {
+					threads = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException e) {
+					threads = -1;
+				}
+				if (threads <= 0) {
+					System.err.println("Invalid number of threads: " + args[i]);
+					System.exit(1);
+					return;
+				}
+				continue;
 			case "-i":
 				interactive = true;
 				forcedI = true;
@@ -126,12 +149,30 @@ public class Röda {
 			case "-t":
 				enableProfiling = true;
 				continue;
+			case "--no-optimize":
+				enableOptimization = false;
+				continue;
+			case "--jit":
+				try {
+					jitThreshold = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException e) {
+					jitThreshold = -1;
+				}
+				if (jitThreshold < 0) {
+					System.err.println("Invalid number of calls: " + args[i]);
+					System.exit(1);
+					return;
+				}
+				continue;
 			case "--per-invocation":
 				divideByInvocations = true;
 				break;
 			case "-s":
 				singleThreadMode = true;
 				continue;
+			case "--virtual":
+				virtualThreads = true;
+				continue;
 			case "-v":
 			case "--version":
 				System.out.println("Röda " + RÖDA_VERSION_STRING);
@@ -140,16 +181,23 @@ public class Röda {
 			case "--help": {
 				System.out.println("Usage: röda [options] file | röda [options] -i | röda [options]");
 				System.out.println("Available options:");
+				System.out.println("-b capacity      Set the default capacity of pipes (default "
+						+ Interpreter.DEFAULT_PIPE_CAPACITY + ", 0 = unbounded)");
 				System.out.println("-D               Disable stack tracing (may speed up execution a little)");
 				System.out.println("-e stmt          Evaluate the given statement before executing the given files");
 				System.out.println("-i               Enable console mode");
+				System.out.println("-j threads       Set the number of worker threads that may run at once");
 				System.out.println("-I               Disable console mode");
 				System.out.println("-n               Disable interactive mode");
+				System.out.println("--jit calls      Compile the body of a function to a JVM class after it has been called");
+				System.out.println("                 the given number of times (experimental, 0 = never)");
+				System.out.println("--no-optimize    Run programs without simplifying them first");
 				System.out.println("-p prompt        Change the prompt in interactive mode");
 				System.out.println("-P               Disable prompt in interactive mode");
 				System.out.println("--per-invocation Divide CPU time by invocation number in profiler output");
 				System.out.println("-s               Enable single thread mode");
-				System.out.println("-t               Enable time profiler");
+				System.out.println("--virtual        Run pipelines, threads and processes in virtual threads (Java 21+)");
+				System.out.println("-t               Enable time and pipe profiler");
 				System.out.println("-v, --version    Show the version number of the interpreter");
 				System.out.println("-h, --help       Show this help text");
 				return;
@@ -170,7 +218,16 @@ public class Röda {
 		
 		INTERPRETER.enableDebug = enableDebug;
 		INTERPRETER.enableProfiling = enableProfiling;
+		INTERPRETER.enableOptimization = enableOptimization;
+		if (jitThreshold >= 0) INTERPRETER.jitThreshold = jitThreshold;
 		INTERPRETER.singleThreadMode = singleThreadMode;
+		INTERPRETER.pipeCapacity = pipeCapacity;
+		if (virtualThreads && !Scheduler.virtualThreadsSupported()) {
+			System.err.println("[W] Virtual threads are not supported by this JVM, using worker threads instead");
+			virtualThreads = false;
+		}
+		if (virtualThreads) Interpreter.scheduler = Scheduler.virtual("röda-virtual");
+		else if (threads > 0) Interpreter.scheduler = new Scheduler("röda-worker", threads);
 		
 		INTERPRETER.populateBuiltins();
 		
@@ -293,7 +350,7 @@ public class Röda {
 			
 			parser.setEscapeChars(new char[0]);
 			
-			Set<String> builtins = INTERPRETER.G.map.keySet();
+			Set<String> builtins = INTERPRETER.G.getLocalVariableNames();
 			
 			Terminal terminal = TerminalBuilder.terminal();
 			LineReader in = LineReaderBuilder.builder()
@@ -412,7 +469,7 @@ public class Röda {
 							for (String match : vars.tailSet(l.word())) {
 								if (!match.startsWith(l.word())) break;
 								
-								RödaValue val = INTERPRETER.G.map.get(match);
+								RödaValue val = INTERPRETER.G.resolve(match);
 								
 								String cand;
 								if (isPiped) cand = match;
@@ -583,6 +640,35 @@ public class Röda {
 				
 				System.out.printf("%5.2f %6.2f %6.2f %4d %s\n", percent, acc, time, invs, f);
 			}
+
+			// pullonkaula on putki, jonka tuottaja tai kuluttaja odottaa pisimpään
+			List<Interpreter.PipeProfilerData> pipeData = Interpreter.pipeProfilerData.values()
+					.stream()
+					.sorted((a, b) -> Long.compare(b.producerBlockedNanos + b.consumerBlockedNanos,
+							a.producerBlockedNanos + a.consumerBlockedNanos))
+					.collect(toList());
+
+			if (!pipeData.isEmpty()) {
+				System.out.printf("\n%9s %9s %9s %9s %6s %5s %s\n",
+						"PUSHED", "PULLED", "PROD MS", "CONS MS", "HWM", "PIPES", "PRODUCER");
+
+				for (Interpreter.PipeProfilerData pd : pipeData) {
+					System.out.printf("%9d %9d %9.2f %9.2f %6d %5d %s\n", pd.pushed, pd.pulled,
+							pd.producerBlockedNanos / 1_000_000d, pd.consumerBlockedNanos / 1_000_000d,
+							pd.highWaterMark, pd.pipes, pd.command);
+				}
+			}
+
+			Scheduler scheduler = Interpreter.scheduler;
+			System.out.printf("\nWORKERS %d running, %d alive, %d peak, %d created (%s)\n",
+					scheduler.getRunningThreadCount(), scheduler.getThreadCount(),
+					scheduler.getPeakThreadCount(), scheduler.getCreatedThreadCount(),
+					scheduler.isVirtual() ? "virtual threads" : "parallelism " + scheduler.getParallelism()
+							+ ", compensation limit " + scheduler.getCompensationLimit());
+			System.out.printf("TASKS   %d submitted, %d inline, %d blocked, %d uncompensated, %d queued\n",
+					scheduler.getSubmittedTaskCount(), scheduler.getInlineTaskCount(),
+					scheduler.getBlockedCount(), scheduler.getUncompensatedCount(),
+					scheduler.getQueuedTaskCount());
 		}
 
 		Interpreter.shutdown();
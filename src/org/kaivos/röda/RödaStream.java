@@ -1,14 +1,16 @@
 package org.kaivos.röda;
 
 import java.util.List;
-import java.util.Optional;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
 import java.util.Iterator;
 
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -32,9 +34,71 @@ import static org.kaivos.röda.Interpreter.error;
 public abstract class RödaStream implements Iterable<RödaValue> {
 	private Deque<RödaValue> stack = new ArrayDeque<>();
 
+	/**
+	 * The number of values transferred at once by the batch operations of
+	 * this class.
+	 */
+	public static final int BATCH_SIZE = 256;
+
 	protected abstract RödaValue get();
 	protected abstract void put(RödaValue value);
 
+	/**
+	 * The counters of a pipe collected by the profiler. The producer of the
+	 * pipe updates the producer fields and the consumer the consumer fields, so
+	 * the counters need no synchronization when the pipe has one producer and
+	 * one consumer at a time.
+	 */
+	public static final class Statistics {
+		/* tuottajan kentät */
+		public long pushed = 0, producerBlockedNanos = 0, highWaterMark = 0;
+		/* kuluttajan kentät */
+		public long pulled = 0, consumerBlockedNanos = 0;
+
+		void buffered(long size) {
+			if (size > highWaterMark) highWaterMark = size;
+		}
+	}
+
+	/**
+	 * null when the statistics are not collected, which is checked before any
+	 * counter is updated.
+	 */
+	Statistics statistics = null;
+
+	/**
+	 * Starts collecting the statistics of the stream. Only pipes record the
+	 * time spent waiting and the number of buffered values. Must be called
+	 * before the stream is used.
+	 */
+	public final Statistics collectStatistics() {
+		return statistics = new Statistics();
+	}
+
+	/**
+	 * @return the statistics of the stream, or null if they are not collected
+	 */
+	public final Statistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Moves at most max values from the stream to the buffer. Blocks until at
+	 * least one value is available or the stream is finished.
+	 *
+	 * @return the number of values moved, or 0 if the stream is finished
+	 */
+	protected int getAll(List<RödaValue> buffer, int max) {
+		RödaValue value = get();
+		if (value == null) return 0;
+		buffer.add(value);
+		return 1;
+	}
+
+	protected void putAll(List<RödaValue> values) {
+		for (RödaValue value : values) put(value);
+	}
+
 	/**
 	 * Closes the stream permanently.
 	 */
@@ -62,13 +126,64 @@ public abstract class RödaStream implements Iterable<RödaValue> {
 	 */
 	public abstract boolean finished();
 
+	/**
+	 * Tells the producer that no more values will be pulled from the stream.
+	 * Values pushed after this are discarded, and push throws a
+	 * StreamAbandonedException that stops the producing command.
+	 */
+	public void abandon() {
+	}
+
+	/**
+	 * Abandons the stream and wakes up any consumer waiting for values.
+	 * The consumer sees the stream as finished.
+	 */
+	public void cancel() {
+		abandon();
+	}
+
+	/**
+	 * Returns true if the stream has been abandoned by its consumer.
+	 */
+	public boolean abandoned() {
+		return false;
+	}
+
+	/**
+	 * Thrown by push when the consumer of the stream has stopped pulling values.
+	 */
+	@SuppressWarnings("serial")
+	public static class StreamAbandonedException extends RuntimeException {
+		private final RödaStream stream;
+
+		private StreamAbandonedException(RödaStream stream) {
+			super("stream is abandoned", null, false, false);
+			this.stream = stream;
+		}
+
+		public RödaStream getStream() {
+			return stream;
+		}
+	}
+
 	/**
 	 * Pushes a new value to the stream.
 	 */
 	public final void push(RödaValue value) {
 		put(value);
+		if (statistics != null) statistics.pushed++;
 	}
 	
+	/**
+	 * Pushes all given values to the stream at once.
+	 */
+	public final void pushAll(List<RödaValue> values) {
+		if (!values.isEmpty()) {
+			putAll(values);
+			if (statistics != null) statistics.pushed += values.size();
+		}
+	}
+
 	/**
 	 * Adds a new value to the stack.
 	 */
@@ -83,9 +198,30 @@ public abstract class RödaStream implements Iterable<RödaValue> {
 	 */
 	public final RödaValue pull() {
 		if (!stack.isEmpty()) return stack.removeFirst();
-		return get();
+		RödaValue value = get();
+		if (statistics != null && value != null) statistics.pulled++;
+		return value;
 	}
 	
+	/**
+	 * Pulls at most max values from the stream, or, if the stack is not empty,
+	 * from the stack, and adds them to the buffer. Blocks only until the first
+	 * value is available.
+	 *
+	 * @return the number of values pulled, or 0 if the stream is closed.
+	 */
+	public final int pullAll(List<RödaValue> buffer, int max) {
+		int n = 0;
+		while (!stack.isEmpty() && n < max) {
+			buffer.add(stack.removeFirst());
+			n++;
+		}
+		if (n > 0) return n;
+		n = getAll(buffer, max);
+		if (statistics != null) statistics.pulled += n;
+		return n;
+	}
+
 	/**
 	 * Pulls a value from the stream and places it to the stack.
 	 * Next time a value is pulled, it will be taken from the stack.
@@ -105,12 +241,7 @@ public abstract class RödaStream implements Iterable<RödaValue> {
 	 */
 	public final RödaValue readAll() {
 		List<RödaValue> list = new ArrayList<>();
-		while (true) {
-			RödaValue val = pull();
-			if (val == null)
-				break;
-			list.add(val);
-		}
+		while (pullAll(list, BATCH_SIZE) > 0);
 		return RödaList.of(list);
 	}
 
@@ -121,17 +252,34 @@ public abstract class RödaStream implements Iterable<RödaValue> {
 	 *            the callback function used to consume the values
 	 */
 	public final void forAll(Consumer<RödaValue> consumer) {
-		while (true) {
-			RödaValue val = pull();
-			if (val == null)
-				break;
-			consumer.accept(val);
+		List<RödaValue> buffer = new ArrayList<>();
+		while (pullAll(buffer, BATCH_SIZE) > 0) {
+			for (RödaValue val : buffer)
+				consumer.accept(val);
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Calls the given consumer for all current and future values in the stream.
+	 * The values are given in batches of at most BATCH_SIZE values.
+	 * 
+	 * @param consumer
+	 *            the callback function used to consume the batches
+	 */
+	public final void forAllBatches(Consumer<List<RödaValue>> consumer) {
+		List<RödaValue> buffer = new ArrayList<>();
+		while (pullAll(buffer, BATCH_SIZE) > 0) {
+			consumer.accept(buffer);
+			buffer.clear();
 		}
 	}
 
 	/**
 	 * Returns a iterator that iterates over all the current and future values
-	 * in the stream.
+	 * in the stream. The iterator pulls one value ahead, so a caller that stops
+	 * early loses at most that value. Use forAll or forAllBatches to consume
+	 * all values in batches.
 	 */
 	@Override
 	public Iterator<RödaValue> iterator() {
@@ -155,13 +303,92 @@ public abstract class RödaStream implements Iterable<RödaValue> {
 		};
 	}
 
+	/**
+	 * Returns a consumer that collects values and pushes them to the stream in
+	 * batches of the given size. The last partial batch is pushed when flush
+	 * is called.
+	 */
+	public final Batch batch(int size) {
+		return new Batch(size);
+	}
+
+	public final class Batch implements Consumer<RödaValue> {
+		private final List<RödaValue> buffer;
+		private final int size;
+
+		private Batch(int size) {
+			this.size = size;
+			this.buffer = new ArrayList<>(size);
+		}
+
+		@Override
+		public void accept(RödaValue value) {
+			buffer.add(value);
+			if (buffer.size() >= size) flush();
+		}
+
+		/**
+		 * Pushes the collected values to the stream immediately.
+		 */
+		public void flush() {
+			pushAll(buffer);
+			buffer.clear();
+		}
+	}
+
 	public static RödaStream makeStream() {
-		RödaStream stream = new RödaStreamImpl();
+		RödaStream stream = new RödaStreamImpl(0);
+		return stream;
+	}
+
+	/**
+	 * Creates a new pipe that holds at most the given number of values. When the
+	 * pipe is full, push blocks until a value is pulled from it.
+	 *
+	 * @param capacity
+	 *            the maximum number of buffered values, or 0 for an unbounded pipe
+	 */
+	public static RödaStream makeStream(int capacity) {
+		RödaStream stream = new RödaStreamImpl(capacity);
 		return stream;
 	}
 
+	/**
+	 * Creates a new pipe that has exactly one producer thread and one consumer
+	 * thread at a time. The pipe is faster than the one returned by makeStream,
+	 * but it must not be shared by concurrent readers or concurrent writers.
+	 *
+	 * @param capacity
+	 *            the maximum number of buffered values, or 0 for an unbounded pipe
+	 */
+	public static RödaStream makePipe(int capacity) {
+		RödaStream stream = new SpscStream(capacity);
+		return stream;
+	}
+
+	/**
+	 * Creates a new pipe between coroutines of the given group. A command that
+	 * waits for the pipe gives its turn to the next command of the group.
+	 *
+	 * @param capacity
+	 *            the maximum number of buffered values, must be positive
+	 */
+	static RödaStream makeCooperativePipe(Coroutines.Group group, int capacity) {
+		return new CooperativeStream(group, capacity);
+	}
+
+	/**
+	 * Creates a stream that collects the output of a statement whose values are
+	 * read only after the statement has finished. Pulling from the stream never
+	 * blocks, so the stream is much cheaper than the one returned by makeStream,
+	 * but it cannot be used as a pipe.
+	 */
+	public static RödaStream makeCollector() {
+		return new CollectorStream();
+	}
+
 	public static RödaStream makeEmptyStream() {
-		RödaStream stream = new RödaStreamImpl();
+		RödaStream stream = new RödaStreamImpl(0);
 		stream.finish();
 		return stream;
 	}
@@ -196,40 +423,143 @@ public abstract class RödaStream implements Iterable<RödaValue> {
 	}
 
 	static class RödaStreamImpl extends RödaStream {
-		BlockingQueue<Optional<RödaValue>> queue = new LinkedBlockingQueue<>();
-		boolean finished = false;
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition notEmpty = lock.newCondition();
+		private final Condition notFull = lock.newCondition();
+		private final ArrayDeque<RödaValue> queue = new ArrayDeque<>();
+		private final int capacity;
+		private boolean closed = false;
+		volatile boolean abandoned = false;
+
+		RödaStreamImpl(int capacity) {
+			this.capacity = capacity;
+		}
+
+		private boolean full() {
+			return capacity > 0 && queue.size() >= capacity;
+		}
 
 		@Override
 		public RödaValue get() {
-			if (finished) return null;
-			Optional<RödaValue> value;
+			lock.lock();
 			try {
-				value = queue.take();
+				Scheduler.block(() -> !queue.isEmpty() || closed, notEmpty::await);
+				RödaValue value = queue.poll();
+				if (value != null && capacity > 0)
+					notFull.signal();
+				return value;
 			} catch (InterruptedException e) {
 				error(e);
 				return null;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		protected int getAll(List<RödaValue> buffer, int max) {
+			lock.lock();
+			try {
+				Scheduler.block(() -> !queue.isEmpty() || closed, notEmpty::await);
+				int n = 0;
+				while (n < max && !queue.isEmpty()) {
+					buffer.add(queue.poll());
+					n++;
+				}
+				if (n > 0 && capacity > 0)
+					notFull.signalAll();
+				return n;
+			} catch (InterruptedException e) {
+				error(e);
+				return 0;
+			} finally {
+				lock.unlock();
 			}
-			finished = !value.isPresent();
-			return value.orElse(null);
 		}
 
 		@Override
 		public void put(RödaValue value) {
+			if (abandoned) throw new StreamAbandonedException(this);
+			lock.lock();
 			try {
-				queue.put(Optional.of(value));
+				Scheduler.block(() -> !full() || abandoned, notFull::await);
+				if (abandoned) throw new StreamAbandonedException(this);
+				if (closed) return; // suljettuun virtaan työnnetyt arvot katoavat
+				queue.add(value);
+				notEmpty.signal();
 			} catch (InterruptedException e) {
 				error(e);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		protected void putAll(List<RödaValue> values) {
+			if (abandoned) throw new StreamAbandonedException(this);
+			lock.lock();
+			try {
+				for (RödaValue value : values) {
+					if (full()) {
+						// annetaan lukijan tyhjentää jonoa ennen kuin jatketaan
+						notEmpty.signal();
+						Scheduler.block(() -> !full() || abandoned, notFull::await);
+					}
+					if (abandoned) throw new StreamAbandonedException(this);
+					if (closed) return;
+					queue.add(value);
+				}
+				notEmpty.signal();
+			} catch (InterruptedException e) {
+				error(e);
+			} finally {
+				lock.unlock();
 			}
 		}
 
 		@Override
 		public boolean finished() {
-			return finished;
+			lock.lock();
+			try {
+				return closed && queue.isEmpty();
+			} finally {
+				lock.unlock();
+			}
 		}
 
 		@Override
 		public void finish() {
-			queue.add(Optional.empty());
+			lock.lock();
+			try {
+				closed = true;
+				notEmpty.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public void abandon() {
+			abandoned = true;
+			lock.lock();
+			try {
+				// vapautetaan tuottaja, joka odottaa täyttä jonoa
+				queue.clear();
+				notFull.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public void cancel() {
+			abandon();
+			finish();
+		}
+
+		@Override
+		public boolean abandoned() {
+			return abandoned;
 		}
 
 		@Override
@@ -246,6 +576,436 @@ public abstract class RödaStream implements Iterable<RödaValue> {
 		}
 	}
 	
+	static final class CollectorStream extends RödaStream {
+		private final ArrayList<RödaValue> values = new ArrayList<>(4);
+		private int index = 0;
+		private boolean closed = false;
+
+		/* tavallisesti vain yksi säie kirjoittaa virtaan, mutta komento voi myös jakaa sen muille säikeille */
+		@Override
+		protected synchronized void put(RödaValue value) {
+			if (closed) return; // suljettuun virtaan työnnetyt arvot katoavat
+			values.add(value);
+		}
+
+		@Override
+		protected synchronized void putAll(List<RödaValue> values) {
+			if (closed) return;
+			this.values.addAll(values);
+		}
+
+		@Override
+		protected synchronized RödaValue get() {
+			if (index == values.size()) return null;
+			RödaValue value = values.get(index);
+			values.set(index++, null);
+			return value;
+		}
+
+		@Override
+		protected synchronized int getAll(List<RödaValue> buffer, int max) {
+			int n = Math.min(max, values.size() - index);
+			for (int i = 0; i < n; i++) {
+				buffer.add(values.get(index));
+				values.set(index++, null);
+			}
+			return n;
+		}
+
+		@Override
+		public synchronized void finish() {
+			closed = true;
+		}
+
+		@Override
+		public synchronized boolean finished() {
+			return closed && index == values.size();
+		}
+	}
+
+	/* indeksit erotetaan omille välimuistiriveilleen, jotta tuottaja ja kuluttaja eivät kilpaile niistä */
+	static class LhsPadding {
+		protected long p1, p2, p3, p4, p5, p6, p7;
+	}
+
+	static class PaddedValue extends LhsPadding {
+		protected volatile long value;
+	}
+
+	static final class PaddedCounter extends PaddedValue {
+		protected long p9, p10, p11, p12, p13, p14, p15;
+
+		long get() {
+			return value;
+		}
+
+		/* volatile-kirjoitus, jotta odottajan herättäminen ei voi jäädä huomaamatta */
+		void set(long newValue) {
+			value = newValue;
+		}
+	}
+
+	/**
+	 * A lock-free single-producer/single-consumer pipe. The values are stored in
+	 * linked array chunks that the consumer hands back to the producer once it
+	 * has read them, so that in the steady state the chunks form a ring and no
+	 * memory is allocated. A waiting thread spins for a while and then parks.
+	 */
+	static final class SpscStream extends RödaStream {
+		private static final int CHUNK_SIZE = 1024;
+		private static final int SPINS = 128, YIELDS = 64;
+
+		private static final class Chunk {
+			final RödaValue[] values = new RödaValue[CHUNK_SIZE];
+			Chunk next;
+		}
+
+		private final int capacity;
+		private final PaddedCounter head = new PaddedCounter(), tail = new PaddedCounter();
+		private final AtomicReference<Chunk> spare = new AtomicReference<>();
+		private volatile boolean closed = false, abandoned = false;
+		private volatile Thread waitingProducer, waitingConsumer;
+
+		/* tuottajan tila */
+		private Chunk tailChunk;
+		private int tailIndex = 0;
+
+		/* kuluttajan tila */
+		private Chunk headChunk;
+		private int headIndex = 0;
+
+		SpscStream(int capacity) {
+			this.capacity = capacity;
+			headChunk = tailChunk = new Chunk();
+		}
+
+		private boolean canRead() {
+			return head.get() != tail.get() || closed;
+		}
+
+		private boolean canWrite() {
+			return capacity <= 0 || tail.get() - head.get() < capacity || abandoned;
+		}
+
+		private void awaitReadable() {
+			if (canRead()) return;
+			long start = statistics != null ? System.nanoTime() : 0;
+			int tries = 0;
+			while (!canRead()) {
+				if (tries < SPINS) tries++;
+				else if (tries < SPINS + YIELDS) {
+					tries++;
+					Thread.yield();
+				}
+				else {
+					waitingConsumer = Thread.currentThread();
+					park(this::canRead);
+					waitingConsumer = null;
+					if (Thread.interrupted()) error(new InterruptedException());
+				}
+			}
+			if (statistics != null) statistics.consumerBlockedNanos += System.nanoTime() - start;
+		}
+
+		private void awaitWritable() {
+			if (canWrite()) return;
+			long start = statistics != null ? System.nanoTime() : 0;
+			int tries = 0;
+			while (!canWrite()) {
+				if (tries < SPINS) tries++;
+				else if (tries < SPINS + YIELDS) {
+					tries++;
+					Thread.yield();
+				}
+				else {
+					waitingProducer = Thread.currentThread();
+					park(this::canWrite);
+					waitingProducer = null;
+					if (Thread.interrupted()) error(new InterruptedException());
+				}
+			}
+			if (statistics != null) statistics.producerBlockedNanos += System.nanoTime() - start;
+		}
+
+		private void park(BooleanSupplier condition) {
+			try {
+				// pysäköinti voi päättyä ennen kuin ehto on tosi, jolloin silmukka yrittää uudelleen
+				Scheduler.block(condition, () -> {
+					LockSupport.park(this);
+					if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+				});
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private static void wake(Thread thread) {
+			if (thread != null) LockSupport.unpark(thread);
+		}
+
+		private RödaValue read() {
+			if (headIndex == CHUNK_SIZE) {
+				Chunk old = headChunk;
+				headChunk = old.next;
+				headIndex = 0;
+				old.next = null;
+				spare.lazySet(old);
+			}
+			RödaValue value = headChunk.values[headIndex];
+			headChunk.values[headIndex++] = null;
+			return value;
+		}
+
+		private void write(RödaValue value) {
+			if (tailIndex == CHUNK_SIZE) {
+				Chunk chunk = spare.getAndSet(null);
+				if (chunk == null) chunk = new Chunk();
+				tailChunk.next = chunk;
+				tailChunk = chunk;
+				tailIndex = 0;
+			}
+			tailChunk.values[tailIndex++] = value;
+		}
+
+		@Override
+		public RödaValue get() {
+			awaitReadable();
+			long h = head.get();
+			if (h == tail.get()) return null; // virta on suljettu ja tyhjä
+			RödaValue value = read();
+			head.set(h + 1);
+			if (capacity > 0) wake(waitingProducer);
+			return value;
+		}
+
+		@Override
+		protected int getAll(List<RödaValue> buffer, int max) {
+			awaitReadable();
+			long h = head.get();
+			int n = (int) Math.min(max, tail.get() - h);
+			for (int i = 0; i < n; i++) {
+				buffer.add(read());
+			}
+			if (n > 0) {
+				head.set(h + n);
+				if (capacity > 0) wake(waitingProducer);
+			}
+			return n;
+		}
+
+		@Override
+		public void put(RödaValue value) {
+			if (abandoned) throw new StreamAbandonedException(this);
+			awaitWritable();
+			if (abandoned) throw new StreamAbandonedException(this);
+			if (closed) return; // suljettuun virtaan työnnetyt arvot katoavat
+			write(value);
+			long t = tail.get() + 1;
+			tail.set(t);
+			wake(waitingConsumer);
+			if (statistics != null) statistics.buffered(t - head.get());
+		}
+
+		@Override
+		protected void putAll(List<RödaValue> values) {
+			if (abandoned) throw new StreamAbandonedException(this);
+			if (closed) return;
+			long t = tail.get();
+			for (RödaValue value : values) {
+				if (capacity > 0 && t - head.get() >= capacity) {
+					// julkaistaan jo kirjoitetut arvot ennen odottamista
+					tail.set(t);
+					if (statistics != null) statistics.buffered(t - head.get());
+					wake(waitingConsumer);
+					awaitWritable();
+					if (abandoned) throw new StreamAbandonedException(this);
+				}
+				write(value);
+				t++;
+			}
+			tail.set(t);
+			wake(waitingConsumer);
+			if (statistics != null) statistics.buffered(t - head.get());
+		}
+
+		@Override
+		public boolean finished() {
+			return closed && head.get() == tail.get();
+		}
+
+		@Override
+		public void finish() {
+			closed = true;
+			wake(waitingConsumer);
+		}
+
+		@Override
+		public void abandon() {
+			abandoned = true;
+			wake(waitingProducer);
+		}
+
+		@Override
+		public void cancel() {
+			abandon();
+			finish();
+		}
+
+		@Override
+		public boolean abandoned() {
+			return abandoned;
+		}
+	}
+
+	/**
+	 * A pipe used in single thread mode. All fields are accessed only by the
+	 * thread that has the turn of the group.
+	 */
+	static class CooperativeStream extends RödaStream {
+		private final Coroutines.Group group;
+		private final ArrayDeque<RödaValue> queue = new ArrayDeque<>();
+		private final int capacity;
+		private final List<Coroutines.Coroutine> readers = new ArrayList<>(1), writers = new ArrayList<>(1);
+		private boolean closed = false;
+		private boolean abandoned = false;
+
+		CooperativeStream(Coroutines.Group group, int capacity) {
+			this.group = group;
+			this.capacity = capacity;
+		}
+
+		private boolean readable() {
+			return !queue.isEmpty() || closed;
+		}
+
+		private boolean writable() {
+			return queue.size() < capacity || closed || abandoned;
+		}
+
+		private void awaitReadable() {
+			boolean timed = statistics != null && !readable();
+			long start = timed ? System.nanoTime() : 0;
+			group.await(this::readable, readers);
+			if (timed) statistics.consumerBlockedNanos += System.nanoTime() - start;
+		}
+
+		private void awaitWritable() {
+			boolean timed = statistics != null && !writable();
+			long start = timed ? System.nanoTime() : 0;
+			group.await(this::writable, writers);
+			if (timed) statistics.producerBlockedNanos += System.nanoTime() - start;
+		}
+
+		@Override
+		public RödaValue get() {
+			Coroutines.Coroutine c = group.enter();
+			try {
+				awaitReadable();
+				RödaValue value = queue.poll();
+				if (value != null) group.wake(writers);
+				return value;
+			} finally {
+				group.exit(c);
+			}
+		}
+
+		@Override
+		protected int getAll(List<RödaValue> buffer, int max) {
+			Coroutines.Coroutine c = group.enter();
+			try {
+				awaitReadable();
+				int n = 0;
+				while (n < max && !queue.isEmpty()) {
+					buffer.add(queue.poll());
+					n++;
+				}
+				if (n > 0) group.wake(writers);
+				return n;
+			} finally {
+				group.exit(c);
+			}
+		}
+
+		@Override
+		public void put(RödaValue value) {
+			Coroutines.Coroutine c = group.enter();
+			try {
+				write(value);
+			} finally {
+				group.exit(c);
+			}
+		}
+
+		@Override
+		protected void putAll(List<RödaValue> values) {
+			Coroutines.Coroutine c = group.enter();
+			try {
+				for (RödaValue value : values) write(value);
+			} finally {
+				group.exit(c);
+			}
+		}
+
+		private void write(RödaValue value) {
+			if (abandoned) throw new StreamAbandonedException(this);
+			// täysi putki antaa vuoron lukijalle
+			awaitWritable();
+			if (abandoned) throw new StreamAbandonedException(this);
+			if (closed) return; // suljettuun virtaan työnnetyt arvot katoavat
+			queue.add(value);
+			group.wake(readers);
+			if (statistics != null) statistics.buffered(queue.size());
+		}
+
+		@Override
+		public boolean finished() {
+			return closed && queue.isEmpty();
+		}
+
+		@Override
+		public void finish() {
+			Coroutines.Coroutine c = group.enter();
+			try {
+				closed = true;
+				group.wake(readers);
+				group.wake(writers);
+			} finally {
+				group.exit(c);
+			}
+		}
+
+		@Override
+		public void abandon() {
+			Coroutines.Coroutine c = group.enter();
+			try {
+				abandoned = true;
+				queue.clear();
+				group.wake(writers);
+			} finally {
+				group.exit(c);
+			}
+		}
+
+		@Override
+		public void cancel() {
+			Coroutines.Coroutine c = group.enter();
+			try {
+				abandoned = true;
+				closed = true;
+				queue.clear();
+				group.wake(readers);
+				group.wake(writers);
+			} finally {
+				group.exit(c);
+			}
+		}
+
+		@Override
+		public boolean abandoned() {
+			return abandoned;
+		}
+	}
+
 	public static enum ISStreamMode {
 		LINE,
 		CHARACTER
@@ -270,17 +1030,17 @@ public abstract class RödaStream implements Iterable<RödaValue> {
 			try {
 				switch (mode) {
 				case LINE:
-					String line = in.readLine();
+					String line = Scheduler.callBlocking(in::readLine);
 					if (line == null)
 						return null;
 					else
 						return RödaString.of(line);
 				case CHARACTER:
-					int chr = in.read();
+					int chr = Scheduler.callBlocking(in::read);
 					if (chr == -1)
 						return null;
 					else
-						return RödaString.of(Character.toString((char) chr));
+						return RödaString.of((char) chr);
 				default:
 					error("invalid input mode");
 					return null;
@@ -1,12 +1,12 @@
 package org.kaivos.röda;
 
 import java.util.List;
-import java.util.ArrayList;
 import java.util.Map;
 import java.util.regex.Pattern;
 
 import org.kaivos.röda.runtime.Datatype;
 import org.kaivos.röda.runtime.Function;
+import org.kaivos.röda.runtime.Identity;
 import org.kaivos.röda.type.RödaBoolean;
 
 import static org.kaivos.röda.type.RödaNativeFunction.NativeFunction;
@@ -26,8 +26,13 @@ public abstract class RödaValue {
 	public static final Datatype NFUNCTION = new Datatype("nfunction");
 	public static final Datatype NAMESPACE = new Datatype("namespace");
 	public static final Datatype REFERENCE = new Datatype("reference");
+	public static final Datatype BYTES = new Datatype("bytes");
 
-	protected RödaValue() {} // käytä apufunktioita
+	private final Identity identity;
+
+	protected RödaValue(Identity identity) { // käytä apufunktioita
+		this.identity = identity;
+	}
 	
 	public abstract RödaValue copy();
 	
@@ -200,34 +205,24 @@ public abstract class RödaValue {
 		}
 	}
 
-	private List<Datatype> identities = new ArrayList<>();
-
-	protected void assumeIdentity(String name) {
-		identities.add(new Datatype(name));
-	}
-
-	protected void assumeIdentity(Datatype identity) {
-		identities.add(identity);
-	}
-
-	protected void assumeIdentities(List<Datatype> identities) {
-		this.identities.addAll(identities);
+	public Identity identity() {
+		return identity;
 	}
 
 	public List<Datatype> identities() {
-		return identities;
+		return identity.datatypes();
 	}
 
 	public Datatype basicIdentity() {
-		return identities.get(0);
+		return identity.basic();
 	}
 
 	public boolean is(String type) {
-		return is(new Datatype(type));
+		return identity.is(type);
 	}
 	
 	public boolean is(Datatype type) {
-	        return identities.contains(type);
+	        return identity.is(type);
 	}
 
 	boolean weakEq(RödaValue value) {
@@ -0,0 +1,455 @@
+package org.kaivos.röda;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs the commands of pipelines, threads and other background tasks of the
+ * interpreter in a pool of worker threads.
+ *
+ * The number of workers that run at the same time is bounded by the
+ * parallelism of the scheduler. Most tasks spend their time waiting for other
+ * tasks, for example a command of a pipeline waits for its input. Such waits
+ * are done with {@link #block(BooleanSupplier, Blocker)} or
+ * {@link #await(Future)}, which let the pool start a compensating worker for
+ * the duration of the wait so that a waiting task never prevents the tasks it
+ * waits for from running. The number of waits that are compensated at the same
+ * time is limited, so there are never more than the parallelism plus the
+ * compensation limit worker threads. Waits beyond the limit block their worker
+ * without compensation, so the limit must be larger than the number of
+ * commands that wait for each other at the same time, for example the
+ * commands of the deepest pipeline.
+ *
+ * The workers are daemon threads. {@link #shutdown()} waits until the tasks
+ * that are still running are finished.
+ *
+ * Alternatively, a scheduler created with {@link #virtual(String)} runs every
+ * task in its own virtual thread. Virtual threads need Java 21 or newer and are
+ * looked up at runtime, so the interpreter itself still runs on Java 8.
+ */
+public final class Scheduler {
+
+	/**
+	 * A wait that may return before the condition it waits for is true.
+	 */
+	public static interface Blocker {
+		public void block() throws InterruptedException;
+	}
+
+	/**
+	 * An I/O operation that waits for something outside of the interpreter.
+	 */
+	public static interface BlockingCall<T> {
+		public T call() throws IOException;
+	}
+
+	/**
+	 * The default limit of compensated waits, the same as the limit of the
+	 * common pool of the JVM.
+	 */
+	public static final int DEFAULT_COMPENSATION_LIMIT = 256;
+
+	private final ForkJoinPool pool;
+	private final ThreadFactory virtualThreads;
+	private final String name;
+	private volatile Thread shutdownWaiter = null;
+
+	private final AtomicInteger workerCount = new AtomicInteger(), workerId = new AtomicInteger();
+	private final AtomicInteger peakWorkerCount = new AtomicInteger();
+	private final AtomicInteger compensated = new AtomicInteger();
+	private final int compensationLimit;
+	private final LongAdder submitted = new LongAdder(), inline = new LongAdder(), blocked = new LongAdder(),
+			uncompensated = new LongAdder();
+
+	private static final class Worker extends ForkJoinWorkerThread {
+		private final Scheduler scheduler;
+
+		Worker(ForkJoinPool pool, Scheduler scheduler) {
+			super(pool);
+			this.scheduler = scheduler;
+			// shutdown odottaa keskeneräiset tehtävät, joten työsäikeet eivät pidä JVM:ää käynnissä
+			setDaemon(true);
+			setName(scheduler.name + "-" + scheduler.workerId.incrementAndGet());
+		}
+
+		@Override
+		protected void onStart() {
+			super.onStart();
+			int n = scheduler.workerCount.incrementAndGet();
+			scheduler.peakWorkerCount.accumulateAndGet(n, Math::max);
+		}
+
+		@Override
+		protected void onTermination(Throwable exception) {
+			scheduler.workerCount.decrementAndGet();
+			super.onTermination(exception);
+		}
+	}
+
+	/**
+	 * Creates a new scheduler.
+	 *
+	 * @param name the prefix of the names of the worker threads
+	 * @param parallelism the number of workers that may run at the same time
+	 */
+	public Scheduler(String name, int parallelism) {
+		this(name, parallelism, DEFAULT_COMPENSATION_LIMIT);
+	}
+
+	/**
+	 * Creates a new scheduler.
+	 *
+	 * @param name the prefix of the names of the worker threads
+	 * @param parallelism the number of workers that may run at the same time
+	 * @param compensationLimit the number of waiting workers that may be compensated at the same time
+	 */
+	public Scheduler(String name, int parallelism, int compensationLimit) {
+		if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be positive");
+		if (compensationLimit < 0) throw new IllegalArgumentException("compensation limit must not be negative");
+		this.name = name;
+		this.compensationLimit = compensationLimit;
+		this.pool = new ForkJoinPool(parallelism, pool -> new Worker(pool, this), null, true);
+		this.virtualThreads = null;
+	}
+
+	private Scheduler(String name, ThreadFactory virtualThreads) {
+		this.name = name;
+		this.compensationLimit = 0;
+		this.pool = null;
+		this.virtualThreads = virtualThreads;
+	}
+
+	private static final ThreadFactory VIRTUAL_THREADS = virtualThreadFactory();
+
+	private static ThreadFactory virtualThreadFactory() {
+		try {
+			// Thread.ofVirtual().factory(), jos Java-versio tukee virtuaalisia säikeitä
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+			return (ThreadFactory) factory.invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the JVM supports virtual threads
+	 */
+	public static boolean virtualThreadsSupported() {
+		return VIRTUAL_THREADS != null;
+	}
+
+	/**
+	 * Creates a new scheduler that runs each task in a new virtual thread.
+	 *
+	 * @param name the prefix of the names of the threads
+	 * @throws UnsupportedOperationException if the JVM doesn't support virtual threads
+	 */
+	public static Scheduler virtual(String name) {
+		if (!virtualThreadsSupported())
+			throw new UnsupportedOperationException("virtual threads are not supported by this JVM");
+		return new Scheduler(name, VIRTUAL_THREADS);
+	}
+
+	/**
+	 * @return true if this scheduler runs its tasks in virtual threads
+	 */
+	public boolean isVirtual() {
+		return virtualThreads != null;
+	}
+
+	/**
+	 * Starts the task in a worker thread.
+	 *
+	 * @return a future that is completed when the task is finished
+	 */
+	public Future<?> submit(Runnable task) {
+		FutureTask<Void> future = new FutureTask<>(task, null);
+		submitted.increment();
+		if (virtualThreads == null) {
+			pool.execute(future);
+			return future;
+		}
+		int n = workerCount.incrementAndGet();
+		peakWorkerCount.accumulateAndGet(n, Math::max);
+		Thread thread = virtualThreads.newThread(() -> {
+			try {
+				future.run();
+			}
+			finally {
+				if (workerCount.decrementAndGet() == 0)
+					LockSupport.unpark(shutdownWaiter);
+			}
+		});
+		thread.setName(name + "-" + workerId.incrementAndGet());
+		thread.start();
+		return future;
+	}
+
+	/**
+	 * Starts a task that spends most of its time waiting for something outside
+	 * of the interpreter, like the input of a process. The pool runs other tasks
+	 * in other workers while the task is running.
+	 *
+	 * @return a future that is completed when the task is finished
+	 */
+	public Future<?> submitBlocking(Runnable task) {
+		return submit(() -> runBlockingDetached(task));
+	}
+
+	/**
+	 * Runs the task in the current thread. Used for tasks that would otherwise
+	 * be submitted to the pool while the current thread waits for them.
+	 */
+	public void runInline(Runnable task) {
+		inline.increment();
+		task.run();
+	}
+
+	/**
+	 * Waits until the future is completed. A worker thread that waits is
+	 * compensated with another worker.
+	 */
+	public static <T> T await(Future<T> future) throws InterruptedException, ExecutionException {
+		Coroutines.Group group = Coroutines.detach();
+		try {
+			block(future::isDone, () -> {
+				try {
+					future.get();
+				} catch (ExecutionException e) {}
+			});
+		} finally {
+			Coroutines.attach(group);
+		}
+		return future.get();
+	}
+
+	/**
+	 * Calls the blocker until the condition is true. A worker thread that waits
+	 * is compensated with another worker.
+	 */
+	public static void block(BooleanSupplier condition, Blocker blocker) throws InterruptedException {
+		if (condition.getAsBoolean()) return;
+		Scheduler scheduler = compensatingScheduler();
+		if (scheduler == null) {
+			// muut kuin työsäikeet ja rajan ylittävät odotukset odottavat tavalliseen tapaan
+			do blocker.block();
+			while (!condition.getAsBoolean());
+			return;
+		}
+		try {
+			ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+				@Override
+				public boolean block() throws InterruptedException {
+					blocker.block();
+					return condition.getAsBoolean();
+				}
+
+				@Override
+				public boolean isReleasable() {
+					return condition.getAsBoolean();
+				}
+			});
+		} finally {
+			scheduler.compensated.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Reserves a compensated wait for the current thread.
+	 *
+	 * @return the scheduler of the current worker, or null if the current thread
+	 *         is not a worker or the compensation limit has been reached
+	 */
+	private static Scheduler compensatingScheduler() {
+		Thread thread = Thread.currentThread();
+		if (!(thread instanceof Worker)) return null;
+		Scheduler scheduler = ((Worker) thread).scheduler;
+		scheduler.blocked.increment();
+		if (scheduler.compensated.incrementAndGet() > scheduler.compensationLimit) {
+			scheduler.compensated.decrementAndGet();
+			scheduler.uncompensated.increment();
+			return null;
+		}
+		return scheduler;
+	}
+
+	/**
+	 * Runs a task that waits for something outside of the interpreter in the
+	 * current thread. A worker thread is compensated with another worker while
+	 * the task is running.
+	 */
+	public static void runBlocking(Runnable task) {
+		// yksisäikeisessä tilassa muut komennot saavat vuoron odotuksen ajaksi
+		Coroutines.Group group = Coroutines.detach();
+		try {
+			runBlockingDetached(task);
+		} finally {
+			Coroutines.attach(group);
+		}
+	}
+
+	/**
+	 * Runs an I/O operation like {@link #runBlocking(Runnable)} and returns its
+	 * result.
+	 *
+	 * @throws IOException if the operation throws it
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T callBlocking(BlockingCall<T> call) throws IOException {
+		Object[] result = new Object[1];
+		IOException[] exception = new IOException[1];
+		runBlocking(() -> {
+			try {
+				result[0] = call.call();
+			} catch (IOException e) {
+				exception[0] = e;
+			}
+		});
+		if (exception[0] != null) throw exception[0];
+		return (T) result[0];
+	}
+
+	private static void runBlockingDetached(Runnable task) {
+		Scheduler scheduler = compensatingScheduler();
+		if (scheduler == null) {
+			task.run();
+			return;
+		}
+		try {
+			ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+				boolean done = false;
+
+				@Override
+				public boolean block() {
+					task.run();
+					done = true;
+					return true;
+				}
+
+				@Override
+				public boolean isReleasable() {
+					return done;
+				}
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			scheduler.compensated.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Waits until all running tasks are finished and stops the workers.
+	 */
+	public void shutdown() {
+		if (virtualThreads == null) {
+			pool.shutdown();
+			boolean interrupted = false;
+			while (!pool.isTerminated()) {
+				try {
+					pool.awaitTermination(1, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) Thread.currentThread().interrupt();
+			return;
+		}
+		shutdownWaiter = Thread.currentThread();
+		while (workerCount.get() > 0)
+			LockSupport.park(this);
+		shutdownWaiter = null;
+	}
+
+	/* tilastot */
+
+	/**
+	 * @return the number of workers that may run at the same time
+	 */
+	public int getParallelism() {
+		return pool != null ? pool.getParallelism() : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * @return the number of waiting workers that may be compensated at the same time
+	 */
+	public int getCompensationLimit() {
+		return compensationLimit;
+	}
+
+	/**
+	 * @return the number of worker threads that currently exist
+	 */
+	public int getThreadCount() {
+		return workerCount.get();
+	}
+
+	/**
+	 * @return the largest number of worker threads that have existed at the same time
+	 */
+	public int getPeakThreadCount() {
+		return peakWorkerCount.get();
+	}
+
+	/**
+	 * @return the number of worker threads that have been created
+	 */
+	public int getCreatedThreadCount() {
+		return workerId.get();
+	}
+
+	/**
+	 * @return the number of workers that are running a task and not waiting
+	 */
+	public int getRunningThreadCount() {
+		return pool != null ? pool.getRunningThreadCount() : workerCount.get();
+	}
+
+	/**
+	 * @return an estimate of the number of tasks that wait for a free worker
+	 */
+	public long getQueuedTaskCount() {
+		return pool != null ? pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount() : 0;
+	}
+
+	/**
+	 * @return the number of tasks submitted to the pool
+	 */
+	public long getSubmittedTaskCount() {
+		return submitted.sum();
+	}
+
+	/**
+	 * @return the number of tasks run in the thread that would have waited for them
+	 */
+	public long getInlineTaskCount() {
+		return inline.sum();
+	}
+
+	/**
+	 * @return the number of times a worker has waited with compensation
+	 */
+	public long getBlockedCount() {
+		return blocked.sum();
+	}
+
+	/**
+	 * @return the number of times a worker has waited without compensation
+	 *         because the compensation limit was reached
+	 */
+	public long getUncompensatedCount() {
+		return uncompensated.sum();
+	}
+}
@@ -4,20 +4,19 @@ import static org.kaivos.röda.Interpreter.checkList;
 import static org.kaivos.röda.Interpreter.checkInteger;
 import static org.kaivos.röda.Interpreter.checkString;
 import static org.kaivos.röda.Interpreter.outOfBounds;
+import static org.kaivos.röda.RödaValue.BYTES;
 import static org.kaivos.röda.RödaValue.LIST;
 import static org.kaivos.röda.RödaValue.STRING;
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 import java.util.function.Consumer;
 
 import org.kaivos.röda.Interpreter.RödaScope;
 import org.kaivos.röda.RödaValue;
 import org.kaivos.röda.runtime.Function.Parameter;
-import org.kaivos.röda.type.RödaInteger;
+import org.kaivos.röda.type.RödaBytes;
 import org.kaivos.röda.type.RödaList;
 import org.kaivos.röda.type.RödaNativeFunction;
 import org.kaivos.röda.type.RödaString;
@@ -31,6 +30,14 @@ public final class BtosAndStobPopulator {
 			Charset chrset = StandardCharsets.UTF_8;
 			Consumer<RödaValue> convert = v -> {
 				checkList("bytesToString", v);
+				if (v.is(BYTES)) {
+					out.push(RödaString.of(((RödaBytes) v).decode(chrset)));
+					return;
+				}
+				if (v instanceof RödaList && ((RödaList) v).storesBytes()) {
+					out.push(RödaString.of(new String(((RödaList) v).bytes(), chrset)));
+					return;
+				}
 				byte[] arr = new byte[(int) v.list().size()];
 				int c = 0;
 				for (RödaValue i : v.list()) {
@@ -53,11 +60,7 @@ public final class BtosAndStobPopulator {
 			Charset chrset = StandardCharsets.UTF_8;
 			Consumer<RödaValue> convert = v -> {
 				checkString("stringToBytes", v);
-				byte[] arr = v.str().getBytes(chrset);
-				List<RödaValue> bytes = new ArrayList<>();
-				for (byte b : arr)
-					bytes.add(RödaInteger.of(b));
-				out.push(RödaList.of(bytes));
+				out.push(RödaList.ofBytes(v.str().getBytes(chrset)));
 			};
 			if (args.size() > 0) {
 				args.forEach(convert);
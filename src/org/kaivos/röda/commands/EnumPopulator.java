@@ -7,28 +7,29 @@ import java.util.Arrays;
 
 import org.kaivos.röda.Interpreter.RödaScope;
 import org.kaivos.röda.Interpreter;
-import org.kaivos.röda.RödaValue;
 import org.kaivos.röda.runtime.Function.Parameter;
 import org.kaivos.röda.type.RödaInteger;
 import org.kaivos.röda.type.RödaNativeFunction;
+import org.kaivos.röda.type.RödaNativeFunction.NativeElementBody;
 
 public final class EnumPopulator {
 	
 	private EnumPopulator() {}
 
 	public static void populateEnum(RödaScope S) {
-		S.setLocal("enum", RödaNativeFunction.of("enum", (typeargs, args, kwargs, scope, in, out) -> {
+		NativeElementBody enumerate = (typeargs, args, kwargs, scope) -> {
 			if (args.size() > 1) Interpreter.argumentOverflow("enum", 1, args.size());
-			long i = args.size() == 0 ? 0 : args.get(0).integer();
+			long[] i = { args.size() == 0 ? 0 : args.get(0).integer() };
 			long step = kwargs.get("step").integer();
-			while (true) {
-				RödaValue val = in.pull();
-				if (val == null) break;
-				out.push(val);
-				out.push(RödaInteger.of(i));
-				i += step;
-			}
+			return (val, out) -> {
+				out.accept(val);
+				out.accept(RödaInteger.of(i[0]));
+				i[0] += step;
+			};
+		};
+		S.setLocal("enum", RödaNativeFunction.of("enum", (typeargs, args, kwargs, scope, in, out) -> {
+			enumerate.bind(typeargs, args, kwargs, scope).forAll(in, out);
 		}, Arrays.asList(new Parameter("fst", false, INTEGER)), true,
-				Arrays.asList(new Parameter("step", false, expressionInt("<enum populator>", 0, 1)))));
+				Arrays.asList(new Parameter("step", false, expressionInt("<enum populator>", 0, 1))), enumerate));
 	}
 }
@@ -10,6 +10,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.lang.ProcessBuilder.Redirect;
 import java.util.Arrays;
@@ -19,6 +20,8 @@ import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.kaivos.röda.Interpreter;
 import org.kaivos.röda.Interpreter.RödaException;
@@ -26,25 +29,53 @@ import org.kaivos.röda.Interpreter.RödaScope;
 import org.kaivos.röda.Parser;
 import org.kaivos.röda.Parser.DatatypeTree;
 import org.kaivos.röda.RödaStream;
+import org.kaivos.röda.RödaStream.StreamAbandonedException;
+import org.kaivos.röda.Scheduler;
 import org.kaivos.röda.runtime.Function.Parameter;
 import org.kaivos.röda.RödaValue;
+import org.kaivos.röda.type.RödaBytes;
 import org.kaivos.röda.type.RödaNativeFunction;
 import org.kaivos.röda.type.RödaString;
 
 public final class ExecPopulator {
 
 	private ExecPopulator() {}
+
+	private static final int BUFFER_SIZE = 8192;
 	
-	private static void outputThread(InputStream pout, RödaStream out, boolean lineMode) {
+	private static void outputThread(Process p, InputStream pout, RödaStream out, Lock lock, boolean lineMode,
+			boolean binary) {
 		InputStreamReader reader = new InputStreamReader(pout);
 		try {
-			if (lineMode) {
+			if (binary) {
+				while (true) {
+					// jokainen arvo saa oman taulukkonsa, koska tavuja ei saa muuttaa jälkikäteen
+					byte[] buffer = new byte[BUFFER_SIZE];
+					int length = pout.read(buffer);
+					if (length == -1)
+						break;
+					lock.lock();
+					try {
+						out.push(RödaBytes.of(buffer, 0, length));
+					} finally {
+						lock.unlock();
+					}
+				}
+				pout.close();
+			} else if (lineMode) {
 				BufferedReader br = new BufferedReader(reader);
 				while (true) {
 					String str = br.readLine();
 					if (str == null)
 						break;
-					out.push(RödaString.of(str));
+					// stdout ja stderr voivat kirjoittaa samaan virtaan yhtä aikaa
+					// (toisin kuin synchronized, lukko ei sido virtuaalista säiettä kantajasäikeeseen)
+					lock.lock();
+					try {
+						out.push(RödaString.of(str));
+					} finally {
+						lock.unlock();
+					}
 				}
 				br.close();
 			} else {
@@ -52,10 +83,19 @@ public final class ExecPopulator {
 					int chr = reader.read();
 					if (chr == -1)
 						break;
-					out.push(RödaString.of(String.valueOf((char) chr)));
+					lock.lock();
+					try {
+						out.push(RödaString.of((char) chr));
+					} finally {
+						lock.unlock();
+					}
 				}
 			}
 			reader.close();
+		} catch (StreamAbandonedException e) {
+			// tulostetta ei enää lueta, joten prosessin voi lopettaa
+			p.destroy();
+			throw e;
 		} catch (IOException e) {
 			error(e);
 		}
@@ -74,7 +114,7 @@ public final class ExecPopulator {
 				envVars.put(e.getKey(), e.getValue().str());
 			}
 			
-			boolean inheritIn = false, inheritOut = false, inheritErr = true;
+			boolean inheritIn = false, inheritOut = false, inheritErr = true, binary = false;
 			
 			if (kwargs.containsKey("redirect_in")) {
 				RödaValue val = kwargs.get("redirect_in");
@@ -91,6 +131,12 @@ public final class ExecPopulator {
 				if (val.is(RödaValue.BOOLEAN)) inheritErr = val.bool();
 			}
 			
+			if (kwargs.containsKey("binary")) {
+				RödaValue val = kwargs.get("binary");
+				if (val.is(RödaValue.BOOLEAN)) binary = val.bool();
+			}
+			boolean binaryOutput = binary;
+			
 			try {
 				ProcessBuilder b = new ProcessBuilder(params);
 				if (inheritIn) b.redirectInput(Redirect.INHERIT);
@@ -101,29 +147,41 @@ public final class ExecPopulator {
 				Process p = b.start();
 				InputStream pout = p.getInputStream();
 				InputStream perr = p.getErrorStream();
-				PrintWriter pin = new PrintWriter(p.getOutputStream());
+				OutputStream pinStream = p.getOutputStream();
+				PrintWriter pin = new PrintWriter(pinStream);
 				Runnable input = () -> {
 					if (true) {
 						while (p.isAlive()) {
 							RödaValue value = in.pull();
 							if (value == null)
 								break;
+							if (value.is(RödaValue.BYTES)) {
+								// tavut kirjoitetaan suoraan prosessille ilman merkkikoodausta
+								try {
+									((RödaBytes) value).writeTo(pinStream);
+									pinStream.flush();
+								} catch (IOException e) {
+									error(e);
+								}
+								continue;
+							}
 							pin.print(value.str());
 							pin.flush();
 						}
 					}
 					pin.close();
 				};
-				Runnable output = () -> outputThread(pout, out, lineMode);
-				Runnable errput = () -> outputThread(perr, out, lineMode);
-				Future<?> futureIn = null, futureOut = null, futureErr = null;
-				if (!inheritIn) futureIn = Interpreter.executor.submit(input);
-				if (!inheritOut) futureOut = Interpreter.executor.submit(output);
-				if (!inheritErr) futureErr = Interpreter.executor.submit(errput);
-				if (!inheritOut) futureOut.get();
-				if (!inheritErr) futureErr.get();
-				if (!inheritIn) futureIn.get();
-				p.waitFor();
+				Lock lock = new ReentrantLock();
+				Runnable output = () -> outputThread(p, pout, out, lock, lineMode, binaryOutput);
+				Runnable errput = () -> outputThread(p, perr, out, lock, lineMode, binaryOutput);
+				Future<?> futureIn = null, futureErr = null;
+				if (!inheritIn) futureIn = Interpreter.scheduler.submitBlocking(input);
+				if (!inheritErr) futureErr = Interpreter.scheduler.submitBlocking(errput);
+				// tuloste luetaan tässä säikeessä, joka muuten vain odottaisi
+				if (!inheritOut) Scheduler.runBlocking(output);
+				if (!inheritErr) Scheduler.await(futureErr);
+				if (!inheritIn) Scheduler.await(futureIn);
+				Scheduler.block(() -> !p.isAlive(), p::waitFor);
 			} catch (IOException e) {
 				error(e);
 			} catch (InterruptedException e) {
@@ -132,6 +190,9 @@ public final class ExecPopulator {
 				if (e.getCause() instanceof RödaException) {
 					throw (RödaException) e.getCause();
 				}
+				if (e.getCause() instanceof StreamAbandonedException) {
+					throw (StreamAbandonedException) e.getCause();
+				}
 				error(e.getCause());
 			}
 		}, Arrays.asList(new Parameter("command", false), new Parameter("args", false)), true,
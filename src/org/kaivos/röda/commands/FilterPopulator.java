@@ -15,6 +15,7 @@ import org.kaivos.röda.RödaValue;
 import org.kaivos.röda.Interpreter.RödaScope;
 import org.kaivos.röda.runtime.Function.Parameter;
 import org.kaivos.röda.type.RödaNativeFunction;
+import org.kaivos.röda.type.RödaNativeFunction.NativeElementBody;
 
 public final class FilterPopulator {
 
@@ -41,22 +42,26 @@ public final class FilterPopulator {
 	}
 
 	public static void populateFilterAndGrep(Interpreter I, RödaScope S) {
+		NativeElementBody filter = (typeargs, args, kwargs, scope) -> (val, out) -> {
+			if (evalCond(I, args.get(0), val)) out.accept(val);
+		};
 		S.setLocal("filter", RödaNativeFunction.of("filter", (typeargs, args, kwargs, scope, in, out) -> {
-			in.forAll(val -> {
-				if (evalCond(I, args.get(0), val)) out.push(val);
-			});
-		}, Arrays.asList(new Parameter("cond", false, FUNCTION)), false));
+			filter.bind(typeargs, args, kwargs, scope).forAll(in, out);
+		}, Arrays.asList(new Parameter("cond", false, FUNCTION)), false, Collections.emptyList(), filter));
 		
-		S.setLocal("grep", RödaNativeFunction.of("grep", (typeargs, args, kwargs, scope, in, out) -> {
+		NativeElementBody grep = (typeargs, args, kwargs, scope) -> {
 			Pattern[] patterns = new Pattern[args.size()];
-			for (int i = 0; i < patterns.length; i++) patterns[i] = Pattern.compile(args.get(i).str());
-			in.forAll(val -> {
+			for (int i = 0; i < patterns.length; i++) patterns[i] = args.get(i).pattern();
+			return (val, out) -> {
 				for (Pattern p : patterns) {
 					if (p.matcher(val.str()).matches()) {
-						out.push(val);
+						out.accept(val);
 					}
 				}
-			});
-		}, Arrays.asList(new Parameter("patterns", false, STRING)), true));
+			};
+		};
+		S.setLocal("grep", RödaNativeFunction.of("grep", (typeargs, args, kwargs, scope, in, out) -> {
+			grep.bind(typeargs, args, kwargs, scope).forAll(in, out);
+		}, Arrays.asList(new Parameter("patterns", false, STRING)), true, Collections.emptyList(), grep));
 	}
 }
@@ -57,9 +57,7 @@ public final class HeadAndTailPopulator {
 			int num = (int) numl;
 
 			List<RödaValue> values = new ArrayList<>();
-			for (RödaValue value : in) {
-				values.add(value);
-			}
+			in.forAll(values::add);
 			if (values.size() < num)
 				emptyStream("tail: input stream is closed");
 
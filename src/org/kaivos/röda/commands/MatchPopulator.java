@@ -6,57 +6,71 @@ import static org.kaivos.röda.Interpreter.error;
 import static org.kaivos.röda.RödaValue.STRING;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 import org.kaivos.röda.Interpreter.RödaScope;
 import org.kaivos.röda.RödaValue;
+import org.kaivos.röda.runtime.Datatype;
 import org.kaivos.röda.runtime.Function.Parameter;
 import org.kaivos.röda.type.RödaList;
 import org.kaivos.röda.type.RödaNativeFunction;
+import org.kaivos.röda.type.RödaNativeFunction.ElementFunction;
+import org.kaivos.röda.type.RödaNativeFunction.NativeElementBody;
 import org.kaivos.röda.type.RödaString;
 
 public final class MatchPopulator {
 
 	private MatchPopulator() {}
 
+	private static Pattern compile(List<RödaValue> args) {
+		if (args.size() < 1)
+			argumentUnderflow("match", 1, 0);
+		try {
+			return args.get(0).pattern();
+		} catch (PatternSyntaxException e) {
+			error("match: pattern syntax exception: " + e.getMessage());
+			return null;
+		}
+	}
+
 	public static void populateMatch(RödaScope S) {
-		S.setLocal("match", RödaNativeFunction.of("match", (typeargs, args, kwargs, scope, in, out) -> {
-			if (args.size() < 1)
-				argumentUnderflow("match", 1, 0);
-			String regex = args.get(0).str();
-			args.remove(0);
-			Pattern pattern;
-			try {
-				pattern = Pattern.compile(regex);
-			} catch (PatternSyntaxException e) {
-				error("match: pattern syntax exception: " + e.getMessage());
-				return;
+		NativeElementBody match = new NativeElementBody() {
+			@Override
+			public boolean isElementwise(List<RödaValue> args) {
+				return args.size() == 1;
 			}
 
-			if (args.size() > 0) {
-				for (RödaValue arg : args) {
-					Matcher matcher = pattern.matcher(arg.str());
+			@Override
+			public ElementFunction bind(List<Datatype> typeargs, List<RödaValue> args,
+					Map<String, RödaValue> kwargs, RödaScope scope) {
+				Pattern pattern = compile(args);
+				return (input, out) -> {
+					checkString("match", input);
+					Matcher matcher = pattern.matcher(input.str());
 					if (matcher.matches()) {
-						RödaValue[] results = new RödaValue[matcher.groupCount() + 1];
+						RödaValue[] results = new RödaValue[matcher.groupCount()];
 						for (int i = 0; i < results.length; i++) {
 							String group = matcher.group(i);
 							results[i] = RödaString.of(group != null ? group : "");
 						}
-						out.push(RödaList.of(results));
+						out.accept(RödaList.of(results));
 					} else
-						out.push(RödaList.of());
-				}
-			} else {
-				while (true) {
-					RödaValue input = in.pull();
-					if (input == null)
-						break;
-					checkString("match", input);
-					Matcher matcher = pattern.matcher(input.str());
+						out.accept(RödaList.of());
+				};
+			}
+		};
+		S.setLocal("match", RödaNativeFunction.of("match", (typeargs, args, kwargs, scope, in, out) -> {
+			if (args.size() > 1) {
+				Pattern pattern = compile(args);
+				for (RödaValue arg : args.subList(1, args.size())) {
+					Matcher matcher = pattern.matcher(arg.str());
 					if (matcher.matches()) {
-						RödaValue[] results = new RödaValue[matcher.groupCount()];
+						RödaValue[] results = new RödaValue[matcher.groupCount() + 1];
 						for (int i = 0; i < results.length; i++) {
 							String group = matcher.group(i);
 							results[i] = RödaString.of(group != null ? group : "");
@@ -65,7 +79,10 @@ public final class MatchPopulator {
 					} else
 						out.push(RödaList.of());
 				}
+			} else {
+				match.bind(typeargs, args, kwargs, scope).forAll(in, out);
 			}
-		}, Arrays.asList(new Parameter("pattern", false, STRING), new Parameter("strings", false, STRING)), true));
+		}, Arrays.asList(new Parameter("pattern", false, STRING), new Parameter("strings", false, STRING)), true,
+				Collections.emptyList(), match));
 	}
 }
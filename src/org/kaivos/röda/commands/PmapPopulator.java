@@ -0,0 +1,210 @@
+package org.kaivos.röda.commands;
+
+import static org.kaivos.röda.Interpreter.error;
+import static org.kaivos.röda.Interpreter.outOfBounds;
+import static org.kaivos.röda.RödaValue.BOOLEAN;
+import static org.kaivos.röda.RödaValue.FUNCTION;
+import static org.kaivos.röda.RödaValue.INTEGER;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+import org.kaivos.röda.Interpreter;
+import org.kaivos.röda.Interpreter.RödaException;
+import org.kaivos.röda.Interpreter.RödaScope;
+import org.kaivos.röda.Parser;
+import org.kaivos.röda.RödaStream;
+import org.kaivos.röda.RödaValue;
+import org.kaivos.röda.Scheduler;
+import org.kaivos.röda.runtime.Function.Parameter;
+import org.kaivos.röda.type.RödaNativeFunction;
+
+public final class PmapPopulator {
+
+	private PmapPopulator() {}
+
+	private static List<RödaValue> apply(Interpreter I, RödaValue function, RödaValue value) {
+		RödaStream in = RödaStream.makeEmptyStream();
+		RödaStream out = RödaStream.makeStream();
+		I.exec("<pmap populator>", 0,
+				function,
+				Collections.emptyList(), Arrays.asList(value), Collections.emptyMap(),
+				new RödaScope(I.G), in, out);
+		out.finish();
+		return out.readAll().list();
+	}
+
+	/**
+	 * The state of one pmap call. The values are numbered in the order they are
+	 * read, and the results are kept until they can be pushed.
+	 */
+	private static final class Pmap {
+		private final Interpreter I;
+		private final RödaValue function;
+		private final boolean ordered;
+		private final int parallelism, inflight;
+
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition changed = lock.newCondition();
+		private final Map<Long, List<RödaValue>> reorderBuffer = new HashMap<>();
+		private final ArrayDeque<List<RödaValue>> completed = new ArrayDeque<>();
+		private long submitted = 0, pushed = 0;
+		private int running = 0;
+		private Throwable failure = null;
+
+		Pmap(Interpreter I, RödaValue function, boolean ordered, int parallelism, int inflight) {
+			this.I = I;
+			this.function = function;
+			this.ordered = ordered;
+			this.parallelism = parallelism;
+			this.inflight = inflight;
+		}
+
+		private void submit(RödaValue value) {
+			long index = submitted++;
+			running++;
+			Interpreter.scheduler.submit(() -> {
+				List<RödaValue> result = null;
+				Throwable error = null;
+				try {
+					result = apply(I, function, value);
+				} catch (Throwable e) {
+					error = e;
+				}
+				lock.lock();
+				try {
+					running--;
+					if (error != null) {
+						if (failure == null) failure = error;
+					}
+					else if (ordered) reorderBuffer.put(index, result);
+					else completed.add(result);
+					changed.signal();
+				} finally {
+					lock.unlock();
+				}
+			});
+		}
+
+		/**
+		 * Takes the results that can be pushed now. Must be called with the lock.
+		 */
+		private List<List<RödaValue>> takeResults() {
+			List<List<RödaValue>> results = new ArrayList<>();
+			if (ordered) {
+				List<RödaValue> result;
+				while ((result = reorderBuffer.remove(pushed)) != null) {
+					results.add(result);
+					pushed++;
+				}
+			}
+			else {
+				results.addAll(completed);
+				pushed += completed.size();
+				completed.clear();
+			}
+			return results;
+		}
+
+		private boolean resultsAvailable() {
+			return ordered ? reorderBuffer.containsKey(pushed) : !completed.isEmpty();
+		}
+
+		/**
+		 * Pushes the available results and waits for more until the condition is true.
+		 */
+		private void pushUntil(BooleanSupplier condition, RödaStream out) {
+			while (true) {
+				List<List<RödaValue>> results;
+				lock.lock();
+				try {
+					results = takeResults();
+					if (results.isEmpty()) {
+						if (failure != null || condition.getAsBoolean()) return;
+						Scheduler.block(() -> failure != null || condition.getAsBoolean() || resultsAvailable(),
+								changed::await);
+						results = takeResults();
+					}
+				} catch (InterruptedException e) {
+					error(e);
+					return;
+				} finally {
+					lock.unlock();
+				}
+				// tulokset työnnetään lukon ulkopuolella, koska työntäminen voi odottaa
+				for (List<RödaValue> result : results) out.pushAll(result);
+			}
+		}
+
+		void run(RödaStream in, RödaStream out) {
+			try {
+				RödaValue value;
+				while ((value = in.pull()) != null) {
+					pushUntil(() -> running < parallelism && submitted - pushed < inflight, out);
+					lock.lock();
+					try {
+						if (failure != null) break;
+						submit(value);
+					} finally {
+						lock.unlock();
+					}
+				}
+				pushUntil(() -> running == 0 && !resultsAvailable(), out);
+			} finally {
+				// keskeneräiset tehtävät saavat valmistua ennen kuin komento päättyy
+				lock.lock();
+				try {
+					Scheduler.block(() -> running == 0, changed::await);
+				} catch (InterruptedException e) {
+					error(e);
+				} finally {
+					lock.unlock();
+				}
+			}
+			if (failure instanceof RödaException) throw (RödaException) failure;
+			if (failure != null) error(failure);
+		}
+	}
+
+	public static void populatePmap(Interpreter I, RödaScope S) {
+		S.setLocal("pmap", RödaNativeFunction.of("pmap", (typeargs, args, kwargs, scope, in, out) -> {
+			RödaValue function = args.get(0);
+			long parallelism = kwargs.get("parallelism").integer();
+			long inflight = kwargs.get("inflight").integer();
+			boolean ordered = kwargs.get("ordered").bool();
+			if (parallelism < 0 || parallelism > Integer.MAX_VALUE)
+				outOfBounds("pmap: illegal parallelism: " + parallelism);
+			if (inflight < 0 || inflight > Integer.MAX_VALUE)
+				outOfBounds("pmap: illegal number of values in flight: " + inflight);
+			if (parallelism == 0)
+				parallelism = Runtime.getRuntime().availableProcessors();
+			if (inflight == 0)
+				inflight = Math.min(4 * parallelism, Integer.MAX_VALUE);
+
+			if (I.singleThreadMode) {
+				// yksisäikeisessä tilassa arvot käsitellään järjestyksessä
+				RödaValue value;
+				while ((value = in.pull()) != null) {
+					out.pushAll(apply(I, function, value));
+				}
+				return;
+			}
+			new Pmap(I, function, ordered, (int) parallelism, (int) inflight).run(in, out);
+		}, Arrays.asList(new Parameter("function", false, FUNCTION)), false,
+				Arrays.asList(
+						new Parameter("parallelism", false, INTEGER,
+								Parser.expressionInt("<pmap populator>", 0, 0)),
+						new Parameter("inflight", false, INTEGER,
+								Parser.expressionInt("<pmap populator>", 0, 0)),
+						new Parameter("ordered", false, BOOLEAN,
+								Parser.expressionBoolean("<pmap populator>", 0, true)))));
+	}
+}
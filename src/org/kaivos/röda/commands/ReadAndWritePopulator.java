@@ -2,11 +2,15 @@ package org.kaivos.röda.commands;
 
 import static org.kaivos.röda.Interpreter.argumentUnderflow;
 import static org.kaivos.röda.Interpreter.error;
+import static org.kaivos.röda.RödaValue.BYTES;
 import static org.kaivos.röda.RödaValue.STRING;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.stream.Stream;
@@ -17,6 +21,7 @@ import org.kaivos.röda.Parser;
 import org.kaivos.röda.Interpreter.RödaScope;
 import org.kaivos.röda.RödaValue;
 import org.kaivos.röda.runtime.Function.Parameter;
+import org.kaivos.röda.type.RödaBytes;
 import org.kaivos.röda.type.RödaNativeFunction;
 import org.kaivos.röda.type.RödaString;
 
@@ -44,15 +49,34 @@ public final class ReadAndWritePopulator {
 						new Parameter("limit", false, Parser.expressionInt("<read and write populator>", 0, -1))
 				)));
 		
+		S.setLocal("readBytes", RödaNativeFunction.of("readBytes", (typeargs, args, kwargs, scope, in, out) -> {
+			if (args.size() < 1) argumentUnderflow("readBytes", 1, args.size());
+			for (RödaValue value : args) {
+				File file = IOUtils.getMaybeRelativeFile(I.currentDir, value.str());
+				try {
+					out.push(RödaBytes.of(Files.readAllBytes(file.toPath())));
+				} catch (IOException e) {
+					error(e);
+				}
+			}
+		}, Arrays.asList(new Parameter("files", false, STRING)), true));
+
 		S.setLocal("writeStrings", RödaNativeFunction.of("writeStrings", (typeargs, args, kwargs, scope, in, out) -> {
 			String filename = args.get(0).str();
 			File file = IOUtils.getMaybeRelativeFile(I.currentDir, filename);
-			try {
-				PrintWriter writer = new PrintWriter(file);
-				for (RödaValue input : in) {
-					writer.print(input.str());
-				}
-				writer.close();
+			Charset chrset = Charset.defaultCharset();
+			try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+				in.forAllBatches(batch -> {
+					try {
+						for (RödaValue input : batch) {
+							// tavut kirjoitetaan sellaisenaan
+							if (input.is(BYTES)) ((RödaBytes) input).writeTo(os);
+							else os.write(input.str().getBytes(chrset));
+						}
+					} catch (IOException e) {
+						error(e);
+					}
+				});
 			} catch (IOException e) {
 				error(e);
 			}
@@ -15,6 +15,7 @@ import java.util.List;
 
 import org.kaivos.röda.Interpreter.RödaScope;
 import org.kaivos.röda.Parser.ExpressionTree.CType;
+import org.kaivos.röda.RödaStream;
 import org.kaivos.röda.RödaValue;
 import org.kaivos.röda.runtime.Function.Parameter;
 import org.kaivos.röda.type.RödaFloating;
@@ -27,6 +28,32 @@ public class ReducePopulator {
 
 	private ReducePopulator() {}
 	
+	/**
+	 * Finds the minimum or maximum of a non-empty list whose elements are stored
+	 * as primitives, comparing them like the LT operator does. Returns null if
+	 * the list stores other values.
+	 */
+	private static RödaValue primitiveMinMax(RödaList list, boolean min) {
+		int size = list.list().size();
+		if (list.storesIntegers()) {
+			long val = list.integerAt(0);
+			for (int i = 1; i < size; i++) {
+				long val2 = list.integerAt(i);
+				if (min ? val2 < val : val < val2) val = val2;
+			}
+			return RödaInteger.of(val);
+		}
+		if (list.storesFloatings()) {
+			double val = list.floatingAt(0);
+			for (int i = 1; i < size; i++) {
+				double val2 = list.floatingAt(i);
+				if (min ? val2 < val : val < val2) val = val2;
+			}
+			return RödaFloating.of(val);
+		}
+		return null;
+	}
+
 	public static void addMinMaxFunction(RödaScope S, String name, boolean min) {
 		S.setLocal(name, RödaNativeFunction.of(name, (typeargs, args, kwargs, scope, in, out) -> {
 			RödaValue first = kwargs.get("fst");
@@ -36,12 +63,14 @@ public class ReducePopulator {
 					emptyStream("empty stream");
 					return;
 				}
-				while (true) {
-					RödaValue val2 = in.pull();
-					if (val2 == null) break;
-					RödaValue a = min ? val2 : val;
-					RödaValue b = min ? val : val2;
-					if (a.callOperator(CType.LT, b).bool()) val = val2;
+				List<RödaValue> buffer = new ArrayList<>();
+				while (in.pullAll(buffer, RödaStream.BATCH_SIZE) > 0) {
+					for (RödaValue val2 : buffer) {
+						RödaValue a = min ? val2 : val;
+						RödaValue b = min ? val : val2;
+						if (a.callOperator(CType.LT, b).bool()) val = val2;
+					}
+					buffer.clear();
 				}
 				out.push(val);
 			}
@@ -55,6 +84,13 @@ public class ReducePopulator {
 							emptyStream("empty stream");
 						continue;
 					}
+					if (first == null && list instanceof RödaList) {
+						RödaValue val = primitiveMinMax((RödaList) list, min);
+						if (val != null) {
+							out.push(val);
+							continue;
+						}
+					}
 					RödaValue val = first != null ? first : list.list().get(0);
 					for (int i = first != null ? 0 : 1; i < list.list().size(); i++) {
 						RödaValue a = min ? list.list().get(i) : val;
@@ -92,28 +128,31 @@ public class ReducePopulator {
 				}
 				if (val.is(INTEGER)) {
 					long sum = val.integer();
-					while (true) {
-						RödaValue val2 = in.pull();
-						if (val2 == null) break;
-						sum += val2.integer();
+					List<RödaValue> buffer = new ArrayList<>();
+					while (in.pullAll(buffer, RödaStream.BATCH_SIZE) > 0) {
+						for (RödaValue val2 : buffer)
+							sum += val2.integer();
+						buffer.clear();
 					}
 					out.push(RödaInteger.of(sum));
 				}
 				else if (val.is(FLOATING)) {
 					double sum = val.floating();
-					while (true) {
-						RödaValue val2 = in.pull();
-						if (val2 == null) break;
-						sum += val2.floating();
+					List<RödaValue> buffer = new ArrayList<>();
+					while (in.pullAll(buffer, RödaStream.BATCH_SIZE) > 0) {
+						for (RödaValue val2 : buffer)
+							sum += val2.floating();
+						buffer.clear();
 					}
 					out.push(RödaFloating.of(sum));
 				}
 				else if (val.is(LIST)) {
 					List<RödaValue> sum = new ArrayList<>(val.list());
-					while (true) {
-						RödaValue val2 = in.pull();
-						if (val2 == null) break;
-						sum.add(val2);
+					List<RödaValue> buffer = new ArrayList<>();
+					while (in.pullAll(buffer, RödaStream.BATCH_SIZE) > 0) {
+						for (RödaValue val2 : buffer)
+							sum.add(val2);
+						buffer.clear();
 					}
 					out.push(RödaList.of(sum));
 				}
@@ -127,7 +166,22 @@ public class ReducePopulator {
 						continue;
 					}
 					RödaValue val = first != null ? first : list.list().get(0);
-					if (val.is(INTEGER)) {
+					// primitiiveinä tallennetut luvut lasketaan yhteen luomatta niistä arvoja
+					if (first == null && list instanceof RödaList && ((RödaList) list).storesIntegers()) {
+						RödaList l = (RödaList) list;
+						long sum = l.integerAt(0);
+						for (int i = 1; i < list.list().size(); i++)
+							sum += l.integerAt(i);
+						out.push(RödaInteger.of(sum));
+					}
+					else if (first == null && list instanceof RödaList && ((RödaList) list).storesFloatings()) {
+						RödaList l = (RödaList) list;
+						double sum = l.floatingAt(0);
+						for (int i = 1; i < list.list().size(); i++)
+							sum += l.floatingAt(i);
+						out.push(RödaFloating.of(sum));
+					}
+					else if (val.is(INTEGER)) {
 						long sum = val.integer();
 						for (int i = first != null ? 0 : 1; i < list.list().size(); i++)
 							sum += list.list().get(i).integer();
@@ -159,19 +213,21 @@ public class ReducePopulator {
 				}
 				if (val.is(INTEGER)) {
 					long sum = val.integer();
-					while (true) {
-						RödaValue val2 = in.pull();
-						if (val2 == null) break;
-						sum *= val2.integer();
+					List<RödaValue> buffer = new ArrayList<>();
+					while (in.pullAll(buffer, RödaStream.BATCH_SIZE) > 0) {
+						for (RödaValue val2 : buffer)
+							sum *= val2.integer();
+						buffer.clear();
 					}
 					out.push(RödaInteger.of(sum));
 				}
 				else if (val.is(FLOATING)) {
 					double sum = val.floating();
-					while (true) {
-						RödaValue val2 = in.pull();
-						if (val2 == null) break;
-						sum *= val2.floating();
+					List<RödaValue> buffer = new ArrayList<>();
+					while (in.pullAll(buffer, RödaStream.BATCH_SIZE) > 0) {
+						for (RödaValue val2 : buffer)
+							sum *= val2.floating();
+						buffer.clear();
 					}
 					out.push(RödaFloating.of(sum));
 				}
@@ -185,7 +241,21 @@ public class ReducePopulator {
 						continue;
 					}
 					RödaValue val = first != null ? first : list.list().get(0);
-					if (val.is(INTEGER)) {
+					if (first == null && list instanceof RödaList && ((RödaList) list).storesIntegers()) {
+						RödaList l = (RödaList) list;
+						long sum = l.integerAt(0);
+						for (int i = 1; i < list.list().size(); i++)
+							sum *= l.integerAt(i);
+						out.push(RödaInteger.of(sum));
+					}
+					else if (first == null && list instanceof RödaList && ((RödaList) list).storesFloatings()) {
+						RödaList l = (RödaList) list;
+						double sum = l.floatingAt(0);
+						for (int i = 1; i < list.list().size(); i++)
+							sum *= l.floatingAt(i);
+						out.push(RödaFloating.of(sum));
+					}
+					else if (val.is(INTEGER)) {
 						long sum = val.integer();
 						for (int i = first != null ? 0 : 1; i < list.list().size(); i++)
 							sum *= list.list().get(i).integer();
@@ -211,19 +281,21 @@ public class ReducePopulator {
 				}
 				if (val.is(LIST)) {
 					List<RödaValue> sum = new ArrayList<>(val.list());
-					while (true) {
-						RödaValue val2 = in.pull();
-						if (val2 == null) break;
-						sum.addAll(val2.list());
+					List<RödaValue> buffer = new ArrayList<>();
+					while (in.pullAll(buffer, RödaStream.BATCH_SIZE) > 0) {
+						for (RödaValue val2 : buffer)
+							sum.addAll(val2.list());
+						buffer.clear();
 					}
 					out.push(RödaList.of(sum));
 				}
 				else if (val.is(STRING)) {
 					StringBuilder sum = new StringBuilder(val.str());
-					while (true) {
-						RödaValue val2 = in.pull();
-						if (val2 == null) break;
-						sum.append(val2.str());
+					List<RödaValue> buffer = new ArrayList<>();
+					while (in.pullAll(buffer, RödaStream.BATCH_SIZE) > 0) {
+						for (RödaValue val2 : buffer)
+							sum.append(val2.str());
+						buffer.clear();
 					}
 					out.push(RödaString.of(sum.toString()));
 				}
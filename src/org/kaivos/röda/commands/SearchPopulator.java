@@ -5,6 +5,7 @@ import static org.kaivos.röda.Interpreter.checkString;
 import static org.kaivos.röda.RödaValue.STRING;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -12,6 +13,7 @@ import org.kaivos.röda.Interpreter.RödaScope;
 import org.kaivos.röda.RödaValue;
 import org.kaivos.röda.runtime.Function.Parameter;
 import org.kaivos.röda.type.RödaNativeFunction;
+import org.kaivos.röda.type.RödaNativeFunction.NativeElementBody;
 import org.kaivos.röda.type.RödaString;
 
 public final class SearchPopulator {
@@ -19,23 +21,23 @@ public final class SearchPopulator {
 	private SearchPopulator() {}
 
 	public static void populateSearch(RödaScope S) {
-		S.setLocal("search", RödaNativeFunction.of("search", (typeargs, args, kwargs, scope, in, out) -> {
+		NativeElementBody search = (typeargs, args, kwargs, scope) -> {
 			if (args.size() < 1)
 				argumentUnderflow("search", 1, 0);
-			while (true) {
-				RödaValue input = in.pull();
-				if (input == null) break;
-
+			return (input, out) -> {
 				String text = input.str();
 				for (RödaValue value : args) {
 					checkString("search", value);
-					Pattern pattern = Pattern.compile(value.str());
+					Pattern pattern = value.pattern();
 					Matcher m = pattern.matcher(text);
 					while (m.find()) {
-						out.push(RödaString.of(m.group()));
+						out.accept(RödaString.of(m.group()));
 					}
 				}
-			}
-		}, Arrays.asList(new Parameter("patterns", false, STRING)), true));
+			};
+		};
+		S.setLocal("search", RödaNativeFunction.of("search", (typeargs, args, kwargs, scope, in, out) -> {
+			search.bind(typeargs, args, kwargs, scope).forAll(in, out);
+		}, Arrays.asList(new Parameter("patterns", false, STRING)), true, Collections.emptyList(), search));
 	}
 }
@@ -18,6 +18,7 @@ import org.kaivos.röda.Builtins;
 import org.kaivos.röda.Interpreter;
 import org.kaivos.röda.Interpreter.RödaScope;
 import org.kaivos.röda.RödaValue;
+import org.kaivos.röda.Scheduler;
 import org.kaivos.röda.runtime.Function.Parameter;
 import org.kaivos.röda.runtime.Datatype;
 import org.kaivos.röda.runtime.Record;
@@ -103,7 +104,7 @@ public final class ServerPopulator {
 					checkArgs("Server.accept", 0, a.size());
 					Socket socket;
 					try {
-						socket = server.accept();
+						socket = Scheduler.callBlocking(server::accept);
 					} catch (IOException e) {
 						error(e);
 						return;
@@ -133,7 +134,7 @@ public final class ServerPopulator {
 				outOfBounds("can't open port less than 0");
 			
 			try {
-				Socket socket = new Socket(host, (int) port);
+				Socket socket = Scheduler.callBlocking(() -> new Socket(host, (int) port));
 				out.push(createSocketObj(socket, I));
 			} catch (IOException e) {
 				error(e);
@@ -21,6 +21,8 @@ import org.kaivos.röda.Parser.ExpressionTree.CType;
 import org.kaivos.röda.RödaStream;
 import org.kaivos.röda.RödaValue;
 import org.kaivos.röda.runtime.Function.Parameter;
+import org.kaivos.röda.type.RödaInteger;
+import org.kaivos.röda.type.RödaList;
 import org.kaivos.röda.type.RödaNativeFunction;
 
 public class SortPopulator {
@@ -76,10 +78,20 @@ public class SortPopulator {
 		S.setLocal("sort", RödaNativeFunction.of("sort", (typeargs, args, kwargs, scope, in, out) -> {
 			if (args.size() > 1)
 				argumentOverflow("head", 1, args.size());
+			if (args.size() == 1 && kwargs.isEmpty() && args.get(0) instanceof RödaList
+					&& ((RödaList) args.get(0)).storesIntegers()) {
+				// kokonaisluvut järjestetään primitiiveinä, mikä vastaa LT-operaattorin järjestystä
+				long[] integers = ((RödaList) args.get(0)).integers();
+				Arrays.sort(integers);
+				List<RödaValue> sorted = new ArrayList<>(integers.length);
+				for (long l : integers) sorted.add(RödaInteger.of(l));
+				out.pushAll(sorted);
+				return;
+			}
 			List<RödaValue> list;
 			if (args.size() == 0) {
 				list = new ArrayList<>();
-				in.forAll(list::add);
+				in.forAllBatches(list::addAll);
 			} else {
 				list = new ArrayList<>(args.get(0).list());
 			}
@@ -103,7 +115,7 @@ public class SortPopulator {
 			else {
 				list.sort((a, b) -> a.callOperator(CType.LT, b).bool() ? -1 : a.strongEq(b) ? 0 : 1);
 			}
-			list.forEach(out::push);
+			out.pushAll(list);
 		}, Arrays.asList(new Parameter("number", false, LIST)), true,
 				Collections.emptyList(), true));
 	}
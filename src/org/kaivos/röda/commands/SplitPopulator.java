@@ -4,14 +4,20 @@ import static java.util.stream.Collectors.toList;
 import static org.kaivos.röda.Interpreter.checkString;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import org.kaivos.röda.Interpreter.RödaScope;
 import org.kaivos.röda.Parser;
-import org.kaivos.röda.RödaStream;
 import org.kaivos.röda.RödaValue;
+import org.kaivos.röda.runtime.Datatype;
 import org.kaivos.röda.runtime.Function.Parameter;
 import org.kaivos.röda.type.RödaList;
 import org.kaivos.röda.type.RödaNativeFunction;
+import org.kaivos.röda.type.RödaNativeFunction.ElementFunction;
+import org.kaivos.röda.type.RödaNativeFunction.NativeElementBody;
 import org.kaivos.röda.type.RödaString;
 
 public final class SplitPopulator {
@@ -19,72 +25,85 @@ public final class SplitPopulator {
 	private SplitPopulator() {}
 	
 	private static interface Splitter {
-		void pushSeparation(String str, String separator, RödaStream out);
+		void pushSeparation(String str, String separator, Consumer<RödaValue> out);
 	}
 	
-	private static void pushCollectedSeparation(String str, String separator, RödaStream out) {
-		out.push(RödaList.of(Arrays.asList(str.split(separator)).stream().map(RödaString::of).collect(toList())));
+	private static void pushCollectedSeparation(String str, String separator, Consumer<RödaValue> out) {
+		out.accept(RödaList.of(Arrays.asList(str.split(separator)).stream().map(RödaString::of).collect(toList())));
 	}
 	
-	private static void pushUncollectedSeparation(String str, String separator, RödaStream out) {
+	private static void pushUncollectedSeparation(String str, String separator, Consumer<RödaValue> out) {
 		for (String s : str.split(separator)) {
-			out.push(RödaString.of(s));
+			out.accept(RödaString.of(s));
 		}
 	}
 	
+	private static void pushCharacters(String str, String separator, Consumer<RödaValue> out) {
+		for (int i = 0; i < str.length(); i++) out.accept(RödaString.of(str.charAt(i)));
+	}
+	
+	/**
+	 * Luo per-elementti-muodon funktiolle, joka lukee syötevirtaa vain, jos sille ei anneta argumentteja.
+	 */
+	private static NativeElementBody elementBody(String name, Splitter s) {
+		return new NativeElementBody() {
+			@Override
+			public boolean isElementwise(List<RödaValue> args) {
+				return args.isEmpty();
+			}
+
+			@Override
+			public ElementFunction bind(List<Datatype> typeargs, List<RödaValue> args,
+					Map<String, RödaValue> kwargs, RödaScope scope) {
+				String separator = kwargs.containsKey("sep") ? kwargs.get("sep").str() : null;
+				return (value, out) -> {
+					checkString(name, value);
+					String str = value.str();
+					s.pushSeparation(str, separator, out);
+				};
+			}
+		};
+	}
+
 	public static void addSplitter(RödaScope S, String name, Splitter s) {
+		NativeElementBody elementBody = elementBody(name, s);
 		S.setLocal(name, RödaNativeFunction.of(name, (typeargs, args, kwargs, scope, in, out) -> {
-					String separator = kwargs.get("sep").str();
+					ElementFunction f = elementBody.bind(typeargs, args, kwargs, scope);
 					if (args.size() > 0) {
+						Consumer<RödaValue> push = out::push;
 						for (int i = 0; i < args.size(); i++) {
-							RödaValue value = args.get(i);
-							checkString(name, value);
-							String str = value.str();
-							s.pushSeparation(str, separator, out);
+							f.accept(args.get(i), push);
 						}
 					}
 					else {
-						while (true) {
-							RödaValue value = in.pull();
-							if (value == null) break;
-							
-							checkString(name, value);
-							String str = value.str();
-							s.pushSeparation(str, separator, out);
-						}
+						f.forAll(in, out);
 					}
 				},
 				Arrays.asList(new Parameter("strings", false)),
 				true,
 				Arrays.asList(
 						new Parameter("sep", false, Parser.expressionString("<split populator>", 0, " "))
-						)));
+						),
+				elementBody));
 	}
 
 	public static void populateSplit(RödaScope S) {
 		addSplitter(S, "split", SplitPopulator::pushUncollectedSeparation);
 		addSplitter(S, "splitMany", SplitPopulator::pushCollectedSeparation);
+		NativeElementBody chars = elementBody("chars", SplitPopulator::pushCharacters);
 		S.setLocal("chars", RödaNativeFunction.of("chars", (typeargs, args, kwargs, scope, in, out) -> {
+			ElementFunction f = chars.bind(typeargs, args, kwargs, scope);
 			if (args.size() > 0) {
+				Consumer<RödaValue> push = out::push;
 				for (int i = 0; i < args.size(); i++) {
-					RödaValue value = args.get(i);
-					checkString("chars", value);
-					String str = value.str();
-					str.chars().mapToObj(c -> RödaString.of(new String(Character.toChars(c)))).forEach(out::push);;
+					f.accept(args.get(i), push);
 				}
 			}
 			else {
-				while (true) {
-					RödaValue value = in.pull();
-					if (value == null) break;
-					
-					checkString("chars", value);
-					String str = value.str();
-					str.chars().mapToObj(c -> RödaString.of(new String(Character.toChars(c)))).forEach(out::push);;
-				}
+				f.forAll(in, out);
 			}
 		},
 		Arrays.asList(new Parameter("strings", false)),
-		true));
+		true, Collections.emptyList(), chars));
 	}
 }
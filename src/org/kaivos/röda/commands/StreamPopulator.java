@@ -6,6 +6,7 @@ import java.util.Collections;
 import org.kaivos.röda.Builtins;
 import org.kaivos.röda.Interpreter;
 import org.kaivos.röda.Interpreter.RödaScope;
+import org.kaivos.röda.Parser;
 import org.kaivos.röda.RödaStream;
 import org.kaivos.röda.RödaValue;
 import org.kaivos.röda.runtime.Datatype;
@@ -57,13 +58,18 @@ public final class StreamPopulator {
 		I.G.postRegisterRecord(streamRecord);
 
 		S.setLocal("stream", RödaNativeFunction.of("stream", (typeargs, args, kwargs, scope, in, out) -> {
+			long capacity = kwargs.get("capacity").integer();
+			if (capacity < 0 || capacity > Integer.MAX_VALUE)
+				Interpreter.outOfBounds("illegal capacity for 'stream': " + capacity);
 			if (args.size() == 0) {
-				out.push(createStreamObj(RödaStream.makeStream()));
+				out.push(createStreamObj(RödaStream.makeStream((int) capacity)));
 				return;
 			}
 			for (RödaValue ref : args) {
-				ref.assignLocal(createStreamObj(RödaStream.makeStream()));
+				ref.assignLocal(createStreamObj(RödaStream.makeStream((int) capacity)));
 			}
-		}, Arrays.asList(new Parameter("variables", true)), true));
+		}, Arrays.asList(new Parameter("variables", true)), true,
+				Arrays.asList(new Parameter("capacity", false, RödaValue.INTEGER,
+						Parser.expressionInt("<stream populator>", 0, 0)))));
 	}
 }
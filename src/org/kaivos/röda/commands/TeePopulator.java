@@ -0,0 +1,116 @@
+package org.kaivos.röda.commands;
+
+import static org.kaivos.röda.Interpreter.argumentUnderflow;
+import static org.kaivos.röda.RödaValue.FUNCTION;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kaivos.röda.Interpreter;
+import org.kaivos.röda.Interpreter.RödaScope;
+import org.kaivos.röda.Interpreter.TaskGroup;
+import org.kaivos.röda.RödaStream;
+import org.kaivos.röda.RödaStream.StreamAbandonedException;
+import org.kaivos.röda.RödaValue;
+import org.kaivos.röda.runtime.Function.Parameter;
+import org.kaivos.röda.type.RödaNativeFunction;
+
+public final class TeePopulator {
+
+	private TeePopulator() {}
+
+	/**
+	 * Runs the task and stops the other tasks of tee if it fails. A task that
+	 * notices that its output is no longer read just stops.
+	 */
+	private static Runnable task(Runnable body, RödaStream input, RödaStream output, Runnable finish,
+			RödaStream[] pipes) {
+		return () -> {
+			try {
+				body.run();
+			} catch (StreamAbandonedException e) {
+				if (e.getStream() != output) throw e;
+			} catch (Throwable e) {
+				for (RödaStream pipe : pipes) pipe.cancel();
+				throw e;
+			} finally {
+				if (finish != null) finish.run();
+				// tee ei jää odottamaan funktiota, joka on lopettanut lukemisen
+				if (input != null) input.abandon();
+			}
+		};
+	}
+
+	/**
+	 * Adds tee, which pushes every value of its input to each of the given
+	 * functions. The outputs of the functions are interleaved in the order in
+	 * which they are produced: the values of one function keep their order, but
+	 * the values of different functions may be mixed in any way. In single
+	 * thread mode the functions run one after another, so their outputs come in
+	 * the order of the arguments.
+	 */
+	public static void populateTee(Interpreter I, RödaScope S) {
+		S.setLocal("tee", RödaNativeFunction.of("tee", (typeargs, args, kwargs, scope, in, out) -> {
+			if (args.isEmpty()) argumentUnderflow("tee", 1, 0);
+			int size = args.size();
+			TaskGroup tasks = I.newTaskGroup();
+			int capacity = I.pipeCapacity(scope);
+			if (capacity <= 0) capacity = RödaStream.BATCH_SIZE;
+			RödaStream[] inputs = new RödaStream[size];
+			RödaStream[] pipes = new RödaStream[size+1];
+			for (int i = 0; i < size; i++) {
+				pipes[i] = inputs[i] = tasks.pipe(capacity);
+			}
+			// funktioiden tulosteet lomitetaan sitä mukaa kuin niitä syntyy
+			RödaStream output = pipes[size] = tasks.sharedPipe(capacity);
+			AtomicInteger running = new AtomicInteger(size);
+			Runnable finishOutput = () -> {
+				if (running.decrementAndGet() == 0) output.finish();
+			};
+
+			Runnable[] runnables = new Runnable[size+2];
+			// syöte luetaan vain kerran ja jokainen arvo työnnetään kaikille funktioille
+			runnables[0] = task(() -> {
+				try {
+					boolean[] stopped = new boolean[size];
+					int unstopped = size;
+					List<RödaValue> buffer = new ArrayList<>();
+					while (unstopped > 0 && in.pullAll(buffer, RödaStream.BATCH_SIZE) > 0) {
+						for (int i = 0; i < size; i++) {
+							if (stopped[i]) continue;
+							try {
+								inputs[i].pushAll(buffer);
+							} catch (StreamAbandonedException e) {
+								if (e.getStream() != inputs[i]) throw e;
+								stopped[i] = true;
+								unstopped--;
+							}
+						}
+						buffer.clear();
+					}
+				} finally {
+					for (RödaStream input : inputs) input.finish();
+				}
+			}, null, null, null, pipes);
+			for (int i = 0; i < size; i++) {
+				RödaValue function = args.get(i);
+				RödaStream input = inputs[i];
+				runnables[1+i] = task(() -> I.exec("<tee populator>", 0,
+						function,
+						Collections.emptyList(), Collections.emptyList(), Collections.emptyMap(),
+						new RödaScope(I.G), input, output), input, output, finishOutput, pipes);
+			}
+			runnables[size+1] = task(() -> {
+				try {
+					output.forAllBatches(out::pushAll);
+				} finally {
+					output.abandon();
+				}
+			}, null, null, null, pipes);
+			tasks.run(runnables);
+		}, Arrays.asList(new Parameter("functions", false, FUNCTION)), true));
+	}
+}
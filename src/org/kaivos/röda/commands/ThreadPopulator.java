@@ -71,7 +71,7 @@ public final class ThreadPopulator {
 				if (p.started)
 					error("Thread has already been started");
 				p.started = true;
-				Interpreter.executor.execute(task);
+				Interpreter.scheduler.submitBlocking(task);
 			}, Collections.emptyList(), false));
 			threadObject.setField("pull", Builtins.genericPull("Thread.pull", _out, false, true));
 			threadObject.setField("tryPull", Builtins.genericTryPull("Thread.tryPull", _out, false));
@@ -4,7 +4,9 @@ import static org.kaivos.röda.Interpreter.unknownName;
 import static java.util.stream.Collectors.joining;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.kaivos.röda.RödaValue;
@@ -15,6 +17,21 @@ public class Datatype {
 	public final String name;
 	public final List<Datatype> subtypes;
 	public final Optional<RödaScope> scope;
+	/* sisäänrakennetun tyypin numero tai -1, jos tyyppi ei ole sisäänrakennettu */
+	final int tag;
+	private final int hash;
+
+	private static final Map<String, Integer> TAGS = new HashMap<>();
+	static {
+		String[] builtins = { "string", "number", "integer", "floating", "boolean",
+				"list", "map", "function", "nfunction", "namespace", "reference", "bytes" };
+		for (int i = 0; i < builtins.length; i++) TAGS.put(builtins[i], i);
+	}
+
+	static int tagOf(String name) {
+		Integer tag = TAGS.get(name);
+		return tag == null ? -1 : tag;
+	}
 
 	public Datatype(String name,
 			List<Datatype> subtypes,
@@ -22,6 +39,8 @@ public class Datatype {
 		this.name = name;
 		this.subtypes = Collections.unmodifiableList(subtypes);
 		this.scope = scope;
+		this.tag = subtypes.isEmpty() ? tagOf(name) : -1;
+		this.hash = name.hashCode() + subtypes.hashCode();
 	}
 	
 	public Datatype(String name, List<Datatype> subtypes, RödaScope scope) {
@@ -33,15 +52,11 @@ public class Datatype {
 	}
 
 	public Datatype(String name, RödaScope scope) {
-		this.name = name;
-		this.subtypes = Collections.emptyList();
-		this.scope = Optional.of(scope);
+		this(name, Collections.emptyList(), Optional.of(scope));
 	}
 
 	public Datatype(String name) {
-		this.name = name;
-		this.subtypes = Collections.emptyList();
-		this.scope = Optional.empty();
+		this(name, Collections.emptyList(), Optional.empty());
 	}
 	
 	private RecordDeclaration resolveDeclaration() {
@@ -77,7 +92,7 @@ public class Datatype {
 		if (!(obj instanceof Datatype))
 			return false;
 		Datatype other = (Datatype) obj;
-		if (!name.equals(other.name))
+		if (hash != other.hash || !name.equals(other.name))
 			return false;
 		if (!subtypes.equals(other.subtypes))
 			return false;
@@ -87,6 +102,6 @@ public class Datatype {
 	
 	@Override
 	public int hashCode() {
-		return name.hashCode() + subtypes.hashCode();
+		return hash;
 	}
 }
\ No newline at end of file
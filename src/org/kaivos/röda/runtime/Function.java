@@ -2,7 +2,9 @@ package org.kaivos.röda.runtime;
 
 import java.util.List;
 
+import org.kaivos.röda.FunctionCompiler;
 import org.kaivos.röda.Parser.StatementTree;
+import org.kaivos.röda.RödaValue;
 import org.kaivos.röda.Parser.ExpressionTree;
 
 public class Function {
@@ -11,6 +13,8 @@ public class Function {
 	public List<Parameter> parameters, kwparameters;
 	public boolean isVarargs;
 	public List<StatementTree> body;
+	/* saman lähdekoodin funktiot jakavat kutsulaskurin ja käännetyn rungon */
+	public FunctionCompiler.Profile profile;
 
 	public Function(String name,
 		 List<String> typeparams,
@@ -18,6 +22,16 @@ public class Function {
 		 boolean isVarargs,
 		 List<Parameter> kwparameters,
 		 List<StatementTree> body) {
+		this(name, typeparams, parameters, isVarargs, kwparameters, body, null);
+	}
+
+	public Function(String name,
+		 List<String> typeparams,
+		 List<Parameter> parameters,
+		 boolean isVarargs,
+		 List<Parameter> kwparameters,
+		 List<StatementTree> body,
+		 FunctionCompiler.Profile profile) {
 		
 		for (Parameter p : parameters)
 			if (p.defaultValue != null)
@@ -33,6 +47,7 @@ public class Function {
 		this.kwparameters = kwparameters;
 		this.isVarargs = isVarargs;
 		this.body = body;
+		this.profile = profile;
 	}
 
 	public static class Parameter {
@@ -40,6 +55,8 @@ public class Function {
 		public boolean reference;
 		public Datatype type;
 		public ExpressionTree defaultValue;
+		/* tulkki tallentaa tähän oletusarvon, jos se on literaali */
+		public RödaValue constantDefault;
 	    public Parameter(String name, boolean reference) {
 			this(name, reference, null, null);
 		}
@@ -0,0 +1,56 @@
+package org.kaivos.röda.runtime;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The datatypes of a value. All values of a built-in class share one identity
+ * and all instances of a record share the identity of the record, so a value
+ * doesn't need its own list of datatypes.
+ *
+ * The built-in datatypes are tested with a bit mask. Other datatypes, like
+ * records and typed lists, are compared with the few datatypes of the identity.
+ */
+public final class Identity {
+	private final Datatype[] datatypes;
+	private final int tags;
+
+	public Identity(Datatype... datatypes) {
+		this.datatypes = datatypes;
+		int tags = 0;
+		for (Datatype type : datatypes) {
+			if (type.tag >= 0) tags |= 1 << type.tag;
+		}
+		this.tags = tags;
+	}
+
+	public Identity(List<Datatype> datatypes) {
+		this(datatypes.toArray(new Datatype[datatypes.size()]));
+	}
+
+	public Datatype basic() {
+		return datatypes[0];
+	}
+
+	public List<Datatype> datatypes() {
+		return Collections.unmodifiableList(Arrays.asList(datatypes));
+	}
+
+	public boolean is(Datatype type) {
+		if (type.tag >= 0) return (tags & 1 << type.tag) != 0;
+		for (Datatype datatype : datatypes) {
+			if (datatype.equals(type)) return true;
+		}
+		return false;
+	}
+
+	public boolean is(String type) {
+		int tag = Datatype.tagOf(type);
+		if (tag >= 0) return (tags & 1 << tag) != 0;
+		for (Datatype datatype : datatypes) {
+			if (datatype.name.equals(type) && datatype.subtypes.isEmpty()) return true;
+		}
+		return false;
+	}
+}
@@ -2,6 +2,8 @@ package org.kaivos.röda.runtime;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.kaivos.röda.Parser.AnnotationTree;
 import org.kaivos.röda.Interpreter.RödaScope;
@@ -39,6 +41,20 @@ public class Record {
 		}
 	}
 
+	/**
+	 * The identity and the field types of the instances of a record with
+	 * certain typearguments.
+	 */
+	public static class InstanceType {
+		public final Identity identity;
+		public final Map<String, Datatype> fieldTypes;
+
+		public InstanceType(Identity identity, Map<String, Datatype> fieldTypes) {
+			this.identity = identity;
+			this.fieldTypes = Collections.unmodifiableMap(fieldTypes);
+		}
+	}
+
 	public final String name;
 	public final List<String> typeparams, params;
 	public final List<SuperExpression> superTypes;
@@ -46,6 +62,8 @@ public class Record {
 	public final List<Field> fields;
 	public final boolean isValueType;
 	public final RödaScope declarationScope;
+	/* instanssien tyypit lasketaan vain kerran kullekin tyyppiargumenttilistalle */
+	public final Map<List<Datatype>, InstanceType> instanceTypes = new ConcurrentHashMap<>();
 
 	public Record(String name,
 	       List<String> typeparams,
@@ -0,0 +1,351 @@
+package org.kaivos.röda.type;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+import org.kaivos.röda.RödaValue;
+
+/**
+ * The elements of a list.
+ *
+ * While all elements are integers, or all are floating point numbers, they are
+ * stored in a primitive array and the values are created only when the
+ * elements are read. The lists created from bytes store them in a byte array
+ * until an integer that is not a byte is added. The first element of another
+ * type converts the array to an array of values, and the list stays in that
+ * form until it is emptied.
+ */
+final class ElementList extends AbstractList<RödaValue> implements RandomAccess {
+
+	/* tallennusmuodot */
+	static final int BYTES = 0, INTEGERS = 1, FLOATINGS = 2, VALUES = 3;
+
+	/* tyhjä lista valitsee muotonsa ensimmäisen alkion mukaan */
+	private static final int UNDECIDED = -1;
+
+	private static final RödaValue[] NO_VALUES = new RödaValue[0];
+
+	private int mode;
+	private byte[] bytes;
+	private long[] integers;
+	private double[] floatings;
+	private RödaValue[] values;
+	private int size;
+
+	ElementList() {
+		this.mode = VALUES;
+		this.values = NO_VALUES;
+	}
+
+	private ElementList(int mode, int capacity) {
+		this.mode = mode;
+		allocate(capacity);
+	}
+
+	static ElementList of(Collection<RödaValue> values) {
+		ElementList list = new ElementList();
+		list.addAll(values);
+		return list;
+	}
+
+	/**
+	 * Creates a list of the bytes. The list takes the ownership of the array.
+	 */
+	static ElementList ofBytes(byte[] bytes) {
+		ElementList list = new ElementList(BYTES, 0);
+		list.bytes = bytes;
+		list.size = bytes.length;
+		return list;
+	}
+
+	int mode() {
+		return mode;
+	}
+
+	/* ------- muodon valinta ------- */
+
+	private static boolean fitsByte(long l) {
+		return l >= Byte.MIN_VALUE && l <= Byte.MAX_VALUE;
+	}
+
+	private static int naturalMode(RödaValue value) {
+		if (value instanceof RödaInteger) return INTEGERS;
+		if (value instanceof RödaFloating) return FLOATINGS;
+		return VALUES;
+	}
+
+	/**
+	 * Returns the mode that can store the elements of the given mode and the value.
+	 */
+	private static int join(int mode, RödaValue value) {
+		switch (mode) {
+		case UNDECIDED:
+			return naturalMode(value);
+		case BYTES:
+			if (value instanceof RödaInteger)
+				return fitsByte(value.integer()) ? BYTES : INTEGERS;
+			return VALUES;
+		case INTEGERS:
+			return value instanceof RödaInteger ? INTEGERS : VALUES;
+		case FLOATINGS:
+			return value instanceof RödaFloating ? FLOATINGS : VALUES;
+		default:
+			return VALUES;
+		}
+	}
+
+	private static int join(int mode1, int mode2) {
+		if (mode1 == UNDECIDED || mode1 == mode2) return mode2;
+		if (mode1 <= INTEGERS && mode2 <= INTEGERS) return INTEGERS;
+		return VALUES;
+	}
+
+	/* tavulistan muoto säilyy tyhjänäkin, jotta siihen luetut tavut tallennetaan tavuina */
+	private int startMode() {
+		return size == 0 && mode != BYTES ? UNDECIDED : mode;
+	}
+
+	private int capacity() {
+		switch (mode) {
+		case BYTES: return bytes.length;
+		case INTEGERS: return integers.length;
+		case FLOATINGS: return floatings.length;
+		default: return values.length;
+		}
+	}
+
+	private void allocate(int capacity) {
+		switch (mode) {
+		case BYTES: bytes = new byte[capacity]; break;
+		case INTEGERS: integers = new long[capacity]; break;
+		case FLOATINGS: floatings = new double[capacity]; break;
+		default: values = capacity == 0 ? NO_VALUES : new RödaValue[capacity];
+		}
+	}
+
+	/**
+	 * Converts the elements to the new mode, which must be able to store them.
+	 */
+	private void convert(int newMode) {
+		if (newMode == mode) return;
+		ElementList converted = new ElementList(newMode, Math.max(capacity(), 8));
+		for (int i = 0; i < size; i++) converted.store(i, this, i);
+		mode = newMode;
+		bytes = converted.bytes;
+		integers = converted.integers;
+		floatings = converted.floatings;
+		values = converted.values;
+	}
+
+	private void ensureCapacity(int minCapacity) {
+		int capacity = capacity();
+		if (minCapacity <= capacity) return;
+		int newCapacity = Math.max(minCapacity, Math.max(2*capacity, 8));
+		switch (mode) {
+		case BYTES: bytes = Arrays.copyOf(bytes, newCapacity); break;
+		case INTEGERS: integers = Arrays.copyOf(integers, newCapacity); break;
+		case FLOATINGS: floatings = Arrays.copyOf(floatings, newCapacity); break;
+		default: values = Arrays.copyOf(values, newCapacity);
+		}
+	}
+
+	private void shift(int from, int to, int length) {
+		switch (mode) {
+		case BYTES: System.arraycopy(bytes, from, bytes, to, length); break;
+		case INTEGERS: System.arraycopy(integers, from, integers, to, length); break;
+		case FLOATINGS: System.arraycopy(floatings, from, floatings, to, length); break;
+		default: System.arraycopy(values, from, values, to, length);
+		}
+	}
+
+	/* ------- alkioiden lukeminen ja kirjoittaminen ------- */
+
+	/**
+	 * Stores the value to the index. The mode must be able to store the value.
+	 */
+	private void store(int index, RödaValue value) {
+		switch (mode) {
+		case BYTES: bytes[index] = (byte) value.integer(); break;
+		case INTEGERS: integers[index] = value.integer(); break;
+		case FLOATINGS: floatings[index] = value.floating(); break;
+		default: values[index] = value;
+		}
+	}
+
+	/**
+	 * Copies an element of the source list to the index. The mode must be able
+	 * to store the element.
+	 */
+	private void store(int index, ElementList source, int sourceIndex) {
+		switch (mode) {
+		case BYTES: bytes[index] = source.bytes[sourceIndex]; break;
+		case INTEGERS: integers[index] = source.integerAt(sourceIndex); break;
+		case FLOATINGS: floatings[index] = source.floatings[sourceIndex]; break;
+		default: values[index] = source.get(sourceIndex);
+		}
+	}
+
+	private void checkIndex(int index, int limit) {
+		if (index < 0 || index >= limit)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public RödaValue get(int index) {
+		checkIndex(index, size);
+		switch (mode) {
+		case BYTES: return RödaInteger.of(bytes[index]);
+		case INTEGERS: return RödaInteger.of(integers[index]);
+		case FLOATINGS: return RödaFloating.of(floatings[index]);
+		default: return values[index];
+		}
+	}
+
+	/**
+	 * Reads an element of a list whose mode is BYTES or INTEGERS.
+	 */
+	long integerAt(int index) {
+		return mode == BYTES ? bytes[index] : integers[index];
+	}
+
+	/**
+	 * Reads an element of a list whose mode is FLOATINGS.
+	 */
+	double floatingAt(int index) {
+		return floatings[index];
+	}
+
+	@Override
+	public RödaValue set(int index, RödaValue value) {
+		checkIndex(index, size);
+		RödaValue old = get(index);
+		convert(join(mode, value));
+		store(index, value);
+		return old;
+	}
+
+	@Override
+	public void add(int index, RödaValue value) {
+		checkIndex(index, size+1);
+		convert(join(startMode(), value));
+		ensureCapacity(size+1);
+		shift(index, index+1, size-index);
+		store(index, value);
+		size++;
+		modCount++;
+	}
+
+	@Override
+	public RödaValue remove(int index) {
+		checkIndex(index, size);
+		RödaValue old = get(index);
+		shift(index+1, index, size-index-1);
+		size--;
+		if (mode == VALUES) values[size] = null;
+		modCount++;
+		return old;
+	}
+
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		shift(toIndex, fromIndex, size-toIndex);
+		int newSize = size - (toIndex-fromIndex);
+		if (mode == VALUES) Arrays.fill(values, newSize, size, null);
+		size = newSize;
+		modCount++;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends RödaValue> c) {
+		return addAll(size, c);
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends RödaValue> c) {
+		checkIndex(index, size+1);
+		if (c.isEmpty()) return false;
+		if (c instanceof ElementList && c != this) {
+			// toisen listan alkiot kopioidaan ilman, että niistä luodaan arvoja
+			ElementList other = (ElementList) c;
+			int n = other.size;
+			convert(join(startMode(), other.mode));
+			ensureCapacity(size+n);
+			shift(index, index+n, size-index);
+			for (int i = 0; i < n; i++) store(index+i, other, i);
+			size += n;
+			modCount++;
+			return true;
+		}
+		RödaValue[] added = c.toArray(new RödaValue[c.size()]);
+		int newMode = startMode();
+		for (RödaValue value : added) newMode = join(newMode, value);
+		convert(newMode);
+		ensureCapacity(size+added.length);
+		shift(index, index+added.length, size-index);
+		for (int i = 0; i < added.length; i++) store(index+i, added[i]);
+		size += added.length;
+		modCount++;
+		return true;
+	}
+
+	/* ------- kopiot ------- */
+
+	/**
+	 * Returns the elements step apart from start (inclusive) to end (exclusive),
+	 * in the same form as this list.
+	 */
+	ElementList slice(int start, int end, long step) {
+		int n = 0;
+		for (long i = start; step > 0 ? i < end : i > end; i += step) n++;
+		ElementList slice = new ElementList(mode, n);
+		if (step == 1) {
+			switch (mode) {
+			case BYTES: System.arraycopy(bytes, start, slice.bytes, 0, n); break;
+			case INTEGERS: System.arraycopy(integers, start, slice.integers, 0, n); break;
+			case FLOATINGS: System.arraycopy(floatings, start, slice.floatings, 0, n); break;
+			default: System.arraycopy(values, start, slice.values, 0, n);
+			}
+		}
+		else {
+			int j = 0;
+			for (long i = start; step > 0 ? i < end : i > end; i += step) slice.store(j++, this, (int) i);
+		}
+		slice.size = n;
+		return slice;
+	}
+
+	/**
+	 * Returns a copy of the list whose elements are copies of the elements of this list.
+	 */
+	ElementList deepCopy() {
+		if (mode != VALUES) return slice(0, size, 1);
+		ElementList copy = new ElementList(VALUES, size);
+		for (int i = 0; i < size; i++) copy.values[i] = values[i].copy();
+		copy.size = size;
+		return copy;
+	}
+
+	/**
+	 * Returns a copy of the integers of a list whose mode is BYTES or INTEGERS.
+	 */
+	long[] toIntegers() {
+		if (mode == INTEGERS) return Arrays.copyOf(integers, size);
+		long[] copy = new long[size];
+		for (int i = 0; i < size; i++) copy[i] = bytes[i];
+		return copy;
+	}
+
+	/**
+	 * Returns a copy of the bytes of a list whose mode is BYTES.
+	 */
+	byte[] toBytes() {
+		return Arrays.copyOf(bytes, size);
+	}
+}
@@ -2,12 +2,16 @@ package org.kaivos.röda.type;
 
 import org.kaivos.röda.Parser;
 import org.kaivos.röda.RödaValue;
+import org.kaivos.röda.runtime.Identity;
 
 public class RödaBoolean extends RödaValue {
+
+	private static final Identity IDENTITY = new Identity(BOOLEAN);
+
 	private boolean bool;
 
 	private RödaBoolean(boolean bool) {
-		assumeIdentity(BOOLEAN);
+		super(IDENTITY);
 		this.bool = bool;
 	}
 
@@ -42,7 +46,9 @@ public class RödaBoolean extends RödaValue {
 		return Boolean.hashCode(bool);
 	}
 
+	private static final RödaBoolean TRUE = new RödaBoolean(true), FALSE = new RödaBoolean(false);
+
 	public static RödaBoolean of(boolean value) {
-		return new RödaBoolean(value);
+		return value ? TRUE : FALSE;
 	}
 }
@@ -0,0 +1,319 @@
+package org.kaivos.röda.type;
+
+import static org.kaivos.röda.Interpreter.outOfBounds;
+import static org.kaivos.röda.Interpreter.typeMismatch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.kaivos.röda.Parser.ExpressionTree.CType;
+import org.kaivos.röda.RödaValue;
+import org.kaivos.röda.runtime.Identity;
+
+/**
+ * An immutable sequence of bytes.
+ *
+ * A bytes value is a view to a part of a byte array, so slicing it, reading
+ * its length and indexing it don't copy the bytes. The array is never modified
+ * after the value has been created. Bytes are also lists of integers from -128
+ * to 127, so they can be read like lists, but not modified.
+ */
+public class RödaBytes extends RödaValue {
+
+	private static final Identity IDENTITY = new Identity(BYTES, LIST);
+
+	private static final RödaBytes EMPTY = new RödaBytes(new byte[0], 0, 0);
+
+	private final byte[] bytes;
+	private final int offset, length;
+
+	private RödaBytes(byte[] bytes, int offset, int length) {
+		super(IDENTITY);
+		this.bytes = bytes;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	@Override public RödaValue copy() {
+		return this;
+	}
+
+	@Override public String str() {
+		StringBuilder text = new StringBuilder(length*4 + 2).append('[');
+		for (int i = 0; i < length; i++) {
+			if (i != 0) text.append(", ");
+			text.append(bytes[offset+i]);
+		}
+		return text.append(']').toString();
+	}
+
+	@Override public List<RödaValue> list() {
+		return new ByteView();
+	}
+
+	@Override public List<RödaValue> modifiableList() {
+		immutable();
+		return null;
+	}
+
+	/* alkioiden arvot luodaan vasta luettaessa, ja tavut löytyvät kokonaislukujen välimuistista */
+	private final class ByteView extends AbstractList<RödaValue> implements RandomAccess {
+		@Override
+		public RödaValue get(int index) {
+			if (index < 0 || index >= length)
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+			return RödaInteger.of(bytes[offset+index]);
+		}
+
+		@Override
+		public int size() {
+			return length;
+		}
+	}
+
+	private void immutable() {
+		typeMismatch("can't modify " + typeString());
+	}
+
+	private void checkInRange(long index, boolean allowOneAfterLast) {
+		if (length + (allowOneAfterLast ? 1 : 0) <= index)
+			outOfBounds("bytes index out of bounds: index " + index
+			      + ", size " + length);
+		if (index > Integer.MAX_VALUE) outOfBounds("bytes index out of bounds: too large index: "+index);
+		if (index < 0) outOfBounds("bytes index out of bounds: too small index: "+index);
+	}
+
+	@Override public RödaValue get(RödaValue indexVal) {
+		long index = indexVal.integer();
+		if (index < 0) index = length+index;
+		checkInRange(index, false);
+		return RödaInteger.of(bytes[offset+(int) index]);
+	}
+
+	@Override public void set(RödaValue index, RödaValue value) {
+		immutable();
+	}
+
+	@Override public void setSlice(RödaValue start, RödaValue end, RödaValue step, RödaValue value) {
+		immutable();
+	}
+
+	@Override public void del(RödaValue index) {
+		immutable();
+	}
+
+	@Override public void delSlice(RödaValue start, RödaValue end, RödaValue step) {
+		immutable();
+	}
+
+	@Override public void add(RödaValue value) {
+		immutable();
+	}
+
+	@Override public void addAll(List<RödaValue> values) {
+		immutable();
+	}
+
+	@Override public void remove(RödaValue value) {
+		immutable();
+	}
+
+	@Override public RödaValue slice(RödaValue startVal, RödaValue endVal, RödaValue stepVal) {
+		long step = stepVal == null ? 1 : stepVal.integer();
+		long start = startVal != null ? startVal.integer() : step > 0 ? 0 : -1;
+		if (start < 0) start = length+start;
+		checkInRange(start, true);
+		long end;
+		if (endVal == null && step < 0) end = -1;
+		else {
+			end = endVal != null ? endVal.integer() : length;
+			if (end < 0) end = length+end;
+			if (step > 0 && end == 0 && start > 0) end = length;
+			checkInRange(end, true);
+		}
+		if (step == 1) {
+			if (end < start)
+				outOfBounds("bytes index out of bounds: start index " + start + " is greater than end index " + end);
+			// viipale jakaa taulukon tämän arvon kanssa
+			return new RödaBytes(bytes, offset+(int) start, (int) (end-start));
+		}
+		if (step == 0) return EMPTY;
+		int n = 0;
+		for (long i = start; step > 0 ? i < end : i > end; i += step) n++;
+		byte[] slice = new byte[n];
+		int j = 0;
+		for (long i = start; step > 0 ? i < end : i > end; i += step) slice[j++] = bytes[offset+(int) i];
+		return new RödaBytes(slice, 0, n);
+	}
+
+	@Override public RödaValue contains(RödaValue indexVal) {
+		long index = indexVal.integer();
+		if (index < 0) index = length+index;
+		return RödaBoolean.of(index < length);
+	}
+
+	@Override public RödaValue containsValue(RödaValue value) {
+		// sama vertailu kuin RödaInteger.strongEq
+		if (!value.is(INTEGER)) return RödaBoolean.of(false);
+		long l = value.integer();
+		for (int i = 0; i < length; i++)
+			if (bytes[offset+i] == l) return RödaBoolean.of(true);
+		return RödaBoolean.of(false);
+	}
+
+	@Override public RödaValue length() {
+		return RödaInteger.of(length);
+	}
+
+	@Override public RödaValue join(RödaValue separatorVal) {
+		String separator = separatorVal.str();
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			if (i != 0) text.append(separator);
+			text.append(bytes[offset+i]);
+		}
+		return RödaString.of(text.toString());
+	}
+
+	@Override
+	public RödaValue callOperator(CType operator, RödaValue value) {
+		switch (operator) {
+		case MUL: {
+			if (!value.is(INTEGER))
+				typeMismatch("can't " + operator.name() + " " + typeString() + " and " + value.typeString());
+			long times = value.integer();
+			if (length == 0 || times <= 0) return EMPTY;
+			if (times > Integer.MAX_VALUE / length)
+				outOfBounds("can't " + operator.name() + " " + typeString() + ": too large result");
+			int count = (int) times;
+			byte[] product = new byte[count * length];
+			for (int i = 0; i < count; i++) System.arraycopy(bytes, offset, product, i*length, length);
+			return new RödaBytes(product, 0, product.length);
+		}
+		case LT:
+		case GT:
+		case LE:
+		case GE:
+			if (value instanceof RödaBytes) {
+				int c = compare((RödaBytes) value);
+				switch (operator) {
+				case LT: return RödaBoolean.of(c < 0);
+				case GT: return RödaBoolean.of(c > 0);
+				case LE: return RödaBoolean.of(c <= 0);
+				default: return RödaBoolean.of(c >= 0);
+				}
+			}
+			return RödaList.of(list()).callOperator(operator, value);
+		default:
+			return super.callOperator(operator, value);
+		}
+	}
+
+	private int compare(RödaBytes other) {
+		for (int i = 0; i < Math.min(length, other.length); i++) {
+			int c = Byte.compare(bytes[offset+i], other.bytes[other.offset+i]);
+			if (c != 0) return c;
+		}
+		return Integer.compare(length, other.length);
+	}
+
+	@Override public boolean strongEq(RödaValue value) {
+		if (value instanceof RödaBytes) {
+			RödaBytes other = (RödaBytes) value;
+			if (length != other.length) return false;
+			for (int i = 0; i < length; i++)
+				if (bytes[offset+i] != other.bytes[other.offset+i]) return false;
+			return true;
+		}
+		if (!value.is(LIST)) return false;
+		return list().equals(value.list());
+	}
+
+	@Override
+	public int hashCode() {
+		// sama kuin listalla, jossa on samat alkiot
+		return list().hashCode();
+	}
+
+	/**
+	 * Returns the number of bytes.
+	 */
+	public int size() {
+		return length;
+	}
+
+	/**
+	 * Returns a copy of the bytes.
+	 */
+	public byte[] bytes() {
+		return Arrays.copyOfRange(bytes, offset, offset+length);
+	}
+
+	/**
+	 * Decodes the bytes to a string without copying them.
+	 */
+	public String decode(Charset charset) {
+		return new String(bytes, offset, length, charset);
+	}
+
+	/**
+	 * Writes the bytes to the stream without copying them.
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(bytes, offset, length);
+	}
+
+	/**
+	 * Returns the concatenation of the bytes of this value and the other value.
+	 */
+	public RödaBytes concat(RödaBytes other) {
+		if (other.length == 0) return this;
+		if (length == 0) return other;
+		byte[] result = Arrays.copyOfRange(bytes, offset, offset+length+other.length);
+		System.arraycopy(other.bytes, other.offset, result, length, other.length);
+		return new RödaBytes(result, 0, result.length);
+	}
+
+	/**
+	 * Creates a bytes value of the array. The value takes the ownership of the
+	 * array, which must not be modified afterwards.
+	 */
+	public static RödaBytes of(byte[] bytes) {
+		return of(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Creates a bytes value of a part of the array. The value takes the
+	 * ownership of the array, which must not be modified afterwards.
+	 */
+	public static RödaBytes of(byte[] bytes, int offset, int length) {
+		if (length == 0) return EMPTY;
+		return new RödaBytes(bytes, offset, length);
+	}
+
+	/**
+	 * Creates a bytes value of a list of integers from -128 to 255.
+	 */
+	public static RödaBytes of(List<RödaValue> list) {
+		byte[] bytes = new byte[list.size()];
+		for (int i = 0; i < bytes.length; i++) {
+			RödaValue value = list.get(i);
+			if (!value.is(INTEGER))
+				typeMismatch("can't put " + value.typeString() + " to bytes");
+			long l = value.integer();
+			if (l < Byte.MIN_VALUE || l > Byte.MAX_VALUE * 2 + 1)
+				outOfBounds("byte out of range: " + l);
+			bytes[i] = (byte) l;
+		}
+		return of(bytes);
+	}
+
+	public static RödaBytes empty() {
+		return EMPTY;
+	}
+}
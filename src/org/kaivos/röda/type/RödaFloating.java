@@ -2,14 +2,17 @@ package org.kaivos.röda.type;
 
 import org.kaivos.röda.Parser;
 import org.kaivos.röda.RödaValue;
+import org.kaivos.röda.runtime.Identity;
 import static org.kaivos.röda.Interpreter.typeMismatch;
 
 public class RödaFloating extends RödaValue {
+
+	private static final Identity IDENTITY = new Identity(FLOATING, NUMBER);
+
 	private double number;
 
 	private RödaFloating(double number) {
-		assumeIdentity(FLOATING);
-		assumeIdentity(NUMBER);
+		super(IDENTITY);
 		this.number = number;
 	}
 
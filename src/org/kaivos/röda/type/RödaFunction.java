@@ -3,19 +3,23 @@ package org.kaivos.röda.type;
 import org.kaivos.röda.Interpreter.RödaScope;
 import org.kaivos.röda.RödaValue;
 import org.kaivos.röda.runtime.Function;
+import org.kaivos.röda.runtime.Identity;
 
 public class RödaFunction extends RödaValue {
+
+	private static final Identity IDENTITY = new Identity(FUNCTION);
+
 	private Function function;
 	private RödaScope localScope;
 
 	private RödaFunction(Function function) {
-		assumeIdentity(FUNCTION);
+		super(IDENTITY);
 		this.function = function;
 		this.localScope = null;
 	}
 
 	private RödaFunction(Function function, RödaScope localScope) {
-		assumeIdentity("function");
+		super(IDENTITY);
 		this.function = function;
 		this.localScope = localScope;
 	}
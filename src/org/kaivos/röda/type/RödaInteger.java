@@ -2,14 +2,17 @@ package org.kaivos.röda.type;
 
 import org.kaivos.röda.Parser;
 import org.kaivos.röda.RödaValue;
+import org.kaivos.röda.runtime.Identity;
 import static org.kaivos.röda.Interpreter.typeMismatch;
 
 public class RödaInteger extends RödaValue {
+
+	private static final Identity IDENTITY = new Identity(INTEGER, NUMBER);
+
 	private long number;
 
 	private RödaInteger(long number) {
-		assumeIdentity(INTEGER);
-		assumeIdentity(NUMBER);
+		super(IDENTITY);
 		this.number = number;
 	}
 
@@ -90,7 +93,15 @@ public class RödaInteger extends RödaValue {
 		return Long.hashCode(number);
 	}
 
+	/* pienet kokonaisluvut, kuten silmukoiden laskurit ja listojen indeksit, luodaan vain kerran */
+	private static final int CACHE_LOW = -128, CACHE_HIGH = 1023;
+	private static final RödaInteger[] CACHE = new RödaInteger[CACHE_HIGH - CACHE_LOW + 1];
+	static {
+		for (int i = 0; i < CACHE.length; i++) CACHE[i] = new RödaInteger(i + CACHE_LOW);
+	}
+
 	public static RödaInteger of(long number) {
+		if (number >= CACHE_LOW && number <= CACHE_HIGH) return CACHE[(int) number - CACHE_LOW];
 		return new RödaInteger(number);
 	}
 }
@@ -8,26 +8,37 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.kaivos.röda.RödaValue;
 import org.kaivos.röda.Parser.ExpressionTree.CType;
 import org.kaivos.röda.runtime.Datatype;
+import org.kaivos.röda.runtime.Identity;
 
 public class RödaList extends RödaValue {
 
+	private static final Identity IDENTITY = new Identity(LIST);
+	/* tyypitettyjen kokoelmien identiteetit alkioiden tyypin mukaan */
+	private static final Map<Datatype, Identity> TYPED_IDENTITIES = new ConcurrentHashMap<>();
+
+	private static Identity identityOf(Datatype type) {
+		if (type == null) return IDENTITY;
+		return TYPED_IDENTITIES.computeIfAbsent(type, t -> new Identity(new Datatype(LIST.name, Arrays.asList(t)), LIST));
+	}
+
 	private Datatype type;
-	private List<RödaValue> list;
+	/* kokonais- ja liukuluvut tallennetaan primitiivitaulukkoon, ks. ElementList */
+	private ElementList list;
 
-	private RödaList(List<RödaValue> list) {
-		assumeIdentity(LIST);
+	private RödaList(ElementList list) {
+		super(IDENTITY);
 		this.type = null;
 		this.list = list;
 	}
 
-	private RödaList(Datatype type, List<RödaValue> list) {
-		if (type != null)
-			assumeIdentity(new Datatype(LIST.name, Arrays.asList(type)));
-		assumeIdentity("list");
+	private RödaList(Datatype type, ElementList list) {
+		super(identityOf(type));
 		this.type = type;
 		this.list = list;
 		if (type != null) {
@@ -41,9 +52,7 @@ public class RödaList extends RödaValue {
 	}
 
 	@Override public RödaValue copy() {
-		List<RödaValue> newList = new ArrayList<>(list.size());
-		for (RödaValue item : list) newList.add(item.copy());
-		return new RödaList(type, newList);
+		return new RödaList(type, list.deepCopy());
 	}
 
 	@Override public String str() {
@@ -130,16 +139,10 @@ public class RödaList extends RödaValue {
 		long step = sliceStep(stepVal);
 		int start = sliceStart(step, startVal);
 		int end = sliceEnd(step, start, endVal);
-		if (step == 1)
-			return of(list.subList((int) start, (int) end));
-		List<RödaValue> newList = new ArrayList<>();
-		if (step > 0) {
-			for (int i = start; i < end; i += step) newList.add(list.get(i));
-		}
-		else if (step < 0) {
-			for (int i = start; i > end; i += step) newList.add(list.get(i));
-		}
-		return of(newList);
+		if (step == 0) return empty();
+		if (step == 1 && end < start)
+			outOfBounds("list index out of bounds: start index " + start + " is greater than end index " + end);
+		return new RödaList(list.slice(start, end, step));
 	}
 
 	@Override public void del(RödaValue indexVal) {
@@ -168,6 +171,28 @@ public class RödaList extends RödaValue {
 	}
 
 	@Override public RödaValue containsValue(RödaValue value) {
+		switch (list.mode()) {
+		case ElementList.BYTES:
+		case ElementList.INTEGERS: {
+			// sama vertailu kuin RödaInteger.strongEq
+			if (!value.is(INTEGER)) return RödaBoolean.of(false);
+			long l = value.integer();
+			for (int i = 0; i < list.size(); i++)
+				if (list.integerAt(i) == l) return RödaBoolean.of(true);
+			return RödaBoolean.of(false);
+		}
+		case ElementList.FLOATINGS: {
+			// sama vertailu kuin RödaFloating.strongEq
+			boolean isFloating = value.is(FLOATING);
+			if (!isFloating && !value.is(INTEGER)) return RödaBoolean.of(false);
+			for (int i = 0; i < list.size(); i++) {
+				double d = list.floatingAt(i);
+				if (isFloating ? value.floating() == d : value.integer() == d) return RödaBoolean.of(true);
+			}
+			return RödaBoolean.of(false);
+		}
+		default:
+		}
 		for (RödaValue element : list) {
 			if (element.strongEq(value)) {
 				return RödaBoolean.of(true);
@@ -182,12 +207,12 @@ public class RödaList extends RödaValue {
 
 	@Override public RödaValue join(RödaValue separatorVal) {
 		String separator = separatorVal.str();
-		String text = "";
+		StringBuilder text = new StringBuilder();
 		int i = 0; for (RödaValue val : list) {
-			if (i++ != 0) text += separator;
-			text += val.str();
+			if (i++ != 0) text.append(separator);
+			text.append(val.str());
 		}
-		return RödaString.of(text);
+		return RödaString.of(text.toString());
 	}
 
 	@Override public void add(RödaValue value) {
@@ -221,7 +246,7 @@ public class RödaList extends RödaValue {
 		return ans;
 	}
 	
-	private int compare(RödaList other) {
+	private int compare(RödaValue other) {
 		List<RödaValue> list2 = other.list();
 		for (int i = 0; i < Math.min(list.size(), list2.size()); i++) {
 			RödaValue val1 = list.get(i);
@@ -254,30 +279,30 @@ public class RödaList extends RödaValue {
 			
 		switch (operator) {
 		case MUL: {
-			List<RödaValue> newList = new ArrayList<>();
+			ElementList newList = new ElementList();
 			for (int i = 0; i < value.integer(); i++) {
 				newList.addAll(this.list);
 			}
-			return of(newList);
+			return new RödaList(newList);
 		}
 		case ADD: {
-			List<RödaValue> newList = new ArrayList<>(this.list);
+			ElementList newList = list.slice(0, list.size(), 1);
 			newList.add(value);
-			return of(newList);
+			return new RödaList(newList);
 		}
 		case SUB: {
-			List<RödaValue> newList = new ArrayList<>(this.list);
+			ElementList newList = list.slice(0, list.size(), 1);
 			newList.remove(value);
-			return of(newList);
+			return new RödaList(newList);
 		}
 		case LT:
-			return RödaBoolean.of(compare((RödaList) value) < 0);
+			return RödaBoolean.of(compare(value) < 0);
 		case GT:
-			return RödaBoolean.of(compare((RödaList) value) > 0);
+			return RödaBoolean.of(compare(value) > 0);
 		case LE:
-			return RödaBoolean.of(compare((RödaList) value) <= 0);
+			return RödaBoolean.of(compare(value) <= 0);
 		case GE:
-			return RödaBoolean.of(compare((RödaList) value) >= 0);
+			return RödaBoolean.of(compare(value) >= 0);
 		default:
 			return super.callOperator(operator, value);
 		}
@@ -288,27 +313,86 @@ public class RödaList extends RödaValue {
 		return list.hashCode();
 	}
 
+	/**
+	 * Returns true if the elements are stored as primitive integers, so that
+	 * they can be read with integerAt without creating values.
+	 */
+	public boolean storesIntegers() {
+		return list.mode() == ElementList.BYTES || list.mode() == ElementList.INTEGERS;
+	}
+
+	/**
+	 * Returns true if the elements are stored as primitive floating point
+	 * numbers, so that they can be read with floatingAt without creating values.
+	 */
+	public boolean storesFloatings() {
+		return list.mode() == ElementList.FLOATINGS;
+	}
+
+	/**
+	 * Returns true if the elements are stored as bytes.
+	 */
+	public boolean storesBytes() {
+		return list.mode() == ElementList.BYTES;
+	}
+
+	/**
+	 * Returns an element of a list that stores integers.
+	 */
+	public long integerAt(int index) {
+		return list.integerAt(index);
+	}
+
+	/**
+	 * Returns an element of a list that stores floating point numbers.
+	 */
+	public double floatingAt(int index) {
+		return list.floatingAt(index);
+	}
+
+	/**
+	 * Returns a copy of the elements of a list that stores integers.
+	 */
+	public long[] integers() {
+		return list.toIntegers();
+	}
+
+	/**
+	 * Returns a copy of the elements of a list that stores bytes.
+	 */
+	public byte[] bytes() {
+		return list.toBytes();
+	}
+
 	public static RödaList of(List<RödaValue> list) {
-		return new RödaList(new ArrayList<>(list));
+		return new RödaList(ElementList.of(list));
 	}
 
 	public static RödaList of(Datatype type, List<RödaValue> list) {
-		return new RödaList(type, new ArrayList<>(list));
+		return new RödaList(type, ElementList.of(list));
 	}
 
 	public static RödaList of(String type, List<RödaValue> list) {
-		return new RödaList(new Datatype(type), new ArrayList<>(list));
+		return new RödaList(new Datatype(type), ElementList.of(list));
 	}
 
 	public static RödaList of(RödaValue... elements) {
-		return new RödaList(new ArrayList<>(Arrays.asList(elements)));
+		return new RödaList(ElementList.of(Arrays.asList(elements)));
+	}
+
+	/**
+	 * Creates a list of the bytes, each of which is an integer from -128 to
+	 * 127. The list takes the ownership of the array.
+	 */
+	public static RödaList ofBytes(byte[] bytes) {
+		return new RödaList(ElementList.ofBytes(bytes));
 	}
 
 	public static RödaList empty() {
-		return new RödaList(new ArrayList<>());
+		return new RödaList(new ElementList());
 	}
 
 	public static RödaList empty(Datatype type) {
-		return new RödaList(type, new ArrayList<>());
+		return new RödaList(type, new ElementList());
 	}
 }
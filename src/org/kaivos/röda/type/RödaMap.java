@@ -7,25 +7,34 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.kaivos.röda.RödaValue;
 import org.kaivos.röda.runtime.Datatype;
+import org.kaivos.röda.runtime.Identity;
 
 public class RödaMap extends RödaValue {
 
+	private static final Identity IDENTITY = new Identity(MAP);
+	/* tyypitettyjen kokoelmien identiteetit alkioiden tyypin mukaan */
+	private static final Map<Datatype, Identity> TYPED_IDENTITIES = new ConcurrentHashMap<>();
+
+	private static Identity identityOf(Datatype type) {
+		if (type == null) return IDENTITY;
+		return TYPED_IDENTITIES.computeIfAbsent(type, t -> new Identity(new Datatype(MAP.name, Arrays.asList(t)), MAP));
+	}
+
 	private Datatype type;
 	private Map<String, RödaValue> map;
 
 	private RödaMap(Map<String, RödaValue> map) {
-		assumeIdentity(MAP);
+		super(IDENTITY);
 		this.type = null;
 		this.map = map;
 	}
 
 	private RödaMap(Datatype type, Map<String, RödaValue> map) {
-		if (type != null)
-			assumeIdentity(new Datatype(MAP.name, Arrays.asList(type)));
-		assumeIdentity("map");
+		super(identityOf(type));
 		this.type = type;
 		this.map = map;
 		if (type != null) {
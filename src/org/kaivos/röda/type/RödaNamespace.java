@@ -8,13 +8,16 @@ import static org.kaivos.röda.Interpreter.unknownName;
 import java.util.Optional;
 
 import org.kaivos.röda.RödaValue;
+import org.kaivos.röda.runtime.Identity;
 
 public class RödaNamespace extends RödaValue {
 
+	private static final Identity IDENTITY = new Identity(NAMESPACE);
+
 	private RödaScope scope;
 	
 	private RödaNamespace(RödaScope scope) {
-		assumeIdentity(NAMESPACE);
+		super(IDENTITY);
 		this.scope = scope;
 	}
 	
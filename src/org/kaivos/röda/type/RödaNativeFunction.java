@@ -3,20 +3,26 @@ package org.kaivos.röda.type;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.kaivos.röda.RödaStream;
 import org.kaivos.röda.RödaValue;
 import org.kaivos.röda.runtime.Datatype;
 import org.kaivos.röda.runtime.Function.Parameter;
+import org.kaivos.röda.runtime.Identity;
 
 import static org.kaivos.röda.Interpreter.RödaScope;
 
 public class RödaNativeFunction extends RödaValue {
+
+	private static final Identity IDENTITY = new Identity(NFUNCTION, FUNCTION);
+
 	public static class NativeFunction {
 		public String name;
 		public NativeFunctionBody body;
 		public boolean isVarargs, isKwVarargs;
 		public List<Parameter> parameters, kwparameters;
+		public NativeElementBody elementBody;
 	}
 	
 	public static interface NativeFunctionBody {
@@ -27,11 +33,43 @@ public class RödaNativeFunction extends RödaValue {
 				RödaStream in, RödaStream out);
 	}
 
+	/**
+	 * The per-element form of a native function that reads its input stream one
+	 * value at a time and keeps no state between the values other than what
+	 * bind creates. The interpreter uses it to run adjacent commands of a
+	 * pipeline in one thread.
+	 */
+	public static interface NativeElementBody {
+		/**
+		 * Returns true if the function reads its input stream when called with
+		 * the given arguments.
+		 */
+		public default boolean isElementwise(List<RödaValue> args) {
+			return true;
+		}
+
+		public ElementFunction bind(List<Datatype> typeargs,
+				List<RödaValue> args,
+				Map<String, RödaValue> kwargs,
+				RödaScope scope);
+	}
+
+	public static interface ElementFunction {
+		public void accept(RödaValue value, Consumer<RödaValue> out);
+
+		/**
+		 * Calls this function for all values of the input stream.
+		 */
+		public default void forAll(RödaStream in, RödaStream out) {
+			Consumer<RödaValue> push = out::push;
+			in.forAll(value -> accept(value, push));
+		}
+	}
+
 	private NativeFunction function;
 
 	private RödaNativeFunction(NativeFunction function) {
-		assumeIdentity(NFUNCTION);
-		assumeIdentity(FUNCTION);
+		super(IDENTITY);
 		this.function = function;
 	}
 
@@ -70,6 +108,14 @@ public class RödaNativeFunction extends RödaValue {
 		return of(name, body, parameters, isVarargs, kwparameters, false);
 	}
 
+	public static RödaNativeFunction of(String name, NativeFunctionBody body,
+			List<Parameter> parameters, boolean isVarargs, List<Parameter> kwparameters,
+			NativeElementBody elementBody) {
+		RödaNativeFunction function = of(name, body, parameters, isVarargs, kwparameters, false);
+		function.function.elementBody = elementBody;
+		return function;
+	}
+
 	public static RödaNativeFunction of(String name, NativeFunctionBody body,
 			List<Parameter> parameters, boolean isVarargs, List<Parameter> kwparameters, boolean isKwVarargs) {
 		
@@ -13,6 +13,7 @@ import java.util.Map;
 
 import org.kaivos.röda.RödaValue;
 import org.kaivos.röda.runtime.Datatype;
+import org.kaivos.röda.runtime.Identity;
 import org.kaivos.röda.runtime.Record;
 
 public class RödaRecordInstance extends RödaValue {
@@ -20,11 +21,11 @@ public class RödaRecordInstance extends RödaValue {
 	private Map<String, RödaValue> fields;
 	private Map<String, Datatype> fieldTypes;
 
-	private RödaRecordInstance(List<Datatype> identities,
+	private RödaRecordInstance(Identity identity,
 				   boolean isValueType,
 				   Map<String, RödaValue> fields,
 				   Map<String, Datatype> fieldTypes) {
-		assumeIdentities(identities);
+		super(identity);
 		this.isValueType = isValueType;
 		this.fields = fields;
 		this.fieldTypes = fieldTypes;
@@ -35,7 +36,7 @@ public class RödaRecordInstance extends RödaValue {
 			Map<String, RödaValue> newFields = new HashMap<>();
 			for (Map.Entry<String, RödaValue> item : fields.entrySet())
 				newFields.put(item.getKey(), item.getValue().copy());
-			return new RödaRecordInstance(identities(),
+			return new RödaRecordInstance(identity(),
 						      true,
 						      newFields,
 						      fieldTypes);
@@ -85,10 +86,15 @@ public class RödaRecordInstance extends RödaValue {
 	}
 
 	public static RödaRecordInstance of(Record record, List<Datatype> typearguments) {
-		Map<String, Datatype> fieldTypes = new HashMap<>();
-		List<Datatype> identities = new ArrayList<>();
-		construct(record, typearguments, fieldTypes, identities);
-		return new RödaRecordInstance(identities, record.isValueType, new HashMap<>(), fieldTypes);
+		Record.InstanceType type = record.instanceTypes.get(typearguments);
+		if (type == null) {
+			Map<String, Datatype> fieldTypes = new HashMap<>();
+			List<Datatype> identities = new ArrayList<>();
+			construct(record, typearguments, fieldTypes, identities);
+			type = new Record.InstanceType(new Identity(identities), fieldTypes);
+			record.instanceTypes.putIfAbsent(new ArrayList<>(typearguments), type);
+		}
+		return new RödaRecordInstance(type.identity, record.isValueType, new HashMap<>(), type.fieldTypes);
 	}
 
 	private static void construct(Record record, List<Datatype> typearguments,
@@ -1,11 +1,15 @@
 package org.kaivos.röda.type;
 
 import org.kaivos.röda.RödaValue;
+import org.kaivos.röda.runtime.Identity;
 import static org.kaivos.röda.Interpreter.error;
 import static org.kaivos.röda.Interpreter.unknownName;
 import static org.kaivos.röda.Interpreter.RödaScope;
 
 public class RödaReference extends RödaValue {
+
+	private static final Identity IDENTITY = new Identity(REFERENCE);
+
 	private String target;
 	private RödaScope scope;
 	
@@ -13,7 +17,7 @@ public class RödaReference extends RödaValue {
 	private int line;
 
 	private RödaReference(String target, RödaScope scope, String file, int line) {
-		assumeIdentity(REFERENCE);
+		super(IDENTITY);
 		this.target = target;
 		this.scope = scope;
 		this.file = file;
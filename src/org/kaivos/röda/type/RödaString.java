@@ -9,14 +9,45 @@ import java.util.regex.Pattern;
 
 import org.kaivos.röda.Parser.ExpressionTree.CType;
 import org.kaivos.röda.RödaValue;
+import org.kaivos.röda.runtime.Identity;
 
+/**
+ * A string.
+ *
+ * A string that is built by appending to another string can share a
+ * StringBuilder with it: if no other string has already been appended to the
+ * builder, the new string appends to the same builder and uses its first
+ * characters. Repeated appends, like in a loop that adds to a variable with
+ * .=, therefore take amortized constant time. The characters are copied to a
+ * String only when the text is needed.
+ */
 public class RödaString extends RödaValue {
-	private String text;
-	private Pattern pattern;
+
+	private static final Identity IDENTITY = new Identity(STRING);
+
+	/* lyhyet merkkijonot yhdistetään suoraan, koska puskuri ei niillä kannata */
+	private static final int MIN_BUILDER_LENGTH = 64;
+
+	/* teksti luodaan puskurista vasta tarvittaessa */
+	private volatile String text;
+	/* puskuri, jonka alku on tämä merkkijono, tai null */
+	private final StringBuilder builder;
+	private final int length;
+	/* käännetty säännöllinen lauseke muistetaan, koska samaa merkkijonoa käytetään usein monta kertaa */
+	private volatile Pattern pattern;
 
 	private RödaString(String text) {
-		assumeIdentity(STRING);
+		super(IDENTITY);
 		this.text = text;
+		this.builder = null;
+		this.length = text.length();
+	}
+
+	private RödaString(StringBuilder builder, int length) {
+		super(IDENTITY);
+		this.text = null;
+		this.builder = builder;
+		this.length = length;
 	}
 	
 	private RödaString(Pattern pattern) {
@@ -29,28 +60,78 @@ public class RödaString extends RödaValue {
 	}
 
 	@Override public String str() {
+		String text = this.text;
+		if (text == null) {
+			synchronized (builder) {
+				text = builder.substring(0, length);
+			}
+			this.text = text;
+		}
 		return text;
 	}
+
+	private void appendTo(StringBuilder target) {
+		String text = this.text;
+		if (text != null) {
+			target.append(text);
+			return;
+		}
+		synchronized (builder) {
+			target.append(builder, 0, length);
+		}
+	}
+
+	/**
+	 * Returns the concatenation of this string and the suffix.
+	 */
+	public RödaString concat(String suffix) {
+		if (suffix.isEmpty()) return this;
+		if (builder != null) {
+			synchronized (builder) {
+				// puskuria voi jatkaa vain, jos mikään muu merkkijono ei ole jo jatkanut sitä
+				if (builder.length() == length) {
+					builder.append(suffix);
+					return new RödaString(builder, builder.length());
+				}
+			}
+		}
+		int newLength = length + suffix.length();
+		if (newLength < MIN_BUILDER_LENGTH) return of(str() + suffix);
+		StringBuilder newBuilder = new StringBuilder(2*newLength);
+		appendTo(newBuilder);
+		newBuilder.append(suffix);
+		return new RödaString(newBuilder, newLength);
+	}
+
+	/**
+	 * Returns the concatenation of the strings of the values.
+	 */
+	public static RödaString concat(RödaValue prefix, RödaValue suffix) {
+		if (prefix instanceof RödaString) return ((RödaString) prefix).concat(suffix.str());
+		return of(prefix.str() + suffix.str());
+	}
 	
 	@Override public Pattern pattern() {
-		if (pattern != null) return pattern;
-		else return super.pattern();
+		Pattern pattern = this.pattern;
+		if (pattern == null) this.pattern = pattern = super.pattern();
+		return pattern;
 	}
 
 	@Override public long integer() {
 		try {
-			return Long.parseLong(text);
+			return Long.parseLong(str());
 		} catch (NumberFormatException e) {
-			typeMismatch("can't convert '" + text + "' to a number");
+			typeMismatch("can't convert '" + str() + "' to a number");
 			return -1;
 		}
 	}
 
 	@Override public RödaValue length() {
-		return RödaInteger.of(text.length());
+		return RödaInteger.of(length);
 	}
 
 	@Override public RödaValue slice(RödaValue startVal, RödaValue endVal, RödaValue stepVal) {
+		String text = str();
 		long step = stepVal == null ? 1 : stepVal.integer();
 		long start = startVal != null ? startVal.integer() : step > 0 ? 0 : -1;
 		if (start < 0) start = text.length()+start;
@@ -77,7 +158,7 @@ public class RödaString extends RödaValue {
 	}
 	
 	@Override public RödaValue containsValue(RödaValue seq) {
-		return RödaBoolean.of(text.indexOf(seq.str()) >= 0);
+		return RödaBoolean.of(str().indexOf(seq.str()) >= 0);
 	}
 	
 	@Override
@@ -85,10 +166,18 @@ public class RödaString extends RödaValue {
 		if (operator == CType.MUL ? !value.is(INTEGER) : !value.is(STRING))
 			typeMismatch("can't " + operator.name() + " " + typeString() + " and " + value.typeString());
 		switch (operator) {
-		case MUL:
-			String a = "";
-			for (int i = 0; i < value.integer(); i++) a += this.str();
-			return RödaString.of(a);
+		case MUL: {
+			long times = value.integer();
+			if (length == 0) return this;
+			if (times <= 0) return RödaString.of("");
+			if (times > Integer.MAX_VALUE / length)
+				outOfBounds("can't " + operator.name() + " " + typeString() + ": too large result");
+			int count = (int) times;
+			StringBuilder product = new StringBuilder(count * length);
+			String text = str();
+			for (int i = 0; i < count; i++) product.append(text);
+			return RödaString.of(product.toString());
+		}
 		case DIV:
 			return RödaList.of(Arrays.stream(this.str().split(value.str())).map(RödaString::of).collect(toList()));
 		case LT:
@@ -101,34 +190,40 @@ public class RödaString extends RödaValue {
 			return RödaBoolean.of(this.str().compareTo(value.str()) >= 0);
 		case MATCHES:
 			if (!value.is(STRING)) typeMismatch("tried to MATCH " + value.typeString());
-			if (((RödaString) value).pattern != null)
-				return RödaBoolean.of(((RödaString) value).pattern.matcher(text).matches());
-			else
-				return RödaBoolean.of(text.matches(value.str()));
+			return RödaBoolean.of(value.pattern().matcher(str()).matches());
 		case NO_MATCH:
 			if (!value.is(STRING)) typeMismatch("tried to NO_MATCH " + value.typeString());
-			if (((RödaString) value).pattern != null)
-				return RödaBoolean.of(!((RödaString) value).pattern.matcher(text).matches());
-			else
-				return RödaBoolean.of(!text.matches(value.str()));
+			return RödaBoolean.of(!value.pattern().matcher(str()).matches());
 		default:
 			return super.callOperator(operator, value);
 		}
 	}
 
 	@Override public boolean strongEq(RödaValue value) {
-		return value.is(STRING) && value.str().equals(text);
+		return value.is(STRING) && value.str().equals(str());
 	}
 	
 	@Override
 	public int hashCode() {
-		return text.hashCode();
+		return str().hashCode();
+	}
+
+	/* yhden merkin merkkijonot luodaan vain kerran, koska chars ja merkkitila tuottavat niitä paljon */
+	private static final RödaString[] CHARACTERS = new RödaString[256];
+	static {
+		for (char c = 0; c < CHARACTERS.length; c++) CHARACTERS[c] = new RödaString(String.valueOf(c));
 	}
 
 	public static RödaString of(String text) {
+		if (text.length() == 1 && text.charAt(0) < CHARACTERS.length) return CHARACTERS[text.charAt(0)];
 		return new RödaString(text);
 	}
 
+	public static RödaString of(char character) {
+		if (character < CHARACTERS.length) return CHARACTERS[character];
+		return new RödaString(String.valueOf(character));
+	}
+
 	public static RödaString of(Pattern pattern) {
 		return new RödaString(pattern);
 	}
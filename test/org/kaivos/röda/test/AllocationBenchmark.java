@@ -0,0 +1,69 @@
+package org.kaivos.röda.test;
+
+import static org.kaivos.röda.RödaStream.makeStream;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.kaivos.röda.Interpreter;
+import org.kaivos.röda.RödaStream;
+
+/**
+ * A benchmark that measures how many bytes the interpreter allocates per value
+ * that a script produces. Scripts that produce cached values, like small
+ * integers, booleans and single characters, are compared with scripts that
+ * produce values that must be allocated.
+ *
+ * Needs a JVM that supports com.sun.management.ThreadMXBean.
+ *
+ * Run with: java -cp ... org.kaivos.röda.test.AllocationBenchmark [warmup] [iterations]
+ */
+public class AllocationBenchmark {
+
+	private static final int N = 1000;
+	private static final int REPEAT = 200;
+
+	private static final Map<String, String> SCRIPTS = new LinkedHashMap<>();
+	static {
+		SCRIPTS.put("small integers", "main{seq 1, " + N*REPEAT + "}");
+		SCRIPTS.put("large integers", "main{seq 1000000, " + (1000000 + N*REPEAT - 1) + "}");
+		SCRIPTS.put("booleans", "main{seq 1, " + N*REPEAT + " | for i; do push i > 500; done}");
+		SCRIPTS.put("characters", "main{s:=\"a\"*" + N + ";seq 1, " + REPEAT + " | for i; do chars s; done}");
+	}
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private static long allocatedBytes() {
+		// putken komennot suoritetaan työsäikeissä, joten lasketaan kaikkien säikeiden varaukset
+		long[] ids = THREADS.getAllThreadIds();
+		long[] bytes = ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(ids);
+		return Arrays.stream(bytes).filter(b -> b > 0).sum();
+	}
+
+	private static double run(String code) {
+		RödaStream in = makeStream(v -> {}, () -> null, () -> {}, () -> true);
+		RödaStream out = makeStream(v -> {}, () -> null, () -> {}, () -> true);
+		long start = allocatedBytes();
+		Interpreter.INTERPRETER.interpret(code, "<benchmark>", in, out);
+		return (allocatedBytes() - start) / (double) (N*REPEAT);
+	}
+
+	public static void main(String[] args) {
+		int warmup = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		Interpreter.INTERPRETER.enableDebug = false;
+		Interpreter.INTERPRETER.populateBuiltins();
+		System.out.printf("%-16s %s\n", "SCRIPT", "BYTES/VALUE");
+		for (Map.Entry<String, String> script : SCRIPTS.entrySet()) {
+			for (int i = 0; i < warmup; i++) run(script.getValue());
+			double[] bytes = new double[iterations];
+			for (int i = 0; i < iterations; i++) bytes[i] = run(script.getValue());
+			System.out.printf("%-16s %10.1f (min %.1f)\n", script.getKey(),
+					Arrays.stream(bytes).average().orElse(0), Arrays.stream(bytes).min().orElse(0));
+		}
+		Interpreter.shutdown();
+	}
+}
@@ -0,0 +1,85 @@
+package org.kaivos.röda.test;
+
+import static org.kaivos.röda.RödaStream.makeStream;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.kaivos.röda.Interpreter;
+import org.kaivos.röda.RödaStream;
+
+/**
+ * A benchmark that compares the interpreter with and without compiled
+ * expressions on loop-heavy scripts. Like a JMH benchmark, each script is
+ * first run for a number of warmup iterations that are not measured. The
+ * score is the median time of the measured iterations.
+ *
+ * The scripts are run with stack tracing enabled like normal runs, unless -D
+ * is given as the third argument.
+ *
+ * Run with: java -cp ... org.kaivos.röda.test.InterpreterBenchmark [warmup] [iterations] [-D]
+ */
+public class InterpreterBenchmark {
+
+	private static final Map<String, String> SCRIPTS = new LinkedHashMap<>();
+	static {
+		SCRIPTS.put("for", "main{s:=0;seq 1, 200000 | for i; do s += i*2%7; done;push s}");
+		SCRIPTS.put("while", "main{i:=0;s:=0;while [ i < 100000 ]; do s += i; i += 1; done;push s}");
+		SCRIPTS.put("fib", "fib n{if [ n < 2 ]; do push n; else push fib(n-1)+fib(n-2); done}main{push fib(18)}");
+		SCRIPTS.put("kwargs", "f x,step=1{push x+step}main{s:=0;seq 1, 50000 | for i; do s = f(s); done;push s}");
+		SCRIPTS.put("expr", "main{s:=0;seq 1, 50000 | for i; do s += i*3%7*(i%5+2)-i//3+[i, i+1][1]; done;push s}");
+		SCRIPTS.put("list", "main{l:=[seq(1, 20000)];s:=0;for x in l; do s += l[x-1]; done;push s}");
+	}
+
+	private static double run(String code) {
+		RödaStream in = makeStream(v -> {}, () -> null, () -> {}, () -> true);
+		RödaStream out = makeStream(v -> {}, () -> null, () -> {}, () -> true);
+		long start = System.nanoTime();
+		Interpreter.INTERPRETER.interpret(code, "<benchmark>", in, out);
+		return (System.nanoTime() - start) / 1_000_000d;
+	}
+
+	/* suoritukset vuorottelevat, jotta JIT-kääntäjän ja roskienkeruun tila vaikuttaa molempiin tiloihin samoin */
+	private static double[][] measure(String code, int warmup, int iterations) {
+		double[][] times = new double[2][iterations];
+		for (int i = 0; i < warmup + iterations; i++) {
+			for (int mode = 0; mode < 2; mode++) {
+				Interpreter.INTERPRETER.enableCompilation = mode == 1;
+				double time = run(code);
+				if (i >= warmup) times[mode][i - warmup] = time;
+			}
+		}
+		return times;
+	}
+
+	private static double median(double[] times) {
+		double[] sorted = times.clone();
+		Arrays.sort(sorted);
+		int n = sorted.length;
+		return n % 2 == 1 ? sorted[n/2] : (sorted[n/2-1] + sorted[n/2]) / 2;
+	}
+
+	private static String format(double[] times) {
+		double mean = Arrays.stream(times).average().orElse(0);
+		double variance = Arrays.stream(times).map(t -> (t - mean) * (t - mean)).sum() / Math.max(1, times.length - 1);
+		return String.format("%10.3f ± %8.3f ms/op", median(times), Math.sqrt(variance));
+	}
+
+	public static void main(String[] args) {
+		int warmup = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		Interpreter.INTERPRETER.enableDebug = !(args.length > 2 && args[2].equals("-D"));
+		Interpreter.INTERPRETER.populateBuiltins();
+		System.out.printf("%-8s %-10s %s\n", "SCRIPT", "MODE", "SCORE");
+		for (Map.Entry<String, String> script : SCRIPTS.entrySet()) {
+			double[][] times = measure(script.getValue(), warmup, iterations);
+			double[] walked = times[0], compiled = times[1];
+			System.out.printf("%-8s %-10s %s\n", script.getKey(), "tree", format(walked));
+			System.out.printf("%-8s %-10s %s (%.2fx)\n", script.getKey(), "compiled", format(compiled),
+					median(walked) / median(compiled));
+		}
+		Interpreter.INTERPRETER.enableCompilation = true;
+		Interpreter.shutdown();
+	}
+}
@@ -3,16 +3,28 @@ package org.kaivos.röda.test;
 import org.junit.*;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import static java.util.stream.Collectors.joining;
 
+import org.kaivos.röda.Builtins;
+import org.kaivos.röda.FunctionCompiler;
 import org.kaivos.röda.Interpreter;
 import static org.kaivos.röda.Interpreter.RödaException;
 import org.kaivos.röda.RödaStream;
 import static org.kaivos.röda.RödaStream.*;
 import org.kaivos.röda.RödaValue;
+import org.kaivos.röda.Scheduler;
+import org.kaivos.röda.type.RödaBoolean;
+import org.kaivos.röda.type.RödaBytes;
+import org.kaivos.röda.type.RödaFloating;
+import org.kaivos.röda.type.RödaInteger;
+import org.kaivos.röda.type.RödaList;
 import org.kaivos.röda.type.RödaString;
 
 public class RödaTest {
@@ -40,6 +52,34 @@ public class RödaTest {
 		return results.stream().map(v -> v.str()).collect(joining(","));
 	}
 
+	/* suorittaa koodin tulkin asetuksilla, joita setup muuttaa, ja palauttaa asetukset ennalleen */
+	private String evalWith(Consumer<Interpreter> setup, String code) {
+		Interpreter I = Interpreter.INTERPRETER;
+		boolean compilation = I.enableCompilation, optimization = I.enableOptimization,
+				fusion = I.enableFusion, profiling = I.enableProfiling, singleThread = I.singleThreadMode;
+		int jitThreshold = I.jitThreshold;
+		setup.accept(I);
+		try {
+			results.clear();
+			return eval(code);
+		}
+		finally {
+			I.enableCompilation = compilation;
+			I.enableOptimization = optimization;
+			I.enableFusion = fusion;
+			I.enableProfiling = profiling;
+			I.singleThreadMode = singleThread;
+			I.jitThreshold = jitThreshold;
+		}
+	}
+
+	/* tarkistaa, että koodi tuottaa saman tuloksen oletusasetuksilla ja setupin muuttamilla asetuksilla */
+	private void assertSameWith(Consumer<Interpreter> setup, String expected, String code) {
+		results.clear();
+		assertEquals(expected, eval(code));
+		assertEquals(expected, evalWith(setup, code));
+	}
+
 	// Merkkijonoliteraali
 
 	@Test
@@ -74,6 +114,640 @@ public class RödaTest {
 		assertEquals("10,10,7,2,2,2,45", eval("main{push(10, 7, 2, 45) | { push(peek()); push(pull()); push(pull()); push(peek()); push(peek()); push(pull()); push(peek()); }}"));
 	}
 	
+	// Rajoitetut putket
+
+	@Test
+	public void testBoundedPipe() {
+		assertEquals("1,2,3,4,5,6,7,8", eval("main{PIPE_CAPACITY:=2;seq 1,8 | for x; do push x; done}"));
+	}
+
+	@Test
+	public void testPipesAreBoundedByDefault() {
+		assertTrue(Interpreter.INTERPRETER.pipeCapacity > 0);
+		assertEquals("1,2,3", eval("main{seq 1,3 | for x; do push x; done}"));
+	}
+
+	@Test
+	public void testProducerBlocksWhenPipeIsFull() throws InterruptedException {
+		RödaStream pipe = makeStream(4);
+		AtomicInteger pushed = new AtomicInteger();
+		Thread producer = new Thread(() -> {
+			for (int i = 0; i < 10; i++) {
+				pipe.push(RödaString.of("x"));
+				pushed.incrementAndGet();
+			}
+			pipe.finish();
+		});
+		producer.start();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (pushed.get() < 4 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+		producer.join(200);
+		assertTrue(producer.isAlive());
+		assertEquals(4, pushed.get());
+		int pulled = 0;
+		while (pipe.pull() != null) pulled++;
+		producer.join();
+		assertEquals(10, pulled);
+	}
+
+	@Test
+	public void testUnboundedPipe() {
+		assertEquals("500500", eval("main{PIPE_CAPACITY:=0;seq 1, 1000 | sum}"));
+	}
+
+	@Test
+	public void testBoundedStream() {
+		assertEquals("1,2", eval("main{stream s, capacity=2;s.push 1;s.push 2;s.finish;s.pullAll}"));
+	}
+
+	@Test
+	public void testAbandonedPipeStopsProducer() {
+		assertEquals("1,2,3", eval("main{PIPE_CAPACITY:=16;seq 1, 1000000000 | head 3}"));
+	}
+
+	@Test(expected=RödaException.class)
+	public void testErrorCancelsPipeline() {
+		eval("main{seq 1, 1000000000 | { pull x; error \"virhe\" }}");
+	}
+
+	@Test
+	public void testBatchedTransfer() {
+		assertEquals("500500,3", eval("main{PIPE_CAPACITY:=100;seq 1, 1000 | sum;[3,1,2] | sort | tail}"));
+	}
+
+	@Test
+	public void testPipeAcrossChunks() {
+		assertEquals("12502500,12502500", eval("main{seq 1, 5000 | sum;PIPE_CAPACITY:=10;seq 1, 5000 | sum}"));
+	}
+
+	@Test
+	public void testIteratorPullsOneValueAhead() {
+		RödaStream stream = makeStream();
+		for (int i = 1; i <= 1000; i++) stream.push(RödaInteger.of(i));
+		stream.finish();
+		assertEquals("1", stream.iterator().next().str());
+		assertEquals("3", stream.pull().str());
+	}
+
+	// Käännetyt lausekkeet
+
+	@Test
+	public void testCompiledExpressions() {
+		String code = "main{a:=[3, 1, 2];push #a, a[1], a[1:]&\",\", \"[\"...a...\"]\", a[0]+a[2]*2, a[0] > 2 and a[1] < 2;"
+				+ "push([push(1, 2)], (\"x\"..a[0]))}";
+		assertSameWith(I -> I.enableCompilation = false, "3,1,1,2,[[3], [1], [2]],7,<true>,[1, 2],x3", code);
+	}
+
+	@Test
+	public void testCompiledExpressionErrorStack() {
+		String[] codes = {
+			"main{x := [1, 2][5]}",
+			"main{push 1 + #([1][3])}",
+			"main{a := [1]; a[0] += 5//0}",
+			"f{error \"virhe\"}main{push 1 + [f()]}",
+			"main{push [[1, 5//0]]}",
+		};
+		for (String code : codes) {
+			RödaException compiled = null, interpreted = null;
+			try {
+				eval(code);
+			} catch (RödaException e) {
+				compiled = e;
+			}
+			try {
+				evalWith(I -> I.enableCompilation = false, code);
+			} catch (RödaException e) {
+				interpreted = e;
+			}
+			assertNotNull(compiled);
+			assertNotNull(interpreted);
+			assertEquals(interpreted.getMessage(), compiled.getMessage());
+			assertEquals(new ArrayList<>(interpreted.getStack()), new ArrayList<>(compiled.getStack()));
+		}
+	}
+
+	@Test
+	public void testCompiledExpressionsInLoop() {
+		assertEquals("5050", eval("main{s:=0;seq 1, 100 | for i; do s += i; done;push s}"));
+	}
+
+	// Funktioiden kääntäminen
+
+	@Test
+	public void testCompiledFunctionBodies() {
+		String[][] cases = {
+			{ "1,3,end,1,3,4,end", "f x{i:=0;while [ i < x ] do i ++;if [ i = 2 ] do continue done;"
+					+ "if [ i = 5 ] do break done;push i done;push \"end\"}main{f 3;f 10}" },
+			{ "1,2,30,1,2,none", "f{for x do if [ x = 3 ] do return x*10 done;push x done;push \"none\"}"
+					+ "main{seq 1, 5 | f;seq 1, 2 | f}" },
+			{ "11,31", "f x{for i in [1,2,3] if [ i != x ] do for j in [1,2] do if [ j = 2 ] do break done;"
+					+ "push i*10+j done done}main{f 2}" },
+			{ "1,0,else,small", "f x{until [ x = 0 ] do x --;push x else push \"never\" done;"
+					+ "while [ x > 0 ] do push x else push \"else\" done;"
+					+ "unless [ x > 2 ] do push \"small\" else push \"big\" done}main{f 2}" },
+			{ "out", "f{while true do try do break done done;push \"out\"}main{f}" },
+			{ "1,3", "f{i:=0;while [ i < 3 ] do i ++;{|j|if [ j = 2 ] do return done;push j}(i) done}main{f}" },
+			{ "2,4,6", "f{for i in [1,2,3] do push i done | for x do push x*2 done}main{f}" },
+			{ "1,2,1,2", "f{return 1, 2;push 3}main{f;f}" },
+			{ "ok", "f{}main{f;push \"ok\"}" },
+		};
+		int compiled = FunctionCompiler.compiledFunctions();
+		for (String[] c : cases) {
+			assertEquals(c[0], evalWith(I -> I.jitThreshold = 0, c[1]));
+			assertEquals(c[0], evalWith(I -> I.jitThreshold = 1, c[1]));
+		}
+		assertTrue(FunctionCompiler.compiledFunctions() > compiled);
+	}
+
+	@Test
+	public void testHotFunctionIsCompiled() {
+		int compiled = FunctionCompiler.compiledFunctions();
+		assertEquals("2,1", evalWith(I -> I.jitThreshold = 3,
+				"f x{if [ x % 2 = 0 ] do push 2 else push 1 done}main{f 2;f 3}"));
+		assertEquals(compiled, FunctionCompiler.compiledFunctions());
+		assertEquals("2,1,2,1,2", evalWith(I -> I.jitThreshold = 3,
+				"f x{if [ x % 2 = 0 ] do push 2 else push 1 done}main{f 2;f 3;f 4;f 5;f 6}"));
+		assertEquals(compiled+1, FunctionCompiler.compiledFunctions());
+	}
+
+	@Test
+	public void testCompiledFunctionErrorStack() {
+		String[] codes = {
+			"f{while true do if true do break done done;error \"x\"}main{f}",
+			"f{for i in [1,2] do while true do break done;if [ i = 2 ] do error \"e\" done done}main{f}",
+			"f x{for i in [1,2] do g i done}g i{if [ i = 2 ] do error \"fail\" done}main{f 1}",
+			"f{for x, y do push x+y done}main{seq 1, 3 | f}",
+			"f x{if [ x ] do push 1 done}main{f 1}",
+			"f{for i in [1,2,3] do if true do return i done done}main{f;error \"after\"}",
+		};
+		for (String code : codes) {
+			RödaException compiled = null, interpreted = null;
+			try {
+				evalWith(I -> I.jitThreshold = 1, code);
+			} catch (RödaException e) {
+				compiled = e;
+			}
+			try {
+				evalWith(I -> I.jitThreshold = 0, code);
+			} catch (RödaException e) {
+				interpreted = e;
+			}
+			assertNotNull(compiled);
+			assertNotNull(interpreted);
+			assertEquals(interpreted.getMessage(), compiled.getMessage());
+			assertEquals(new ArrayList<>(interpreted.getStack()), new ArrayList<>(compiled.getStack()));
+		}
+	}
+
+	// Optimoija
+
+	@Test
+	public void testFoldedConstants() {
+		String code = "main{push 1+2*3, 2^10, 7//2, -(3), 1.5*2, \"a\"..\"b\"..1, \"ab\"*3, 1 < 2 and 2 < 3, [1+1, 2]}";
+		assertSameWith(I -> I.enableOptimization = false, "7,1024,3,-3,3.0,ab1,ababab,<true>,[2, 2]", code);
+	}
+
+	@Test
+	public void testEliminatedBranches() {
+		String code = "main{if [ 1 = 2 ]; do push \"a\"; else push \"b\"; done;unless [ 1 < 2 ]; do push \"c\"; done;"
+				+ "if [ 1 < 2, 2 < 3 ]; do push \"d\"; done;unless [ 2 < 1 ]; do push \"e\"; else push \"f\"; done}";
+		assertSameWith(I -> I.enableOptimization = false, "b,d,e", code);
+	}
+
+	@Test(expected=RödaException.class)
+	public void testFoldingKeepsErrors() {
+		eval("main{push 1+\"a\"}");
+	}
+
+	@Test
+	public void testPrecompiledPatterns() {
+		String code = "main{s:=\"abba\";s ~= \"b+\", \"c\";push s, \"abba\" =~ \"a.*a\", \"abba\" !~ \"b+\"}";
+		assertSameWith(I -> I.enableOptimization = false, "aca,<true>,<true>", code);
+	}
+
+	// Yhdistetyt komennot
+
+	@Test
+	public void testFusedPipeline() {
+		String code = "main{push \"a b\",\"c d\",\"a e\" | replace \"a\",\"x\" | split | grep \"x|d\"}";
+		assertSameWith(I -> I.enableFusion = false, "x,d,x", code);
+	}
+
+	@Test
+	public void testFusedPipelineWithState() {
+		assertEquals("a,0,b,1,c,2", eval("main{chars \"abc\" | enum}"));
+	}
+
+	@Test
+	public void testFusedPipelineBindError() {
+		String code = "main{push \"a\" | replace \"a\" | grep \"x\"}";
+		RödaException fused = null, unfused = null;
+		try {
+			eval(code);
+		} catch (RödaException e) {
+			fused = e;
+		}
+		try {
+			evalWith(I -> I.enableFusion = false, code);
+		} catch (RödaException e) {
+			unfused = e;
+		}
+		assertNotNull(fused);
+		assertNotNull(unfused);
+		assertEquals(unfused.getMessage(), fused.getMessage());
+		assertTrue(fused.getStack().peek().startsWith("calling <nfunction 'replace'>"));
+	}
+
+	@Test
+	public void testFusedPipelineIsProfiled() {
+		Interpreter.profilerData.clear();
+		assertEquals("x", evalWith(I -> I.enableProfiling = true, "main{push \"a\",\"b\" | replace \"a\",\"x\" | grep \"x\"}"));
+		assertTrue(Interpreter.profilerData.keySet().stream().anyMatch(name -> name.contains("replace")));
+		assertTrue(Interpreter.profilerData.keySet().stream().anyMatch(name -> name.contains("grep")));
+	}
+
+	@Test
+	public void testFusedPipelineStopsProducer() {
+		assertEquals("2,4,6", eval("main{PIPE_CAPACITY:=16;seq 1, 1000000000 | filter({|x|;[ x % 2 = 0 ]}) | replace \"x\",\"y\" | head 3}"));
+	}
+
+	// Säikeet
+
+	@Test
+	public void testNestedPipelinesWithOneWorker() {
+		Scheduler scheduler = Interpreter.scheduler;
+		Interpreter.scheduler = new Scheduler("test-worker", 1);
+		try {
+			assertEquals("30300", eval("main{seq 1, 3 | for i; do seq 1, 100 | for x; do push x*i; done | sum; done | sum}"));
+		}
+		finally {
+			Interpreter.scheduler.shutdown();
+			Interpreter.scheduler = scheduler;
+		}
+	}
+
+	@Test
+	public void testDeepPipelineThreadCount() {
+		Scheduler scheduler = Interpreter.scheduler;
+		Scheduler bounded = new Scheduler("test-worker", 2, 200);
+		Interpreter.scheduler = bounded;
+		try {
+			StringBuilder code = new StringBuilder("main{PIPE_CAPACITY:=4;seq 1, 1000");
+			for (int i = 0; i < 150; i++) code.append(" | for x do push x+1 done");
+			code.append(" | sum}");
+			assertEquals("650500", eval(code.toString()));
+			// odottavat komennot korvattiin uusilla säikeillä, mutta säikeitä on enintään rajan verran
+			assertTrue(bounded.getBlockedCount() > 0);
+			assertTrue(bounded.getPeakThreadCount() > bounded.getParallelism());
+			assertTrue(bounded.getPeakThreadCount() <= bounded.getParallelism() + bounded.getCompensationLimit());
+			assertEquals(0, bounded.getUncompensatedCount());
+		}
+		finally {
+			Interpreter.scheduler.shutdown();
+			Interpreter.scheduler = scheduler;
+		}
+		assertEquals(0, bounded.getThreadCount());
+	}
+
+	@Test
+	public void testManyPipelinesInVirtualThreads() {
+		Assume.assumeTrue(Scheduler.virtualThreadsSupported());
+		Scheduler scheduler = Interpreter.scheduler;
+		Interpreter.scheduler = Scheduler.virtual("test-virtual");
+		try {
+			assertEquals("100010000", eval("main{seq 1, 10000 | for i; do push i | { pull x; push x*2 }; done | sum}"));
+		}
+		finally {
+			Interpreter.scheduler.shutdown();
+			Interpreter.scheduler = scheduler;
+		}
+	}
+
+	// Rinnakkainen pmap
+
+	@Test
+	public void testOrderedPmap() {
+		assertEquals("2,4,6,8,10,12,14,16,18,20", eval("main{seq 1, 10 | pmap({|x|;push x*2}, parallelism=4, inflight=5)}"));
+	}
+
+	@Test
+	public void testPmapWithManyResults() {
+		assertEquals("1,1,2,2,3,3", eval("main{seq 1, 3 | pmap({|x|;push x, x})}"));
+	}
+
+	@Test
+	public void testUnorderedPmap() {
+		assertEquals("5050", eval("main{seq 1, 100 | pmap({|x|;push x}, ordered=FALSE) | sum}"));
+	}
+
+	@Test(expected=RödaException.class)
+	public void testPmapError() {
+		eval("main{seq 1, 100 | pmap({|x|;error \"virhe\" if [ x = 50 ]; push x})}");
+	}
+
+	@Test
+	public void testPmapWithGlobalFunctions() {
+		assertEquals("5150", eval("inc x{push x+1}main{seq 1, 100 | pmap({|x|;push inc(x)}, ordered=FALSE) | sum}"));
+	}
+
+	// Lomitus ja tee
+
+	@Test
+	public void testInterleaveOperator() {
+		assertEquals("1,4,2,5,3,6", eval("main{seq(1, 3) <> seq(4, 6)}"));
+	}
+
+	@Test
+	public void testInterleaveInfiniteStreams() {
+		assertEquals("1,5,2,6", eval("main{seq(1, 1000000000) <> seq(5, 1000000000) | head 4}"));
+	}
+
+	@Test
+	public void testInterleaveMixedLength() {
+		assertEquals("1,1,2,2,3", eval("main{seq(1, 3) <> seq(1, 2)}"));
+	}
+
+	private static String sorted(String values) {
+		String[] array = values.split(",");
+		Arrays.sort(array);
+		return String.join(",", array);
+	}
+
+	@Test
+	public void testTee() {
+		assertEquals("100,5050", sorted(eval("main{seq 1, 100 | tee({ sum }, { max })}")));
+	}
+
+	@Test
+	public void testTeeWithInfiniteInput() {
+		assertEquals("1,1,2,2,3", sorted(eval("main{seq 1, 1000000000 | tee({ head 2 }, { head 3 })}")));
+	}
+
+	@Test
+	public void testTeeInterleavesOutputs() {
+		assertEquals("1,2,3", eval("main{seq 1, 100000 | tee({ sum }, { for x; do push x; done }) | head 3}"));
+	}
+
+	@Test
+	public void testTeeKeepsOrderOfEachFunction() {
+		String[] values = eval("main{seq 1, 1000 | tee({ for x; do push x; done }, { for x; do push -x; done })}")
+				.split(",");
+		assertEquals(2000, values.length);
+		int positive = 0, negative = 0;
+		for (String value : values) {
+			int x = Integer.parseInt(value);
+			if (x > 0) assertEquals(++positive, x);
+			else assertEquals(-(++negative), x);
+		}
+		assertEquals(1000, positive);
+		assertEquals(1000, negative);
+	}
+
+	@Test(expected=RödaException.class)
+	public void testTeeError() {
+		eval("main{seq 1, 100 | tee({ sum }, { error \"virhe\" })}");
+	}
+
+	@Test
+	public void testTeeInSingleThreadMode() {
+		assertEquals("5050,100", evalWith(I -> I.singleThreadMode = true, "main{seq 1, 100 | tee({ sum }, { max })}"));
+	}
+
+	// Putkien profilointi
+
+	@Test
+	public void testPipeStatistics() {
+		Interpreter.pipeProfilerData.clear();
+		assertEquals("5050", evalWith(I -> I.enableProfiling = true, "main{PIPE_CAPACITY:=8; seq 1, 100 | sum}"));
+		assertEquals(1, Interpreter.pipeProfilerData.size());
+		Interpreter.PipeProfilerData data = Interpreter.pipeProfilerData.values().iterator().next();
+		assertEquals(1, data.pipes);
+		assertEquals(100, data.pushed);
+		assertEquals(100, data.pulled);
+		assertTrue(data.highWaterMark > 0 && data.highWaterMark <= 8);
+	}
+
+	@Test
+	public void testPipeStatisticsAreNotCollectedByDefault() {
+		Interpreter.pipeProfilerData.clear();
+		assertEquals("5050", eval("main{seq 1, 100 | sum}"));
+		assertTrue(Interpreter.pipeProfilerData.isEmpty());
+	}
+
+	// Kutsupino
+
+	@Test
+	public void testCallStackOfError() {
+		try {
+			eval("f x{error \"virhe\"}main{f 2}");
+			fail("the error was not thrown");
+		} catch (RödaException e) {
+			assertTrue(e.getStack().stream().anyMatch(s -> s.startsWith("calling ") && s.contains(" with argument 2\n")));
+			assertTrue(e.getStack().stream().anyMatch(s -> s.startsWith("command f(2)\n\tat <test>:")));
+			assertEquals(e.getStack().size(), e.getErrorObject().getField("stack").list().size());
+		}
+		assertEquals(0, Interpreter.callStack.get().depth());
+	}
+
+	// Yksisäikeinen tila
+
+	@Test
+	public void testSingleThreadModeWithInfiniteProducer() {
+		assertEquals("1,2,3", evalWith(I -> I.singleThreadMode = true, "main{seq 1, 1000000000 | head 3}"));
+	}
+
+	@Test
+	public void testSingleThreadModeInterleavesCommands() {
+		assertEquals("a1,b1,a2,b2,a3,b3", evalWith(I -> I.singleThreadMode = true, "main{PIPE_CAPACITY:=1;"
+				+ "seq 1, 3 | for x; do push \"a\"..x, x; done | for y; do push y; pull z; push \"b\"..z; done}"));
+	}
+
+	@Test
+	public void testSingleThreadModeRunsCommandsInOrder() {
+		assertEquals("[a1, a2, a3, b1, b2, b3]", evalWith(I -> I.singleThreadMode = true, "main{l:=[];"
+				+ "seq 1, 3 | for x; do l += \"a\"..x; push x; done | for y; do l += \"b\"..y; done;push l}"));
+	}
+
+	@Test
+	public void testSingleThreadModeInterleaveInfiniteStreams() {
+		assertEquals("1,5,2,6", evalWith(I -> I.singleThreadMode = true,
+				"main{seq(1, 1000000000) <> seq(5, 1000000000) | head 4}"));
+	}
+
+	@Test
+	public void testSingleThreadModeNestedPipelines() {
+		assertEquals("30300", evalWith(I -> I.singleThreadMode = true, "main{seq 1, 3 | for i; do seq 1, 100 | for x; do push x*i; done | sum; done | sum}"));
+	}
+
+	@Test(expected=RödaException.class)
+	public void testSingleThreadModeError() {
+		evalWith(I -> I.singleThreadMode = true, "main{seq 1, 10 | { error \"virhe\" } | for x; do push x; done}");
+	}
+
+	// Arvojen välimuisti
+
+	@Test
+	public void testCachedValues() {
+		assertSame(RödaInteger.of(7), RödaInteger.of(7));
+		assertSame(RödaInteger.of(-1), RödaInteger.of(-1));
+		assertEquals(RödaInteger.of(1_000_000), RödaInteger.of(1_000_000));
+		assertSame(RödaBoolean.of(true), RödaBoolean.of(1 < 2));
+		assertSame(RödaString.of('a'), RödaString.of("a"));
+		assertEquals("€", RödaString.of('€').str());
+	}
+
+	@Test
+	public void testCharsWithCachedCharacters() {
+		assertEquals("a,ö,€,a", eval("main{chars \"aö€a\"}"));
+	}
+
+	// Primitiivilistat
+
+	@Test
+	public void testPrimitiveListStorage() {
+		RödaList list = RödaList.of(RödaInteger.of(1), RödaInteger.of(2));
+		assertTrue(list.storesIntegers());
+		list.add(RödaInteger.of(1L << 40));
+		assertTrue(list.storesIntegers());
+		assertEquals(1L << 40, list.integerAt(2));
+		list.add(RödaString.of("x"));
+		assertFalse(list.storesIntegers());
+		assertEquals("[1, 2, 1099511627776, x]", list.str());
+		assertTrue(RödaList.of(RödaFloating.of(1.5)).storesFloatings());
+		assertTrue(RödaList.ofBytes(new byte[] { 1, -1 }).storesBytes());
+	}
+
+	@Test
+	public void testPrimitiveListOperations() {
+		assertEquals("6,6,1,3,1,2,3,4.0,[1, 2],[2, 1, 3],<true>,<false>",
+				eval("main{a:=[3, 1, 2];push sum(a), product(a), min(a), max(a);sort a;"
+						+ "push sum([1.5, 2.5]), a[1:], a[::-1], 2 in a, 2.5 in a}"));
+	}
+
+	@Test
+	public void testWidenedList() {
+		assertEquals("[1, 2, 4.5],[x, 2],<true>,<false>",
+				eval("main{a:=[1, 2];b:=a+4.5;a[0] = \"x\";push b, a, 2 in a, 1 in a}"));
+	}
+
+	@Test
+	public void testByteList() {
+		assertEquals("[-61, -92],ä,[1000, -92]",
+				eval("main{b:=new list(stringToBytes(\"ä\"));push b[:], bytesToString(b);b[0] = 1000;push b}"));
+	}
+
+	// Merkkijonojen kokoaminen
+
+	@Test
+	public void testStringAccumulation() {
+		assertEquals("292,1,2,3,",
+				eval("main{s:=\"\";for i in [seq(1, 100)]; do s .= i..\",\"; done;push #s, s[0:6]}"));
+	}
+
+	@Test
+	public void testStringMultiplication() {
+		assertEquals(",,ababab", eval("main{push \"\"*10000000000, \"ab\"*0, \"ab\"*3}"));
+	}
+
+	@Test(expected=RödaException.class)
+	public void testTooLargeStringMultiplication() {
+		eval("main{push \"ab\"*4611686018427387904}");
+	}
+
+	@Test
+	public void testSharedStringBuilder() {
+		assertEquals("2,1,13,72,14,<true>",
+				eval("main{a:=\"x\"*70;b:=a..\"1\";c:=a..\"2\";d:=b..\"3\";e:=b..\"4\";"
+						+ "push c[-1:], b[-1:], d[-2:], #d, e[-2:], (b = a..1)}"));
+	}
+
+	// Tavut
+
+	@Test
+	public void testBytes() {
+		assertEquals("3,98,99,[98, 99],bc,<true>,<true>,<true>",
+				eval("main{b:=new bytes(stringToBytes(\"abc\"));push #b, b[1], b[-1], b[1:], bytesToString(b[1:]),"
+						+ " 98 in b, b is bytes, b is list}"));
+	}
+
+	@Test
+	public void testBytesSlice() {
+		RödaBytes bytes = RödaBytes.of(new byte[] { 1, 2, 3, 4 });
+		assertEquals("[2, 3]", bytes.slice(RödaInteger.of(1), RödaInteger.of(3), null).str());
+		assertEquals("[4, 2]", bytes.slice(null, RödaInteger.of(0), RödaInteger.of(-2)).str());
+		assertEquals("[]", bytes.slice(RödaInteger.of(4), null, null).str());
+	}
+
+	@Test
+	public void testBytesConcat() {
+		assertEquals("abcd,abcde",
+				eval("main{b:=new bytes(stringToBytes(\"ab\"));b .= stringToBytes(\"c\");b .= [100];"
+						+ "push bytesToString(b), bytesToString(b..new bytes(stringToBytes(\"e\")))}"));
+	}
+
+	@Test
+	public void testNewBytes() {
+		assertEquals("hi,<true>,[104, 105]",
+				eval("main{b:=new bytes([104, 105]);push bytesToString(b), (b = new bytes(stringToBytes(\"hi\"))), new list(b)}"));
+	}
+
+	@Test(expected=RödaException.class)
+	public void testImmutableBytes() {
+		eval("main{b:=new bytes([97]);b[0] = 1}");
+	}
+
+	@Test
+	public void testStringToBytesReturnsList() {
+		// lista on muutettava kuten perusversiossa, myös kun siihen lisätään muu kuin tavu
+		assertEquals("<false>,<true>,abc,Abc,300,3",
+				eval("main{b:=stringToBytes(\"ab\");push b is bytes, b is list;b += 99;push bytesToString(b);"
+						+ "b[0] = 65;push bytesToString(b);b[2] = 300;push b[2], #b}"));
+	}
+
+	@Test
+	public void testReadBytesReadsOnce() {
+		// virta palauttaa enintään kaksi tavua kerrallaan kuten hidas pistoke
+		InputStream is = new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5 }) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, 2));
+			}
+		};
+		Interpreter.INTERPRETER.G.setLocal("readTest", Builtins.genericReadBytesOrString("readTest", is, Interpreter.INTERPRETER, false));
+		// jokainen kutsu lukee kerran, joten tulos voi olla pyydettyä lyhyempi ja virran lopussa tyhjä
+		assertEquals("[1, 2],[3, 4],[5],[],<true>",
+				eval("main{push readTest(4), readTest(4), readTest(4), readTest(4), readTest(4) is list}"));
+	}
+
+	// Lauseet lausekkeina ja ehtoina
+
+	@Test
+	public void testStatementExpressions() {
+		assertEquals("[1, 2],3,[]", eval("f{}main{push([push(1, 2)], push(3), [f()])}"));
+	}
+
+	@Test(expected=RödaException.class)
+	public void testStatementExpressionWithManyValues() {
+		eval("main{x := push(1, 2)}");
+	}
+
+	@Test(expected=RödaException.class)
+	public void testStatementExpressionWithoutValues() {
+		eval("f{}main{x := f()}");
+	}
+
+	@Test
+	public void testDirectConditions() {
+		assertEquals("3,b,d", eval("main{i:=0;while [ i < 3, i >= 0 ]; do i += 1; done;push i;"
+				+ "if [ i < 4, i < 2 ]; do push \"a\"; else push \"b\"; done;"
+				+ "if push(i < 4, i < 2); do push \"c\"; else push \"d\"; done}"));
+	}
+
+	@Test(expected=RödaException.class)
+	public void testNonBooleanDirectCondition() {
+		eval("main{i:=1;if [ i ]; do push i; done}");
+	}
+
 	// Laskutoimitukset
 
 	@Test
@@ -124,6 +798,18 @@ public class RödaTest {
 					 + "main{r:=new S;r.a=5;r.b=9;push r.b, r.a}"));
 	}
 
+	@Test
+	public void testRecordIdentities() {
+		assertEquals("<true>,<true>,<false>,<true>,<false>",
+				eval("record R{}record S:R{}main{s:=new S;r:=new R;push s is S, s is R, s is string, r is R, r is S}"));
+	}
+
+	@Test
+	public void testBuiltinIdentities() {
+		assertEquals("<true>,<false>,<true>,<true>,<true>,<false>",
+				eval("main{l:=new list<<string>>;push 3 is number, 3 is floating, [1] is list, l is list, l is list<<string>>, l is list<<number>>}"));
+	}
+
 	@Test
 	public void testDefaultValues() {
 		assertEquals("Isabella", eval("f{push \"Isabella\"}"
@@ -255,6 +941,17 @@ public class RödaTest {
 				  + "main{pushdef;pushdef text=\"tuuli\"}"));
 	}
 
+	@Test
+	public void testCallerNamespace() {
+		assertEquals("3,5", eval("f{push caller_namespace.x}g{push caller_namespace.caller_namespace.y}h{g}"
+				  + "main{x:=3;y:=5;f;h}"));
+	}
+
+	@Test
+	public void testCallerNamespaceDefinedByFunction() {
+		assertEquals("7", eval("f{caller_namespace:=7;push caller_namespace}main{f}"));
+	}
+
 	@Test
 	public void testVarargsKwargsFunction() {
 		assertEquals("hey abba,hey tuuli,hey joki,got pilvi",
@@ -343,6 +1040,31 @@ public class RödaTest {
 			     eval("main{ikä:=73;voimat:=10;ikä--;voimat++;push ikä, voimat}"));
 	}
 
+	@Test
+	public void testVariableSetInOuterScope() {
+		assertEquals("3,2", eval("main{a:=1;if [ 1 = 1 ]; do b:=2; a=3; done;push a;b=2;push b}"));
+	}
+
+	@Test
+	public void testVariableSetAfterUndefine() {
+		assertEquals("2,<false>", eval("main{a:=1;if [ 1 = 1 ]; do undefine a; a=2; push a; done;a?}"));
+	}
+
+	@Test
+	public void testCommandNameShadowedAfterCall() {
+		assertEquals("1,2", eval("f{push 1}main{h:={f};h;f:={push 2};h}"));
+	}
+
+	@Test
+	public void testCommandNameRedefinedAfterCall() {
+		assertEquals("1,1,2", eval("f{push 1}main{for i in [1, 2]; do f; done;f={push 2};f}"));
+	}
+
+	@Test(expected=RödaException.class)
+	public void testCommandNameUndefinedAfterCall() {
+		eval("f{push 1}main{for i in [1, 2]; do f; if [ i = 1 ]; do undefine f; done; done}");
+	}
+
 	@Test(expected=RödaException.class)
 	public void testPushingStringVariable() {
 		assertEquals("abba",
@@ -0,0 +1,66 @@
+package org.kaivos.röda.test;
+
+import static org.kaivos.röda.RödaStream.makeStream;
+
+import java.util.Arrays;
+
+import org.kaivos.röda.Interpreter;
+import org.kaivos.röda.RödaStream;
+
+/**
+ * A benchmark that runs many pipelines at the same time. Every pipeline calls
+ * functions defined in the global scope, so the time per operation stays flat
+ * only if the pipelines can resolve global names without waiting for each
+ * other. Like a JMH benchmark, each configuration is first run for a number of
+ * warmup iterations that are not measured.
+ *
+ * Run with: java -cp ... org.kaivos.röda.test.ScopeBenchmark [warmup] [iterations]
+ */
+public class ScopeBenchmark {
+
+	private static final int PIPELINES = 64;
+
+	private static String script(int parallelism) {
+		return "inc x{push x+1}"
+				+ "work n{s:=0;seq 1, 2000 | for i; do s = inc(s); push s | pull x; done;push s}"
+				+ "main{seq 1, " + PIPELINES + " | pmap(work, parallelism=" + parallelism + ")}";
+	}
+
+	private static double run(String code) {
+		RödaStream in = makeStream(v -> {}, () -> null, () -> {}, () -> true);
+		RödaStream out = makeStream(v -> {}, () -> null, () -> {}, () -> true);
+		long start = System.nanoTime();
+		Interpreter.INTERPRETER.interpret(code, "<benchmark>", in, out);
+		return (System.nanoTime() - start) / 1_000_000d;
+	}
+
+	private static double[] measure(String code, int warmup, int iterations) {
+		for (int i = 0; i < warmup; i++) run(code);
+		double[] times = new double[iterations];
+		for (int i = 0; i < iterations; i++) times[i] = run(code);
+		return times;
+	}
+
+	private static String format(double[] times) {
+		double mean = Arrays.stream(times).average().orElse(0);
+		double variance = Arrays.stream(times).map(t -> (t - mean) * (t - mean)).sum() / Math.max(1, times.length - 1);
+		return String.format("%10.3f ± %8.3f ms/op", mean, Math.sqrt(variance));
+	}
+
+	public static void main(String[] args) {
+		int warmup = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		Interpreter.INTERPRETER.enableDebug = false;
+		Interpreter.INTERPRETER.populateBuiltins();
+		System.out.printf("%-12s %s\n", "PARALLELISM", "SCORE");
+		int processors = Runtime.getRuntime().availableProcessors();
+		double base = 0;
+		for (int parallelism = 1; parallelism <= 2*processors; parallelism *= 2) {
+			double[] times = measure(script(parallelism), warmup, iterations);
+			double mean = Arrays.stream(times).average().orElse(0);
+			if (parallelism == 1) base = mean;
+			System.out.printf("%-12d %s (%.2fx)\n", parallelism, format(times), base / mean);
+		}
+		Interpreter.shutdown();
+	}
+}